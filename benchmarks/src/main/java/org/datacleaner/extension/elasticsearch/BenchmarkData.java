@@ -0,0 +1,118 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Deterministic generator of records used by the benchmarks. The same seed
+ * always yields the same records, so runs are comparable across machines and
+ * versions.
+ */
+final class BenchmarkData {
+
+    private static final long SEED = 42;
+
+    private BenchmarkData() {
+        // prevent instantiation
+    }
+
+    /**
+     * Creates field names for a record width.
+     * 
+     * @param columns
+     *            the number of columns
+     * @param repeatedFields
+     *            whether every fourth column should repeat the previous
+     *            field name, creating multi-valued fields
+     * @return the field names
+     */
+    static String[] createFields(int columns, boolean repeatedFields) {
+        final String[] fields = new String[columns];
+        for (int i = 0; i < columns; i++) {
+            if (repeatedFields && i % 4 == 3) {
+                fields[i] = fields[i - 1];
+            } else {
+                fields[i] = "field" + i;
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Creates records of mixed value types, with the document ID first.
+     * 
+     * @param count
+     *            the number of records
+     * @param columns
+     *            the number of columns besides the ID
+     * @return the records
+     */
+    static Object[][] createRecords(int count, int columns) {
+        final Random random = new Random(SEED);
+        final Object[][] records = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            final Object[] record = new Object[columns + 1];
+            record[0] = "id_" + i;
+            for (int j = 0; j < columns; j++) {
+                switch (j % 5) {
+                case 0:
+                    record[j + 1] = randomText(random, 5 + random.nextInt(40));
+                    break;
+                case 1:
+                    record[j + 1] = random.nextInt(100000);
+                    break;
+                case 2:
+                    record[j + 1] = random.nextDouble() * 1000;
+                    break;
+                case 3:
+                    record[j + 1] = new Date(1262304000000l + random.nextInt(Integer.MAX_VALUE) * 100l);
+                    break;
+                default:
+                    record[j + 1] = random.nextInt(10) == 0 ? null : randomText(random, 8);
+                }
+            }
+            records[i] = record;
+        }
+        return records;
+    }
+
+    static Class<?> getDataType(int column) {
+        switch (column % 5) {
+        case 1:
+            return Integer.class;
+        case 2:
+            return Double.class;
+        case 3:
+            return Date.class;
+        default:
+            return String.class;
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = i % 7 == 6 ? ' ' : (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the construction of bulk requests (including serialization of the
+ * document sources) for varying document widths and bulk sizes, without
+ * sending them anywhere.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BulkRequestBenchmark {
+
+    @Param({ "10", "80" })
+    int columns;
+
+    @Param({ "100", "2000" })
+    int bulkSize;
+
+    private Object[][] _records;
+    private FieldLayout _fieldLayout;
+
+    @Setup
+    public void setup() {
+        _records = BenchmarkData.createRecords(bulkSize, columns);
+        _fieldLayout = new FieldLayout(BenchmarkData.createFields(columns, false), false);
+    }
+
+    @Benchmark
+    public long buildBulkRequest() {
+        final BulkRequest bulkRequest = new BulkRequest();
+        for (Object[] record : _records) {
+            final Map<String, Object> document = _fieldLayout.createDocument(record);
+            final IndexRequest indexRequest = new IndexRequest("benchmark", "doc", (String) record[0]);
+            indexRequest.source(document);
+            indexRequest.operationThreaded(false);
+            bulkRequest.add(indexRequest);
+        }
+        return bulkRequest.estimatedSizeInBytes();
+    }
+}
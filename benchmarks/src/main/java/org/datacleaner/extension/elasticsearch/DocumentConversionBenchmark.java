@@ -0,0 +1,98 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the conversion of records to documents, as done by the indexer
+ * (value conversion in {@link ElasticSearchIndexAnalyzer#run}) and the flush
+ * action (document creation by {@link FieldLayout}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DocumentConversionBenchmark {
+
+    private static final int RECORD_COUNT = 1000;
+
+    @Param({ "10", "80" })
+    int columns;
+
+    @Param({ "false", "true" })
+    boolean repeatedFields;
+
+    private Object[][] _records;
+    private FieldLayout _fieldLayout;
+    private ValueConverter[] _converters;
+
+    @Setup
+    public void setup() {
+        _records = BenchmarkData.createRecords(RECORD_COUNT, columns);
+        _fieldLayout = new FieldLayout(BenchmarkData.createFields(columns, repeatedFields), false);
+        _converters = new ValueConverter[columns];
+        for (int i = 0; i < columns; i++) {
+            _converters[i] = ValueConverters.forType(BenchmarkData.getDataType(i), DateConversion.ISO_8601);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    public void createDocuments(Blackhole blackhole) {
+        for (Object[] record : _records) {
+            final Map<String, Object> document = _fieldLayout.createDocument(record);
+            blackhole.consume(document);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    public void convertValues(Blackhole blackhole) {
+        for (Object[] record : _records) {
+            final Object[] converted = new Object[record.length];
+            converted[0] = record[0];
+            for (int i = 0; i < _converters.length; i++) {
+                final Object value = record[i + 1];
+                if (value != null) {
+                    converted[i + 1] = _converters[i].convert(value);
+                }
+            }
+            blackhole.consume(converted);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.datacleaner.api.InputColumn;
+import org.datacleaner.connection.ElasticSearchDatastore;
+import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
+import org.datacleaner.data.MockInputColumn;
+import org.datacleaner.data.MockInputRow;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.collect.MapBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the lookup throughput of the transformers against the embedded
+ * node of {@link ElasticSearchTestServer}, including request building and
+ * response conversion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Threads(8)
+@Fork(1)
+public class LookupBenchmark {
+
+    private static final int DOCUMENT_COUNT = 10000;
+    private static final String[] CITIES = { "Copenhagen", "Amsterdam", "Delhi", "London", "Paris", "Berlin" };
+
+    private ElasticSearchTestServer _server;
+    private InputColumn<String> _column;
+    private ElasticSearchDocumentIdLookupTransformer _lookupTransformer;
+    private ElasticSearchFullSearchTransformer _searchTransformer;
+
+    @State(Scope.Thread)
+    public static class Counter {
+        int value;
+
+        int next() {
+            value = (value + 7919) % DOCUMENT_COUNT;
+            return value;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        _server = new ElasticSearchTestServer();
+        _server.startup();
+        _server.truncateIndex();
+
+        try (Client client = _server.getClient()) {
+            final BulkRequestBuilder bulk = client.prepareBulk();
+            for (int i = 0; i < DOCUMENT_COUNT; i++) {
+                bulk.add(new IndexRequest(ElasticSearchTestServer.INDEX_NAME, ElasticSearchTestServer.DOCUMENT_TYPE,
+                        "id_" + i).source(MapBuilder.newMapBuilder().put("city", CITIES[i % CITIES.length] + " " + i)
+                        .put("country", "Country " + (i % 100)).map()));
+            }
+            bulk.execute().actionGet();
+            client.admin().indices().refresh(new RefreshRequest(ElasticSearchTestServer.INDEX_NAME)).actionGet();
+        }
+
+        final ElasticSearchDatastore datastore = new ElasticSearchDatastore(ElasticSearchTestServer.DATASTORE_NAME,
+                ClientType.TRANSPORT, "localhost", Integer.parseInt(ElasticSearchTestServer.TRANSPORT_PORT),
+                ElasticSearchTestServer.CLUSTER_NAME, ElasticSearchTestServer.INDEX_NAME);
+        _column = new MockInputColumn<String>("col1");
+
+        _lookupTransformer = new ElasticSearchDocumentIdLookupTransformer();
+        _lookupTransformer.documentId = _column;
+        _lookupTransformer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        _lookupTransformer.fields = new String[] { "city", "country" };
+        _lookupTransformer.elasticsearchDatastore = datastore;
+        _lookupTransformer.init();
+
+        _searchTransformer = new ElasticSearchFullSearchTransformer();
+        _searchTransformer.searchInput = _column;
+        _searchTransformer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        _searchTransformer.searchFieldName = "city";
+        _searchTransformer.elasticsearchDatastore = datastore;
+        _searchTransformer.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _lookupTransformer.close();
+        _searchTransformer.close();
+        _server.close();
+    }
+
+    @Benchmark
+    public Object[] documentIdLookup(Counter counter) {
+        return _lookupTransformer.transform(new MockInputRow().put(_column, "id_" + counter.next()));
+    }
+
+    @Benchmark
+    public Object[] fullTextSearch(Counter counter) {
+        final int i = counter.next();
+        return _searchTransformer.transform(new MockInputRow().put(_column, CITIES[i % CITIES.length] + " " + i));
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.metamodel.util.Action;
+import org.datacleaner.util.WriteBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks contention on the write buffers when many threads add records at
+ * the same time. The flush action only burns a little CPU per record, so the
+ * benchmark measures the buffering itself. Use the JMH "-t" option to vary the
+ * number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Threads(16)
+@Fork(1)
+public class WriteBufferContentionBenchmark {
+
+    private static final Object[] RECORD = new Object[] { "id", "foo", 42, 3.14 };
+
+    @Param({ "1", "16" })
+    int stripes;
+
+    @Param({ "2000" })
+    int bulkSize;
+
+    private StripedBulkWriteBuffer _stripedBuffer;
+    private WriteBuffer _writeBuffer;
+
+    @Setup
+    public void setup() {
+        final Action<Iterable<Object[]>> flushAction = new Action<Iterable<Object[]>>() {
+            @Override
+            public void run(Iterable<Object[]> records) throws Exception {
+                for (Object[] record : records) {
+                    Blackhole.consumeCPU(10);
+                    if (record == null) {
+                        throw new IllegalStateException();
+                    }
+                }
+            }
+        };
+        _stripedBuffer = new StripedBulkWriteBuffer(stripes, BulkSizeController.fixed(bulkSize, stripes),
+                flushAction);
+        _writeBuffer = new WriteBuffer(bulkSize, flushAction);
+    }
+
+    @TearDown
+    public void tearDown() {
+        _stripedBuffer.flushBuffer();
+        _writeBuffer.flushBuffer();
+    }
+
+    @Benchmark
+    public void stripedBulkWriteBuffer() {
+        _stripedBuffer.addToBuffer(RECORD);
+    }
+
+    /**
+     * Baseline: DataCleaner's WriteBuffer, as used by the indexer before it had
+     * striped buffers.
+     */
+    @Benchmark
+    public void dataCleanerWriteBuffer() {
+        _writeBuffer.addToBuffer(RECORD);
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+/**
+ * Controls the size of bulk requests and the number of bulk requests in
+ * flight at the same time.
+ * 
+ * In adaptive mode the controller uses an AIMD (additive increase,
+ * multiplicative decrease) scheme: every bulk that completes without
+ * rejections and within the target latency increases the batch size a bit
+ * (and periodically the concurrency by one), while rejections or slow bulks
+ * halve them. This converges towards the throughput knee of the cluster and
+ * backs off when the cluster gets busy.
+ */
+public class BulkSizeController {
+
+    private final boolean _adaptive;
+    private final int _minBatchSize;
+    private final int _maxBatchSize;
+    private final int _maxConcurrency;
+    private final long _targetLatencyMillis;
+    private final int _batchSizeIncrement;
+
+    private volatile int _batchSize;
+    private int _concurrency;
+    private int _inFlight;
+    private int _successesSinceConcurrencyIncrease;
+
+    /**
+     * Creates a controller that keeps the batch size and concurrency fixed.
+     * 
+     * @param batchSize
+     *            the number of records per bulk
+     * @param concurrency
+     *            the number of bulks that may be in flight at the same time
+     * @return a non-adaptive controller
+     */
+    public static BulkSizeController fixed(int batchSize, int concurrency) {
+        return new BulkSizeController(false, batchSize, batchSize, batchSize, concurrency, 0);
+    }
+
+    public BulkSizeController(boolean adaptive, int initialBatchSize, int minBatchSize, int maxBatchSize,
+            int maxConcurrency, long targetLatencyMillis) {
+        _adaptive = adaptive;
+        _minBatchSize = Math.max(1, minBatchSize);
+        _maxBatchSize = Math.max(_minBatchSize, maxBatchSize);
+        _maxConcurrency = Math.max(1, maxConcurrency);
+        _targetLatencyMillis = targetLatencyMillis;
+        _batchSize = Math.min(_maxBatchSize, Math.max(_minBatchSize, initialBatchSize));
+        _batchSizeIncrement = Math.max(1, _batchSize / 10);
+        _concurrency = adaptive ? 1 : _maxConcurrency;
+    }
+
+    public boolean isAdaptive() {
+        return _adaptive;
+    }
+
+    public int getBatchSize() {
+        return _batchSize;
+    }
+
+    public synchronized int getConcurrency() {
+        return _concurrency;
+    }
+
+    /**
+     * Blocks until a bulk request may be sent.
+     * 
+     * @throws InterruptedException
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (_inFlight >= _concurrency) {
+            wait();
+        }
+        _inFlight++;
+    }
+
+    /**
+     * Signals that a bulk request that was allowed by {@link #acquire()} has
+     * completed (successfully or not).
+     */
+    public synchronized void release() {
+        _inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Feeds the outcome of a bulk request into the controller.
+     * 
+     * @param itemCount
+     *            the number of items in the bulk
+     * @param rejectedCount
+     *            the number of items that were rejected because the cluster
+     *            was overloaded
+     * @param latencyMillis
+     *            the time it took to execute the bulk
+     */
+    public synchronized void onBulkCompleted(int itemCount, int rejectedCount, long latencyMillis) {
+        if (!_adaptive) {
+            return;
+        }
+
+        if (rejectedCount > 0) {
+            _batchSize = Math.max(_minBatchSize, _batchSize / 2);
+            _concurrency = Math.max(1, _concurrency / 2);
+            _successesSinceConcurrencyIncrease = 0;
+            return;
+        }
+
+        if (latencyMillis > _targetLatencyMillis) {
+            _batchSize = Math.max(_minBatchSize, _batchSize / 2);
+            return;
+        }
+
+        if (itemCount >= _batchSize) {
+            // only grow when the bulk was actually full, final flushes say
+            // nothing about the capacity of the cluster
+            _batchSize = Math.min(_maxBatchSize, _batchSize + _batchSizeIncrement);
+        }
+
+        _successesSinceConcurrencyIncrease++;
+        if (_successesSinceConcurrencyIncrease >= _concurrency * 2 && _concurrency < _maxConcurrency) {
+            _concurrency++;
+            _successesSinceConcurrencyIncrease = 0;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BulkSizeController[adaptive=" + _adaptive + ",batchSize=" + _batchSize + ",concurrency="
+                + _concurrency + "]";
+    }
+}
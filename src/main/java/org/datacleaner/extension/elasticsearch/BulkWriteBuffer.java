@@ -0,0 +1,91 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.metamodel.util.Action;
+
+/**
+ * Buffer of records that are written in bulks once the buffer is full. Unlike
+ * DataCleaner's WriteBuffer the size of the bulks and the number of bulks
+ * flushed concurrently are governed by a {@link BulkSizeController}, so they
+ * may change while the job runs.
+ */
+public class BulkWriteBuffer {
+
+    private final BulkSizeController _controller;
+    private final Action<Iterable<Object[]>> _flushAction;
+    private List<Object[]> _buffer;
+
+    public BulkWriteBuffer(BulkSizeController controller, Action<Iterable<Object[]>> flushAction) {
+        _controller = controller;
+        _flushAction = flushAction;
+        _buffer = new ArrayList<>(controller.getBatchSize());
+    }
+
+    public void addToBuffer(Object[] record) {
+        final List<Object[]> batch;
+        synchronized (this) {
+            _buffer.add(record);
+            if (_buffer.size() < _controller.getBatchSize()) {
+                return;
+            }
+            batch = swapBuffer();
+        }
+        flush(batch);
+    }
+
+    public void flushBuffer() {
+        final List<Object[]> batch;
+        synchronized (this) {
+            if (_buffer.isEmpty()) {
+                return;
+            }
+            batch = swapBuffer();
+        }
+        flush(batch);
+    }
+
+    private List<Object[]> swapBuffer() {
+        final List<Object[]> batch = _buffer;
+        _buffer = new ArrayList<>(_controller.getBatchSize());
+        return batch;
+    }
+
+    private void flush(List<Object[]> batch) {
+        try {
+            _controller.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to flush buffer", e);
+        }
+        try {
+            _flushAction.run(batch);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            _controller.release();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+/**
+ * Simple count-based circuit breaker. The outcome of the last
+ * {@code windowSize} requests is kept, and when the error rate among them
+ * reaches the threshold the circuit opens and requests are rejected for a
+ * while. After that a single trial request is let through (half-open state)
+ * and depending on its outcome the circuit closes or opens again.
+ */
+public class CircuitBreaker {
+
+    public static enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final boolean[] _window;
+    private final int _errorRatePercentage;
+    private final long _openDurationMillis;
+
+    private State _state;
+    private int _windowPosition;
+    private int _windowCount;
+    private int _failureCount;
+    private long _openedAt;
+    private boolean _trialInFlight;
+
+    public CircuitBreaker(int windowSize, int errorRatePercentage, long openDurationMillis) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+        _window = new boolean[windowSize];
+        _errorRatePercentage = errorRatePercentage;
+        _openDurationMillis = openDurationMillis;
+        _state = State.CLOSED;
+    }
+
+    /**
+     * Determines if a request may be sent.
+     * 
+     * @return true if the request may proceed, false if it should be rejected
+     */
+    public synchronized boolean allowRequest() {
+        switch (_state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if (System.currentTimeMillis() - _openedAt < _openDurationMillis) {
+                return false;
+            }
+            _state = State.HALF_OPEN;
+            _trialInFlight = true;
+            return true;
+        case HALF_OPEN:
+            if (_trialInFlight) {
+                return false;
+            }
+            _trialInFlight = true;
+            return true;
+        default:
+            return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (_state == State.HALF_OPEN) {
+            reset();
+            _state = State.CLOSED;
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (_state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (_state == State.CLOSED && _windowCount == _window.length
+                && _failureCount * 100 >= _errorRatePercentage * _windowCount) {
+            open();
+        }
+    }
+
+    public synchronized State getState() {
+        return _state;
+    }
+
+    private void record(boolean failure) {
+        if (_windowCount == _window.length) {
+            if (_window[_windowPosition]) {
+                _failureCount--;
+            }
+        } else {
+            _windowCount++;
+        }
+        _window[_windowPosition] = failure;
+        if (failure) {
+            _failureCount++;
+        }
+        _windowPosition = (_windowPosition + 1) % _window.length;
+    }
+
+    private void open() {
+        reset();
+        _state = State.OPEN;
+        _openedAt = System.currentTimeMillis();
+    }
+
+    private void reset() {
+        _windowPosition = 0;
+        _windowCount = 0;
+        _failureCount = 0;
+        _trialInFlight = false;
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+/**
+ * Exception thrown when a request is rejected because the
+ * {@link CircuitBreaker} guarding it is open.
+ */
+public class CircuitBreakerOpenException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException() {
+        super("Request rejected because the error rate of requests to ElasticSearch is too high (circuit breaker is open)");
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+/**
+ * Determines how date values are represented in indexed documents.
+ */
+public enum DateConversion {
+
+    /**
+     * ISO-8601 formatted strings in UTC, e.g. "2013-08-08T10:15:30.000Z".
+     */
+    ISO_8601,
+
+    /**
+     * Milliseconds since epoch, as a long.
+     */
+    EPOCH_MILLIS
+}
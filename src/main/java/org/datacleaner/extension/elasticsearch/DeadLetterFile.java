@@ -0,0 +1,221 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.metamodel.util.Action;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.index.VersionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * File of documents that could not be written, one JSON object per line
+ * holding the index, type and ID of the document, the status and reason of
+ * the failure and the document itself. Lines are appended as failures occur,
+ * and once the file has grown beyond its maximum size it is renamed with a
+ * sequence number suffix ('.1', '.2' etc.) and a new file is started.
+ * 
+ * The documents can be read back with
+ * {@link #readDocuments(File, Action)} to replay them once the cause of the
+ * failure has been fixed.
+ */
+public class DeadLetterFile implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterFile.class);
+
+    private static final byte[] NEWLINE = { '\n' };
+
+    private final File _file;
+    private final long _maxFileSize;
+    private final LongAdder _count;
+    private OutputStream _out;
+    private long _size;
+
+    public DeadLetterFile(File file, long maxFileSize) {
+        _file = file;
+        _maxFileSize = maxFileSize;
+        _count = new LongAdder();
+    }
+
+    /**
+     * Writes a failed request to the file.
+     * 
+     * @param request
+     *            the index or delete request that failed
+     * @param status
+     *            the HTTP status of the failure
+     * @param reason
+     *            the failure message
+     * @throws IOException
+     */
+    public void write(ActionRequest<?> request, int status, String reason) throws IOException {
+        final XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        if (request instanceof IndexRequest) {
+            final IndexRequest indexRequest = (IndexRequest) request;
+            builder.field("index", indexRequest.index()).field("type", indexRequest.type())
+                    .field("id", indexRequest.id());
+            if (indexRequest.versionType() != VersionType.INTERNAL) {
+                builder.field("version", indexRequest.version()).field("version_type",
+                        indexRequest.versionType().name().toLowerCase(Locale.ROOT));
+            }
+            builder.field("status", status).field("reason", reason).rawField("document", indexRequest.source());
+        } else if (request instanceof DeleteRequest) {
+            final DeleteRequest deleteRequest = (DeleteRequest) request;
+            builder.field("index", deleteRequest.index()).field("type", deleteRequest.type())
+                    .field("id", deleteRequest.id()).field("status", status).field("reason", reason);
+        } else {
+            builder.field("status", status).field("reason", reason).field("request", request.toString());
+        }
+        final byte[] line = builder.endObject().bytes().toBytes();
+
+        synchronized (this) {
+            if (_out == null) {
+                open();
+            } else if (_size > 0 && _size + line.length + 1 > _maxFileSize) {
+                rotate();
+            }
+            _out.write(line);
+            _out.write(NEWLINE);
+            _out.flush();
+            _size += line.length + 1;
+        }
+        _count.increment();
+    }
+
+    private void open() throws IOException {
+        _out = new FileOutputStream(_file, true);
+        _size = _file.length();
+    }
+
+    private void rotate() throws IOException {
+        _out.close();
+        _out = null;
+        int sequence = 1;
+        while (new File(_file.getPath() + "." + sequence).exists()) {
+            sequence++;
+        }
+        final File rotated = new File(_file.getPath() + "." + sequence);
+        if (!_file.renameTo(rotated)) {
+            throw new IOException("Could not rename " + _file + " to " + rotated);
+        }
+        logger.info("Rotated dead letter file to {}", rotated);
+        open();
+    }
+
+    /**
+     * Gets the number of failed requests written by this instance.
+     */
+    public long getCount() {
+        return _count.sum();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (_out != null) {
+            _out.close();
+            _out = null;
+        }
+    }
+
+    /**
+     * Gets the dead letter files that exist for the given file name, in the
+     * order they were written: the rotated files followed by the current one.
+     * 
+     * @param file
+     * @return the existing files
+     */
+    public static List<File> getFiles(File file) {
+        final List<File> files = new ArrayList<>();
+        for (int sequence = 1;; sequence++) {
+            final File rotated = new File(file.getPath() + "." + sequence);
+            if (!rotated.exists()) {
+                break;
+            }
+            files.add(rotated);
+        }
+        if (file.exists()) {
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Reads the documents of failed index requests from the dead letter files
+     * of the given file name. Failed deletes, which have no document, are
+     * skipped.
+     * 
+     * @param file
+     * @param action
+     *            action receiving records of document ID, document map, the
+     *            name of the index the document failed to be written to and
+     *            the external version of the document (a Long), or null if
+     *            it was not indexed with an external version
+     * @return the number of documents read
+     * @throws Exception
+     */
+    public static long readDocuments(File file, Action<Object[]> action) throws Exception {
+        long count = 0;
+        for (File deadLetters : getFiles(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(deadLetters.toPath(), StandardCharsets.UTF_8)) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    final Map<String, Object> deadLetter = XContentHelper.convertToMap(
+                            line.getBytes(StandardCharsets.UTF_8), false).v2();
+                    final Object document = deadLetter.get("document");
+                    if (document instanceof Map) {
+                        final Object version = deadLetter.get("version");
+                        final Object versionType = deadLetter.get("version_type");
+                        if (version instanceof Number && versionType != null) {
+                            action.run(new Object[] { deadLetter.get("id"), document, deadLetter.get("index"),
+                                    ((Number) version).longValue(), ExternalVersionType.forVersionType(VersionType
+                                            .fromString(versionType.toString())) });
+                        } else {
+                            action.run(new Object[] { deadLetter.get("id"), document, deadLetter.get("index"),
+                                    null, null });
+                        }
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Named;
+
+import org.apache.metamodel.elasticsearch.nativeclient.ElasticSearchDataContext;
+import org.apache.metamodel.util.FileHelper;
+import org.datacleaner.api.Analyzer;
+import org.datacleaner.api.Categorized;
+import org.datacleaner.api.Close;
+import org.datacleaner.api.Concurrent;
+import org.datacleaner.api.Configured;
+import org.datacleaner.api.Description;
+import org.datacleaner.api.Initialize;
+import org.datacleaner.api.InputColumn;
+import org.datacleaner.api.InputRow;
+import org.datacleaner.api.NumberProperty;
+import org.datacleaner.api.Validate;
+import org.datacleaner.beans.writers.WriteDataResult;
+import org.datacleaner.components.categories.WriteSuperCategory;
+import org.datacleaner.components.convert.ConvertToStringTransformer;
+import org.datacleaner.connection.ElasticSearchDatastore;
+import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
+import org.datacleaner.connection.UpdateableDatastoreConnection;
+import org.datacleaner.extension.elasticsearch.ui.IllegalElasticSearchConnectorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Named("ElasticSearch deleter")
+@Description("Deletes the documents with the IDs of the consumed records from a ElasticSearch search index, using batched bulk requests.")
+@Categorized(superCategory = WriteSuperCategory.class)
+@Concurrent(true)
+public class ElasticSearchDeleteAnalyzer implements Analyzer<WriteDataResult> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchDeleteAnalyzer.class);
+
+    @Configured
+    InputColumn<?> idColumn;
+
+    @Configured(value = "ElasticSearch index", order = 1)
+    ElasticSearchDatastore elasticsearchDatastore;
+
+    @Configured(order = 2)
+    String documentType;
+
+    @Configured
+    @NumberProperty(negative = false, zero = false)
+    int bulkDeleteSize = 2000;
+
+    @Configured(required = false)
+    @Description("Automatically tunes the bulk size and the number of concurrent bulk requests, starting from the bulk delete size, based on the observed bulk latency and rejections by the cluster.")
+    boolean adaptiveBulkSizing = false;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The smallest bulk size used when adaptive bulk sizing is enabled.")
+    int minBulkDeleteSize = 100;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The largest bulk size used when adaptive bulk sizing is enabled.")
+    int maxBulkDeleteSize = 20000;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The maximum number of bulk requests in flight at the same time.")
+    int maxConcurrentBulks = 4;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("Bulks taking longer than this (in milliseconds) make adaptive bulk sizing decrease the bulk size.")
+    long targetBulkLatencyMillis = 1000;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false)
+    @Description("The number of write buffers that records are spread across, each building its own bulks. Zero means one per available processor.")
+    int writeBufferStripes = 0;
+
+    @Configured(required = false)
+    @Description("File that deletes failing for other reasons than an overloaded cluster are written to, one JSON object per line with the failure reason, instead of aborting the job.")
+    File deadLetterFile;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The size (in MB) at which the dead letter file is rotated.")
+    int maxDeadLetterFileSizeMb = 100;
+
+    private LongAdder _counter;
+    private StripedBulkWriteBuffer _writeBuffer;
+    private ElasticSearchDeleteFlushAction _flushAction;
+    private DeadLetterFile _deadLetterFile;
+    private UpdateableDatastoreConnection _connection;
+
+    @Validate
+    public void validate() {
+        final ClientType clientType = elasticsearchDatastore.getClientType();
+        switch (clientType) {
+        case NODE:
+        case TRANSPORT:
+            return;
+        case REST:
+            throw new IllegalElasticSearchConnectorException();
+        default:
+            // do nothing
+        }
+    }
+
+    @Initialize
+    public void init() {
+        _connection = elasticsearchDatastore.openConnection();
+
+        try {
+            final ElasticSearchDataContext dataContext = (ElasticSearchDataContext) _connection.getDataContext();
+
+            _counter = new LongAdder();
+            final BulkSizeController bulkSizeController;
+            if (adaptiveBulkSizing) {
+                bulkSizeController = new BulkSizeController(true, bulkDeleteSize, minBulkDeleteSize,
+                        maxBulkDeleteSize, maxConcurrentBulks, targetBulkLatencyMillis);
+            } else {
+                bulkSizeController = BulkSizeController.fixed(bulkDeleteSize, maxConcurrentBulks);
+            }
+            final int stripes = writeBufferStripes > 0 ? writeBufferStripes : Runtime.getRuntime()
+                    .availableProcessors();
+            _flushAction = new ElasticSearchDeleteFlushAction(dataContext, documentType, bulkSizeController);
+            if (deadLetterFile != null) {
+                _deadLetterFile = new DeadLetterFile(deadLetterFile, maxDeadLetterFileSizeMb * 1024l * 1024l);
+                _flushAction.setDeadLetterFile(_deadLetterFile);
+            } else {
+                _deadLetterFile = null;
+            }
+            _writeBuffer = new StripedBulkWriteBuffer(stripes, bulkSizeController, _flushAction);
+
+            _flushAction.getMetrics().register(getClass().getSimpleName(), elasticsearchDatastore.getIndexName());
+        } catch (RuntimeException e) {
+            logger.error("Exception while initializing the ElasticSearchDeleteAnalyzer", e);
+            FileHelper.safeClose(_connection);
+            throw e;
+        }
+    }
+
+    @Close
+    public void close() {
+        if (_flushAction != null) {
+            _flushAction.getMetrics().unregister();
+        }
+        if (_deadLetterFile != null) {
+            FileHelper.safeClose(_deadLetterFile);
+            _deadLetterFile = null;
+        }
+        if (_connection != null) {
+            FileHelper.safeClose(_connection);
+            _connection = null;
+        }
+    }
+
+    @Override
+    public void run(InputRow row, int distinctCount) {
+        final String id = ConvertToStringTransformer.transformValue(row.getValue(idColumn));
+        if (id == null) {
+            logger.warn("Skipping record because ID is null: {}", row);
+            return;
+        }
+        _writeBuffer.addToBuffer(new Object[] { id });
+        _counter.increment();
+    }
+
+    /**
+     * Flushes the remaining deletes. The number of deletes issued is reported
+     * as the updates count of the result, since deleting a document ID that
+     * does not exist is not an error. Deletes written to the dead letter file
+     * are reported as error rows.
+     */
+    @Override
+    public WriteDataResult getResult() {
+        _writeBuffer.flushBuffer();
+
+        final int errorCount = _deadLetterFile == null ? 0 : (int) _deadLetterFile.getCount();
+        final int deleteCount = _counter.intValue() - errorCount;
+        final List<RequestTrace> slowestBulks = _flushAction.getMetrics().getSlowRequests().getSlowest();
+        if (logger.isInfoEnabled()) {
+            for (RequestTrace trace : slowestBulks) {
+                logger.info("Slowest bulks: {}", trace);
+            }
+        }
+        return new ElasticSearchIndexResult(0, deleteCount, errorCount, _flushAction.getBulkLatencies(),
+                slowestBulks);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import org.apache.metamodel.elasticsearch.nativeclient.ElasticSearchDataContext;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WriteBuffer flush action for deleting documents from the elastic search
+ * index. Records are arrays holding just the document ID. Deletes go through
+ * the same bulk pipeline as indexing, so they are bounded in size and
+ * concurrency and rejected deletes are retried.
+ */
+public class ElasticSearchDeleteFlushAction extends ElasticSearchIndexFlushAction {
+
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchDeleteFlushAction.class);
+
+    public ElasticSearchDeleteFlushAction(ElasticSearchDataContext elasticSearchDataContext, String documentType,
+            BulkSizeController bulkSizeController) {
+        super(elasticSearchDataContext, (FieldLayout) null, documentType, bulkSizeController);
+    }
+
+    @Override
+    protected ActionRequest<?> createRequest(String id, Object[] row) {
+        logger.debug("Deleting document ({})", id);
+        final DeleteRequest deleteRequest = new DeleteRequest(getIndexName(), getDocumentType(), id);
+        deleteRequest.operationThreaded(false);
+        return deleteRequest;
+    }
+}
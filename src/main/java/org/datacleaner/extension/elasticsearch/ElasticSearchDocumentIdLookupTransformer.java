@@ -19,6 +19,8 @@
  */
 package org.datacleaner.extension.elasticsearch;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Named;
 
 import org.apache.metamodel.elasticsearch.nativeclient.ElasticSearchDataContext;
@@ -30,6 +32,7 @@ import org.datacleaner.api.Description;
 import org.datacleaner.api.Initialize;
 import org.datacleaner.api.InputColumn;
 import org.datacleaner.api.InputRow;
+import org.datacleaner.api.NumberProperty;
 import org.datacleaner.api.OutputColumns;
 import org.datacleaner.api.TableProperty;
 import org.datacleaner.api.Validate;
@@ -39,10 +42,10 @@ import org.datacleaner.components.convert.ConvertToStringTransformer;
 import org.datacleaner.connection.ElasticSearchDatastore;
 import org.datacleaner.connection.UpdateableDatastoreConnection;
 import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
+import org.datacleaner.extension.elasticsearch.ElasticSearchRequestExecutor.RequestSender;
 import org.datacleaner.extension.elasticsearch.ui.IllegalElasticSearchConnectorException;
 import org.datacleaner.util.StringUtils;
-import org.elasticsearch.action.ActionFuture;
-import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.ListenableActionFuture;
 import org.elasticsearch.action.get.GetRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.client.Client;
@@ -71,7 +74,38 @@ public class ElasticSearchDocumentIdLookupTransformer implements ElasticSearchTr
     @Description("Fields to return")
     String[] fields;
 
+    @Configured(order = 10, required = false)
+    @NumberProperty(negative = false)
+    @Description("Maximum time in milliseconds to wait for a response. Zero means wait indefinitely.")
+    long requestTimeoutMillis = 30000;
+
+    @Configured(order = 11, required = false)
+    @Description("Sends a duplicate request to a replica shard when a response takes longer than the 95th percentile of observed response times.")
+    boolean hedgedRequests = false;
+
+    @Configured(order = 12, required = false)
+    @NumberProperty(negative = false)
+    @Description("Error rate (in percent) of recent requests at which further requests are rejected for a while. Zero disables the circuit breaker.")
+    int circuitBreakerErrorRate = 0;
+
+    @Configured(order = 13, required = false)
+    @Description("What to do when a request fails, times out or is rejected by the circuit breaker.")
+    RequestFailureBehavior failureBehavior = RequestFailureBehavior.FAIL;
+
+    @Configured(order = 14, required = false)
+    @NumberProperty(negative = false)
+    @Description("Logs every Nth lookup with its response, for diagnostics. Zero disables sampling.")
+    int diagnosticsSampleRate = 0;
+
+    @Configured(order = 15, required = false)
+    @NumberProperty(negative = false)
+    @Description("Logs lookups taking longer than this (in milliseconds) with their response. Zero disables slow lookup logging.")
+    long slowLookupThresholdMillis = 0;
+
     private UpdateableDatastoreConnection _connection;
+    private ElasticSearchRequestExecutor _requestExecutor;
+    private SingleFlight<String, GetResponse> _inFlightLookups;
+    private RequestDiagnostics _diagnostics;
 
     @Validate
     public void validate() {
@@ -90,10 +124,21 @@ public class ElasticSearchDocumentIdLookupTransformer implements ElasticSearchTr
     @Initialize
     public void init() {
         _connection = elasticsearchDatastore.openConnection();
+        _requestExecutor = new ElasticSearchRequestExecutor(requestTimeoutMillis, hedgedRequests,
+                circuitBreakerErrorRate);
+        _requestExecutor.getMetrics().register(getClass().getSimpleName(), elasticsearchDatastore.getIndexName());
+        _inFlightLookups = new SingleFlight<>();
+        _diagnostics = new RequestDiagnostics(logger, diagnosticsSampleRate, slowLookupThresholdMillis);
     }
     
     @Close
     public void close() {
+        if (_diagnostics != null) {
+            _diagnostics.logSummary(getClass().getSimpleName());
+        }
+        if (_requestExecutor != null) {
+            _requestExecutor.getMetrics().unregister();
+        }
         if (_connection != null) {
             FileHelper.safeClose(_connection);
             _connection = null;
@@ -115,34 +160,72 @@ public class ElasticSearchDocumentIdLookupTransformer implements ElasticSearchTr
             final String[] result = new String[fields.length];
 
             final String id = ConvertToStringTransformer.transformValue(row.getValue(documentId));
-            logger.info("Id is {}", id);
             if (StringUtils.isNullOrEmpty(id)) {
                 return result;
             }
 
-            final GetRequest request = new GetRequestBuilder(client).setId(id).setType(documentType).setFields(fields)
-                    .setIndex(elasticsearchDatastore.getIndexName()).setOperationThreaded(false).request();
-            final ActionFuture<GetResponse> getFuture = client.get(request);
-            final GetResponse response = getFuture.actionGet();
-            logger.info("Response is {}", response);
-            if (!response.isExists()) {
-                return result;
+            final long startTime = System.nanoTime();
+            final RequestTrace trace = new RequestTrace(id);
+            final GetResponse response;
+            try {
+                // document type and fields are fixed for this component, so
+                // concurrent lookups of the same ID can share one request
+                _requestExecutor.getMetrics().onCacheRequest();
+                response = _inFlightLookups.execute(id, new SingleFlight.Call<GetResponse>() {
+                    @Override
+                    public GetResponse call() {
+                        _requestExecutor.getMetrics().onCacheMiss();
+                        return lookup(client, id, trace);
+                    }
+                });
+            } catch (RuntimeException e) {
+                if (failureBehavior == RequestFailureBehavior.EMIT_NULLS) {
+                    logger.warn("Lookup of document with id '{}' failed, emitting nulls: {}", id, e.getMessage());
+                    return result;
+                }
+                throw e;
             }
-
-            for (int i = 0; i < fields.length; i++) {
-                final String field = fields[i];
-                final GetField valueGetter = response.getField(field);
-                if (valueGetter == null) {
-                    logger.info("Document with id '{}' did not have the field '{}'", id, field);
-                } else {
-                    final Object value = valueGetter.getValue();
-                    result[i] = ConvertToStringTransformer.transformValue(value);
+            final long responseTime = System.nanoTime();
+            final long latencyMicros = TimeUnit.NANOSECONDS.toMicros(responseTime - startTime);
+            trace.setWaitMicros(latencyMicros - trace.getBuildMicros());
+            _diagnostics.onRequest(id, response, latencyMicros);
+
+            if (response.isExists()) {
+                for (int i = 0; i < fields.length; i++) {
+                    final String field = fields[i];
+                    final GetField valueGetter = response.getField(field);
+                    if (valueGetter == null) {
+                        _diagnostics.onMissingField();
+                    } else {
+                        final Object value = valueGetter.getValue();
+                        result[i] = ConvertToStringTransformer.transformValue(value);
+                    }
                 }
+            } else {
+                _diagnostics.onNotFound();
             }
+
+            trace.setConvertMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - responseTime));
+            _requestExecutor.getMetrics().getSlowRequests().record(trace);
             return result;
         } catch (Exception e) {
             logger.error("Exception while running the ElasticSearchDocumentIdLookupTransformer", e);
             throw e;
         }
     }
+
+    private GetResponse lookup(Client client, String id, RequestTrace trace) {
+        return _requestExecutor.execute(createRequestSender(client, id), trace);
+    }
+
+    RequestSender<GetResponse> createRequestSender(final Client client, final String id) {
+        return new RequestSender<GetResponse>() {
+            @Override
+            public ListenableActionFuture<GetResponse> send(String preference) {
+                return new GetRequestBuilder(client).setId(id).setType(documentType).setFields(fields)
+                        .setIndex(elasticsearchDatastore.getIndexName()).setPreference(preference)
+                        .setOperationThreaded(false).execute();
+            }
+        };
+    }
 }
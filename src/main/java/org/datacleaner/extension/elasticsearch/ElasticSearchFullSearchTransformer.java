@@ -19,7 +19,15 @@
  */
 package org.datacleaner.extension.elasticsearch;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Named;
 
@@ -32,24 +40,39 @@ import org.datacleaner.api.Description;
 import org.datacleaner.api.Initialize;
 import org.datacleaner.api.InputColumn;
 import org.datacleaner.api.InputRow;
+import org.datacleaner.api.MappedProperty;
+import org.datacleaner.api.NumberProperty;
 import org.datacleaner.api.OutputColumns;
 import org.datacleaner.api.TableProperty;
 import org.datacleaner.api.Validate;
 import org.datacleaner.components.categories.ImproveSuperCategory;
 import org.datacleaner.components.categories.ReferenceDataCategory;
+import org.datacleaner.components.convert.ConvertToStringTransformer;
 import org.datacleaner.connection.ElasticSearchDatastore;
 import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
 import org.datacleaner.connection.UpdateableDatastoreConnection;
+import org.datacleaner.extension.elasticsearch.ElasticSearchRequestExecutor.RequestSender;
 import org.datacleaner.extension.elasticsearch.ui.IllegalElasticSearchConnectorException;
 import org.datacleaner.util.StringUtils;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.admin.indices.mapping.get.GetMappingsResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.BoolFilterBuilder;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,9 +81,17 @@ import org.slf4j.LoggerFactory;
 @Categorized(superCategory = ImproveSuperCategory.class, value = ReferenceDataCategory.class)
 public class ElasticSearchFullSearchTransformer implements ElasticSearchTransformer {
 
+    public static final String PROPERTY_QUERY_INPUTS = "Query inputs";
+    public static final String PROPERTY_QUERY_FIELDS = "Query fields";
+    public static final String PROPERTY_FILTER_INPUTS = "Filter inputs";
+    public static final String PROPERTY_FILTER_FIELDS = "Filter fields";
+
     private static final Logger logger = LoggerFactory.getLogger(ElasticSearchFullSearchTransformer.class);
 
-    @Configured
+    private static final int MAX_FILTERS = 31;
+
+    @Configured(required = false)
+    @Description("Text to search for in the search field, or across all fields.")
     InputColumn<String> searchInput;
 
     @Configured(order = 1, value = PROPERTY_ES_DATASTORE)
@@ -75,11 +106,94 @@ public class ElasticSearchFullSearchTransformer implements ElasticSearchTransfor
 
     @Configured(order = 4, required = false)
     String searchFieldName;
-    
+
+    @Configured(order = 5, value = PROPERTY_QUERY_INPUTS, required = false)
+    @Description("Additional inputs to search for, each in its own field. All query inputs and the search input are combined in a single query.")
+    InputColumn<?>[] queryInputs;
+
+    @Configured(order = 6, value = PROPERTY_QUERY_FIELDS, required = false)
+    @MappedProperty(PROPERTY_QUERY_INPUTS)
+    @Description("The fields to search the query inputs in. A boost can be given as 'field^boost', e.g. 'name^2'.")
+    String[] queryFields;
+
+    @Configured(order = 7, value = PROPERTY_FILTER_INPUTS, required = false)
+    @Description("Inputs whose values documents must match exactly. Filters do not affect scoring and are cached by ElasticSearch. Filters with a null value are left out.")
+    InputColumn<?>[] filterInputs;
+
+    @Configured(order = 8, value = PROPERTY_FILTER_FIELDS, required = false)
+    @MappedProperty(PROPERTY_FILTER_INPUTS)
+    @Description("The fields to filter by, e.g. 'zip' or 'city.raw'.")
+    String[] filterFields;
+
+    @Configured(order = 9, required = false)
+    @Description("Makes queries match terms within an edit distance, e.g. 'AUTO', '1' or '2'.")
+    String fuzziness;
+
+    @Configured(order = 10, required = false)
+    @NumberProperty(negative = false)
+    @Description("Maximum time in milliseconds to wait for a response. Zero means wait indefinitely.")
+    long requestTimeoutMillis = 30000;
+
+    @Configured(order = 11, required = false)
+    @Description("Sends a duplicate request to replica shards when a response takes longer than the 95th percentile of observed response times.")
+    boolean hedgedRequests = false;
+
+    @Configured(order = 12, required = false)
+    @NumberProperty(negative = false)
+    @Description("Error rate (in percent) of recent requests at which further requests are rejected for a while. Zero disables the circuit breaker.")
+    int circuitBreakerErrorRate = 0;
+
+    @Configured(order = 13, required = false)
+    @Description("What to do when a request fails, times out or is rejected by the circuit breaker.")
+    RequestFailureBehavior failureBehavior = RequestFailureBehavior.FAIL;
+
+    @Configured(order = 14, required = false)
+    @NumberProperty(negative = false)
+    @Description("The number of distinct search inputs whose results are cached. Inputs are compared after trimming and collapsing whitespace. Zero disables the cache.")
+    int searchCacheSize = 10000;
+
+    @Configured(order = 15, required = false)
+    @Description("The search type. Query then fetch is the cheapest for fetching a single best match; the DFS types compute global term frequencies first, at the cost of an extra round trip.")
+    SearchType searchType = SearchType.QUERY_THEN_FETCH;
+
+    @Configured(order = 16, required = false)
+    @Description("Makes ElasticSearch compute an explanation of the score of each hit. Roughly doubles the work on the server.")
+    boolean explain = false;
+
+    @Configured(order = 17, required = false)
+    @Description("The shard copies to prefer, e.g. '_local' or any custom string, so that repeated queries hit the same, warm, shard copies. Not used for hedged requests.")
+    String preference;
+
+    @Configured(order = 18, required = false)
+    @NumberProperty(negative = false)
+    @Description("The maximum number of documents to collect per shard before terminating the search early. Zero means no limit.")
+    int terminateAfter = 0;
+
+    @Configured(order = 19, required = false)
+    @NumberProperty(negative = false)
+    @Description("Time in milliseconds after which the server returns the hits found so far. Zero means no time limit.")
+    long searchTimeoutMillis = 0;
+
+    @Configured(order = 20, required = false)
+    @Description("When no search field name is set, searches the string fields of the document type's mapping instead of the '_all' field. Avoids the largest inverted index, but searches each field separately.")
+    boolean searchMappedStringFields = false;
+
     private UpdateableDatastoreConnection _connection;
-    
+    private ElasticSearchRequestExecutor _requestExecutor;
+    private ConcurrentMap<Integer, SearchRequestTemplate> _requestTemplates;
+    private String[] _defaultSearchFields;
+    private BoundedCache<String, Object[]> _searchCache;
+    private SingleFlight<String, Object[]> _inFlightSearches;
+
     @Validate
     public void validate() {
+        if (searchInput == null && (queryInputs == null || queryInputs.length == 0)) {
+            throw new IllegalStateException("Either a search input or query inputs must be set");
+        }
+        if (filterInputs != null && filterInputs.length > MAX_FILTERS) {
+            throw new IllegalStateException("At most " + MAX_FILTERS + " filter inputs are supported");
+        }
+
         final ClientType clientType = elasticsearchDatastore.getClientType();
         switch (clientType) {
         case NODE:
@@ -95,16 +209,187 @@ public class ElasticSearchFullSearchTransformer implements ElasticSearchTransfor
     @Initialize
     public void init() {
         _connection = elasticsearchDatastore.openConnection();
+        _requestExecutor = new ElasticSearchRequestExecutor(requestTimeoutMillis, hedgedRequests,
+                circuitBreakerErrorRate);
+        _requestExecutor.getMetrics().register(getClass().getSimpleName(), elasticsearchDatastore.getIndexName());
+        _requestTemplates = new ConcurrentHashMap<>();
+        if (searchInput != null && StringUtils.isNullOrEmpty(searchFieldName) && searchMappedStringFields) {
+            _defaultSearchFields = getStringFields();
+        } else {
+            _defaultSearchFields = null;
+        }
+        _searchCache = searchCacheSize > 0 ? new BoundedCache<String, Object[]>(searchCacheSize) : null;
+        _inFlightSearches = new SingleFlight<>();
     }
     
     @Close
     public void close() {
+        if (_requestExecutor != null) {
+            _requestExecutor.getMetrics().unregister();
+        }
         if (_connection != null) {
             FileHelper.safeClose(_connection);
             _connection = null;
         }
     }
 
+    /**
+     * Gets the string fields of the document type, which are searched instead
+     * of the '_all' field if no search field is set and searching the mapped
+     * string fields is enabled.
+     * 
+     * @return the string fields, or null if they could not be determined
+     */
+    private String[] getStringFields() {
+        try {
+            final ElasticSearchDataContext dataContext = (ElasticSearchDataContext) _connection.getDataContext();
+            final Client client = dataContext.getElasticSearchClient();
+            final GetMappingsResponse response = client.admin().indices().prepareGetMappings(elasticsearchDatastore
+                    .getIndexName()).setTypes(documentType).execute().actionGet();
+            // the index name may be an alias of one or more indices
+            final Iterator<ImmutableOpenMap<String, MappingMetaData>> indexMappings = response.getMappings()
+                    .valuesIt();
+            while (indexMappings.hasNext()) {
+                final MappingMetaData mapping = indexMappings.next().get(documentType);
+                if (mapping != null) {
+                    final List<String> fields = new ArrayList<>();
+                    addStringFields(fields, "", mapping.sourceAsMap());
+                    if (!fields.isEmpty()) {
+                        logger.info("Searching string fields {} of document type '{}'", fields, documentType);
+                        return fields.toArray(new String[fields.size()]);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Could not get the fields of document type '{}', searching all fields instead: {}",
+                    documentType, e.getMessage());
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addStringFields(List<String> fields, String prefix, Map<String, Object> mapping) {
+        final Object properties = mapping.get("properties");
+        if (!(properties instanceof Map)) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) properties).entrySet()) {
+            final Map<String, Object> fieldMapping = (Map<String, Object>) entry.getValue();
+            final String field = prefix + entry.getKey();
+            final Object type = fieldMapping.get("type");
+            if ("string".equals(type)) {
+                if (!"no".equals(fieldMapping.get("index"))) {
+                    fields.add(field);
+                }
+            } else if (!"nested".equals(type)) {
+                // nested documents can only be searched with nested queries
+                addStringFields(fields, field + ".", fieldMapping);
+            }
+        }
+    }
+
+    /**
+     * Gets the request template for rows that have values for the given set of
+     * filters.
+     * 
+     * @param filterMask
+     *            bit mask of the filter inputs that have a value
+     */
+    SearchRequestTemplate getRequestTemplate(int filterMask) {
+        SearchRequestTemplate template = _requestTemplates.get(filterMask);
+        if (template == null) {
+            template = createRequestTemplate(filterMask);
+            _requestTemplates.putIfAbsent(filterMask, template);
+        }
+        return template;
+    }
+
+    private SearchRequestTemplate createRequestTemplate(int filterMask) {
+        final List<QueryBuilder> queries = new ArrayList<>();
+        if (searchInput != null) {
+            if (!StringUtils.isNullOrEmpty(searchFieldName)) {
+                queries.add(createMatchQuery(searchFieldName, SearchRequestTemplate.placeholder(0)));
+            } else if (_defaultSearchFields != null) {
+                queries.add(createMultiMatchQuery(_defaultSearchFields, SearchRequestTemplate.placeholder(0)));
+            } else {
+                queries.add(createMatchQuery("_all", SearchRequestTemplate.placeholder(0)));
+            }
+        }
+        for (int i = 0; i < getQueryInputCount(); i++) {
+            final String queryField = queryFields[i];
+            final int boostIndex = queryField.lastIndexOf('^');
+            if (boostIndex == -1) {
+                queries.add(createMatchQuery(queryField, SearchRequestTemplate.placeholder(1 + i)));
+            } else {
+                final float boost = Float.parseFloat(queryField.substring(boostIndex + 1));
+                queries.add(createMatchQuery(queryField.substring(0, boostIndex),
+                        SearchRequestTemplate.placeholder(1 + i)).boost(boost));
+            }
+        }
+
+        QueryBuilder query;
+        if (queries.size() == 1) {
+            query = queries.get(0);
+        } else {
+            final BoolQueryBuilder boolQuery = QueryBuilders.boolQuery().minimumNumberShouldMatch(1);
+            for (QueryBuilder clause : queries) {
+                boolQuery.should(clause);
+            }
+            query = boolQuery;
+        }
+
+        if (filterMask != 0) {
+            final BoolFilterBuilder filter = FilterBuilders.boolFilter();
+            final int offset = 1 + getQueryInputCount();
+            for (int i = 0; i < filterInputs.length; i++) {
+                if ((filterMask & (1 << i)) != 0) {
+                    filter.must(FilterBuilders.termFilter(filterFields[i], SearchRequestTemplate.placeholder(offset
+                            + i)));
+                }
+            }
+            query = QueryBuilders.filteredQuery(query, filter);
+        }
+
+        final SearchSourceBuilder searchSource = new SearchSourceBuilder().query(query).size(1).explain(explain);
+        if (terminateAfter > 0) {
+            searchSource.terminateAfter(terminateAfter);
+        }
+        if (searchTimeoutMillis > 0) {
+            searchSource.timeout(TimeValue.timeValueMillis(searchTimeoutMillis));
+        }
+        return new SearchRequestTemplate(searchSource);
+    }
+
+    private MatchQueryBuilder createMatchQuery(String field, String text) {
+        final MatchQueryBuilder query = QueryBuilders.matchQuery(field, text);
+        if (!StringUtils.isNullOrEmpty(analyzerName)) {
+            query.analyzer(analyzerName);
+        }
+        if (!StringUtils.isNullOrEmpty(fuzziness)) {
+            query.fuzziness(fuzziness);
+        }
+        return query;
+    }
+
+    private MultiMatchQueryBuilder createMultiMatchQuery(String[] fields, String text) {
+        final MultiMatchQueryBuilder query = QueryBuilders.multiMatchQuery(text, fields);
+        if (!StringUtils.isNullOrEmpty(analyzerName)) {
+            query.analyzer(analyzerName);
+        }
+        if (!StringUtils.isNullOrEmpty(fuzziness)) {
+            query.fuzziness(fuzziness);
+        }
+        return query;
+    }
+
+    private int getQueryInputCount() {
+        return queryInputs == null ? 0 : queryInputs.length;
+    }
+
+    private int getFilterInputCount() {
+        return filterInputs == null ? 0 : filterInputs.length;
+    }
+
     @Override
     public OutputColumns getOutputColumns() {
         String[] names = new String[] { "Document ID", "Document" };
@@ -114,44 +399,179 @@ public class ElasticSearchFullSearchTransformer implements ElasticSearchTransfor
 
     @Override
     public Object[] transform(InputRow row) {
-        final Object[] result = new Object[2];
-
-        final String input = row.getValue(searchInput);
-        if (StringUtils.isNullOrEmpty(input)) {
-            return result;
+        final String[] values = getSearchValues(row);
+        if (values == null) {
+            return new Object[2];
         }
+        final String key = createKey(values);
         try {
             final ElasticSearchDataContext dataContext = (ElasticSearchDataContext) _connection.getDataContext();
             final Client client = dataContext.getElasticSearchClient();
-            MatchQueryBuilder query;
-            if (StringUtils.isNullOrEmpty(searchFieldName)) {
-                query = QueryBuilders.matchQuery("_all", input);
-            } else {
-                query = QueryBuilders.matchQuery(searchFieldName, input);
+
+            if (_searchCache == null) {
+                return search(client, values);
             }
 
-            if (!StringUtils.isNullOrEmpty(analyzerName)) {
-                query = query.analyzer(analyzerName);
+            // the fields and analyzer are fixed for this component, so results
+            // can be cached and shared by the input values alone
+            _requestExecutor.getMetrics().onCacheRequest();
+            final Object[] cached = _searchCache.get(key);
+            if (cached != null) {
+                return cached.clone();
             }
+            final Object[] result = _inFlightSearches.execute(key, new SingleFlight.Call<Object[]>() {
+                @Override
+                public Object[] call() {
+                    _requestExecutor.getMetrics().onCacheMiss();
+                    final Object[] result = search(client, values);
+                    _searchCache.put(key, result);
+                    return result;
+                }
+            });
+            return result.clone();
+        } catch (RuntimeException e) {
+            if (failureBehavior == RequestFailureBehavior.EMIT_NULLS) {
+                logger.warn("Search for '{}' failed, emitting nulls: {}", key, e.getMessage());
+                return new Object[2];
+            }
+            logger.error("Exception while running the ElasticSearchFullSearchTransformer", e);
+            throw e;
+        }
+    }
 
-            final SearchRequestBuilder searchRequestBuilder = new SearchRequestBuilder(client)
-                    .setIndices(elasticsearchDatastore.getIndexName()).setTypes(documentType).setQuery(query)
-                    .setSize(1).setSearchType(SearchType.QUERY_AND_FETCH).setExplain(true);
+    /**
+     * Gets the values to search for: the search input, followed by the query
+     * inputs (empty strings when not available) and the filter inputs (null
+     * when not available).
+     * 
+     * @return the values, or null if there is no text to search for
+     */
+    private String[] getSearchValues(InputRow row) {
+        final int queryInputCount = getQueryInputCount();
+        final String[] values = new String[1 + queryInputCount + getFilterInputCount()];
 
-            final SearchResponse searchResponse = searchRequestBuilder.execute().actionGet();
-            final SearchHits hits = searchResponse.getHits();
-            if (hits.getTotalHits() == 0) {
-                return result;
+        values[0] = searchInput == null ? "" : normalizeToEmpty(row.getValue(searchInput));
+        boolean hasText = !values[0].isEmpty();
+        for (int i = 0; i < queryInputCount; i++) {
+            final String value = normalizeToEmpty(ConvertToStringTransformer.transformValue(row
+                    .getValue(queryInputs[i])));
+            values[1 + i] = value;
+            hasText = hasText || !value.isEmpty();
+        }
+        if (!hasText) {
+            return null;
+        }
+
+        for (int i = 0; i < getFilterInputCount(); i++) {
+            values[1 + queryInputCount + i] = ConvertToStringTransformer.transformValue(row.getValue(filterInputs[i]));
+        }
+        return values;
+    }
+
+    private static String normalizeToEmpty(String value) {
+        final String normalized = normalize(value);
+        return normalized == null ? "" : normalized;
+    }
+
+    private static String createKey(String[] values) {
+        if (values.length == 1) {
+            return values[0];
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            // separate with characters that don't occur in text, and tell
+            // missing filter values apart from empty ones
+            sb.append(value == null ? '\u0001' : '\u0000');
+            if (value != null) {
+                sb.append(value);
             }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates the search request for a row.
+     * 
+     * @param preference
+     *            the preference of a hedged request, or null to use the
+     *            configured preference
+     */
+    SearchRequestBuilder createSearchRequest(Client client, SearchRequestTemplate requestTemplate, String preference,
+            String[] values) {
+        return new SearchRequestBuilder(client).setIndices(elasticsearchDatastore.getIndexName())
+                .setTypes(documentType).setSearchType(searchType).setPreference(preference == null ? this.preference
+                        : preference).setSource(requestTemplate.render(values));
+    }
 
+    private Object[] search(final Client client, final String[] values) {
+        final long startTime = System.nanoTime();
+        final RequestTrace trace = new RequestTrace(values.length == 1 ? values[0] : Arrays.toString(values));
+
+        int filterMask = 0;
+        final int filterOffset = 1 + getQueryInputCount();
+        for (int i = 0; i < getFilterInputCount(); i++) {
+            if (values[filterOffset + i] != null) {
+                filterMask |= 1 << i;
+            }
+        }
+        final SearchRequestTemplate requestTemplate = getRequestTemplate(filterMask);
+
+        final SearchResponse searchResponse = _requestExecutor.execute(new RequestSender<SearchResponse>() {
+            @Override
+            public ListenableActionFuture<SearchResponse> send(String preference) {
+                return createSearchRequest(client, requestTemplate, preference, values).execute();
+            }
+        }, trace);
+        final long responseTime = System.nanoTime();
+        trace.setWaitMicros(TimeUnit.NANOSECONDS.toMicros(responseTime - startTime) - trace.getBuildMicros());
+        trace.setServerMicros(TimeUnit.MILLISECONDS.toMicros(searchResponse.getTookInMillis()));
+
+        final Object[] result = new Object[2];
+        final SearchHits hits = searchResponse.getHits();
+        if (hits.getTotalHits() > 0) {
             final SearchHit hit = hits.getAt(0);
             result[0] = hit.getId();
-            result[1] = hit.sourceAsMap();
+            result[1] = Collections.unmodifiableMap(hit.sourceAsMap());
+        }
 
-            return result;
-        } catch (Exception e) {
-            logger.error("Exception while running the ElasticSearchFullSearchTransformer", e);
-            throw e;
+        trace.setConvertMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - responseTime));
+        _requestExecutor.getMetrics().getSlowRequests().record(trace);
+        return result;
+    }
+
+    /**
+     * Trims the search input and collapses runs of whitespace into a single
+     * space, which doesn't change the result of a full text query.
+     */
+    static String normalize(String input) {
+        if (input == null) {
+            return null;
+        }
+        final String trimmed = input.trim();
+        StringBuilder sb = null;
+        boolean whitespace = false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            final char c = trimmed.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (whitespace || c != ' ') {
+                    if (sb == null) {
+                        sb = new StringBuilder(trimmed.length());
+                        sb.append(trimmed, 0, i);
+                    }
+                    if (!whitespace) {
+                        sb.append(' ');
+                    }
+                } else if (sb != null) {
+                    sb.append(c);
+                }
+                whitespace = true;
+            } else {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                whitespace = false;
+            }
         }
+        return sb == null ? trimmed : sb.toString();
     }
 }
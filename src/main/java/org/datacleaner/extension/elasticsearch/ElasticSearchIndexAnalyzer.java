@@ -19,15 +19,30 @@
  */
 package org.datacleaner.extension.elasticsearch;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.inject.Named;
 
 import org.apache.metamodel.elasticsearch.nativeclient.ElasticSearchDataContext;
+import org.apache.metamodel.util.Action;
 import org.apache.metamodel.util.FileHelper;
 import org.datacleaner.api.Analyzer;
 import org.datacleaner.api.Categorized;
 import org.datacleaner.api.Close;
+import org.datacleaner.api.Concurrent;
 import org.datacleaner.api.Configured;
 import org.datacleaner.api.Description;
 import org.datacleaner.api.Initialize;
@@ -37,23 +52,27 @@ import org.datacleaner.api.MappedProperty;
 import org.datacleaner.api.NumberProperty;
 import org.datacleaner.api.Validate;
 import org.datacleaner.beans.writers.WriteDataResult;
-import org.datacleaner.beans.writers.WriteDataResultImpl;
 import org.datacleaner.components.categories.WriteSuperCategory;
 import org.datacleaner.components.convert.ConvertToStringTransformer;
 import org.datacleaner.connection.ElasticSearchDatastore;
 import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
 import org.datacleaner.connection.UpdateableDatastoreConnection;
 import org.datacleaner.extension.elasticsearch.ui.IllegalElasticSearchConnectorException;
-import org.datacleaner.util.WriteBuffer;
+import org.datacleaner.util.StringUtils;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Named("ElasticSearch indexer")
 @Description("Consumes records and indexes them in a ElasticSearch search index.")
 @Categorized(superCategory = WriteSuperCategory.class)
+@Concurrent(true)
 public class ElasticSearchIndexAnalyzer implements Analyzer<WriteDataResult> {
 
     public static final String PROPERTY_INPUT_COLUMNS = "Values";
@@ -89,12 +108,230 @@ public class ElasticSearchIndexAnalyzer implements Analyzer<WriteDataResult> {
     @Description("All fields(type=string, maxlength=256) indexed to ElasticSearch will also be kept in the raw 'not_analyzed' form. The raw fields can also be used in querying and are accessible as '{originalFieldName}.raw'")
     boolean keepStringFieldsInRawForm = true;
 
-    private AtomicInteger _counter;
-    private WriteBuffer _writeBuffer;
+    @Configured(required = false)
+    @Description("Index BigDecimal and BigInteger values (e.g. of DECIMAL and NUMERIC database columns) as strings, keeping their full precision. By default they are indexed as longs, or as doubles if they have a fraction, so that they can be used in range queries, sorting and aggregations.")
+    boolean indexBigNumbersAsStrings = false;
+
+    @Configured(required = false)
+    @Description("Removes duplicate values from fields that several value columns are mapped to.")
+    boolean deduplicateFieldValues = false;
+
+    @Configured(required = false)
+    @Description("Builds one document per group of consecutive rows with the same ID, using field names such as 'address.city' for object fields and 'orders[].amount' for arrays of objects. Requires the input to be sorted by ID (numerically for number columns) and processed in order, e.g. by a single threaded task runner; the job fails if a record arrives out of order, rather than replacing the document of its ID.")
+    boolean groupRowsById = false;
+
+    @Configured(required = false)
+    @Description("Creates an explicit mapping of the fields, based on the types of the value columns, before indexing starts instead of relying on dynamic mapping.")
+    boolean explicitMapping = false;
+
+    @Configured(required = false)
+    @Description("String fields that are only indexed in their exact (not analyzed) form when using explicit mapping, e.g. codes and identifiers.")
+    String[] keywordFields;
+
+    @Configured(required = false)
+    @Description("String fields that are only indexed as analyzed text, without a raw form, when using explicit mapping.")
+    String[] textOnlyFields;
+
+    @Configured(required = false)
+    @Description("Fields that are kept in the document source but not indexed when using explicit mapping.")
+    String[] notIndexedFields;
+
+    @Configured(required = false)
+    @Description("Fields that are indexed without doc values (used for sorting and aggregations) when using explicit mapping.")
+    String[] noDocValuesFields;
+
+    @Configured(required = false)
+    @Description("Automatically tunes the bulk size and the number of concurrent bulk requests, starting from the bulk index size, based on the observed bulk latency and rejections by the cluster.")
+    boolean adaptiveBulkSizing = false;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The smallest bulk size used when adaptive bulk sizing is enabled.")
+    int minBulkIndexSize = 100;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The largest bulk size used when adaptive bulk sizing is enabled.")
+    int maxBulkIndexSize = 20000;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The maximum number of bulk requests in flight at the same time.")
+    int maxConcurrentBulks = 4;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("Bulks taking longer than this (in milliseconds) make adaptive bulk sizing decrease the bulk size.")
+    long targetBulkLatencyMillis = 1000;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false)
+    @Description("The number of write buffers that records are spread across, each building its own bulks. Zero means one per available processor.")
+    int writeBufferStripes = 0;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The number of primary shards of a newly created index. If not set, it is derived from the expected document count, or the cluster default is used.")
+    Integer numberOfShards;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false)
+    @Description("The number of replicas of a newly created index. Capped at the number of data nodes minus one.")
+    Integer numberOfReplicas;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The expected number of documents, used to derive the number of shards of a newly created index.")
+    Long expectedDocumentCount;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The number of documents per shard aimed for when deriving the number of shards from the expected document count.")
+    long documentsPerShard = 20000000;
+
+    @Configured(required = false)
+    @Description("The refresh interval of a newly created index, e.g. '30s', or '-1' to disable refreshes.")
+    String refreshInterval;
+
+    @Configured(required = false)
+    @Description("The size of the transaction log at which a newly created index flushes it, e.g. '1gb'. A larger size means fewer flushes (Lucene commits) during a load, at the cost of a longer recovery if a node fails.")
+    String translogFlushThresholdSize;
+
+    @Configured(required = false)
+    @Description("How date values are indexed: as ISO-8601 formatted strings or as milliseconds since epoch.")
+    DateConversion dateConversion = DateConversion.ISO_8601;
+
+    @Configured(required = false)
+    @Description("Column holding the version of each record, e.g. a sequence number or last modification date. When set, ElasticSearch only indexes a document if it is newer than the indexed one, so that parallel or out of order jobs never overwrite newer data with older. Not supported when grouping rows by ID.")
+    InputColumn<?> versionColumn;
+
+    @Configured(required = false)
+    @Description("Whether a record must have a greater version than the indexed document (external) or may also have the same version (external_gte) to be indexed.")
+    ExternalVersionType versionType = ExternalVersionType.EXTERNAL;
+
+    @Configured(required = false)
+    @Description("File in which the progress of the job is saved, so that a failed job can be resumed. Requires the input to be sorted by ID (numerically for number columns) and processed in order, e.g. by a single threaded task runner; the job fails if a record arrives out of order. The file is deleted once the job completes.")
+    File checkpointFile;
+
+    @Configured(required = false)
+    @Description("Skips the records whose IDs are before the last ID of the checkpoint file, which were already indexed, continuing a job that failed.")
+    boolean resumeFromCheckpoint = false;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("How often (in seconds) the checkpoint is saved while the job runs.")
+    int checkpointIntervalSeconds = 30;
+
+    @Configured(required = false)
+    @Description("File that documents failing to be indexed are written to, one JSON object per line with the failure reason, instead of aborting the job.")
+    File deadLetterFile;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The size (in MB) at which the dead letter file is rotated.")
+    int maxDeadLetterFileSizeMb = 100;
+
+    @Configured(required = false)
+    @Description("Dead letter file (including its rotated files) of an earlier job, whose documents are indexed again after the records of this job.")
+    File replayDeadLetterFile;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The number of partitions a load is split into, to be indexed by as many jobs, e.g. on different machines. Records are assigned to partitions by the hash of their ID.")
+    int partitionCount = 1;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false)
+    @Description("The partition (from 0 to the partition count minus one) indexed by this job. Records of other partitions are skipped.")
+    int partitionIndex = 0;
+
+    @Configured(required = false)
+    @Description("Directory, shared by the jobs of all partitions, in which each partition marks when it is done. The last partition to complete finalizes the index.")
+    File partitionMarkerDirectory;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("How long (in minutes) a partition may take to finalize the index before its lock in the partition marker directory is considered stale, e.g. because the job crashed, and taken over by the next partition to complete.")
+    int partitionLockTimeoutMinutes = 60;
+
+    @Configured(required = false)
+    @Description("The refresh interval that the index is set to once loading has completed, e.g. '1s' when the load used a refresh interval of '-1'.")
+    String finalRefreshInterval;
+
+    @Configured(required = false)
+    @NumberProperty(negative = false)
+    @Description("The number of replicas that the index is set to once loading has completed, e.g. when the load used no replicas.")
+    Integer finalNumberOfReplicas;
+
+    @Configured(required = false)
+    @Description("Alias that is pointed at the index once loading has completed, and removed from any other index it pointed to.")
+    String aliasName;
+
+    @Configured(required = false)
+    @Description("Column with the timestamp of each record. When set, records are written to one index per period instead of a single index, named by the index name and the timestamp formatted with the rollover date pattern, e.g. 'logs-2026.10.17'.")
+    InputColumn<Date> rolloverTimestampColumn;
+
+    @Configured(required = false)
+    @Description("The pattern of the date in the names of indices rolled over by timestamp, e.g. 'yyyy.MM.dd' for daily or 'yyyy.MM' for monthly indices.")
+    String rolloverDatePattern = "yyyy.MM.dd";
+
+    @Configured(required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The number of documents after which a new index is started, named by the index name and a sequence number, e.g. 'logs-000002'.")
+    Long maxDocumentsPerIndex;
+
+    private ValueConverter[] _valueConverters;
+    private LongAdder _counter;
+    private StripedBulkWriteBuffer _writeBuffer;
+    private IndexRollover _rollover;
+    private ConcurrentMap<String, StripedBulkWriteBuffer> _rolloverWriteBuffers;
+    private final ReadWriteLock _rolloverLock = new ReentrantReadWriteLock();
+    private Settings _rolloverIndexSettings;
+    private String _rolloverMapping;
+    private volatile String _newestRolloverIndex;
+    private long _newestRolloverTime;
+    private int _writeBufferStripes;
+    private ElasticSearchIndexFlushAction _flushAction;
+    private BulkSizeController _bulkSizeController;
+    private DeadLetterFile _deadLetterFile;
+    private GroupedDocumentAssembler _documentAssembler;
     private UpdateableDatastoreConnection _connection;
+    private IndexCheckpoint _checkpoint;
+    private final Object _orderLock = new Object();
+    private IdOrder _idOrder;
+    private String _previousId;
+    private long _documentNumber;
+    private String _resumeLastId;
+    private long _resumeSkippedCount;
 
     @Validate
     public void validate() {
+        if (resumeFromCheckpoint && checkpointFile == null) {
+            throw new IllegalStateException("A checkpoint file must be set to resume from a checkpoint");
+        }
+        if (partitionIndex >= partitionCount) {
+            throw new IllegalStateException("Partition index must be less than the partition count");
+        }
+        if (partitionCount > 1 && partitionMarkerDirectory == null && createIndexFinalizer().isEnabled()) {
+            throw new IllegalStateException(
+                    "A partition marker directory must be set to finalize the index of a partitioned load");
+        }
+        if (rolloverTimestampColumn != null && maxDocumentsPerIndex != null) {
+            throw new IllegalStateException("Indices can be rolled over either by timestamp or by size, not both");
+        }
+        if ((rolloverTimestampColumn != null || maxDocumentsPerIndex != null) && checkpointFile != null) {
+            throw new IllegalStateException("Checkpoints are not supported when rolling over indices");
+        }
+        if (rolloverTimestampColumn != null && groupRowsById) {
+            throw new IllegalStateException("Indices cannot be rolled over by timestamp when grouping rows by ID");
+        }
+        if (versionColumn != null && groupRowsById) {
+            throw new IllegalStateException("A version column cannot be used when grouping rows by ID");
+        }
+        if (deadLetterFile != null && replayDeadLetterFile != null
+                && deadLetterFile.getAbsoluteFile().equals(replayDeadLetterFile.getAbsoluteFile())) {
+            throw new IllegalStateException("The dead letter file to replay must differ from the dead letter file");
+        }
         final ClientType clientType = elasticsearchDatastore.getClientType();
         switch (clientType) {
         case NODE:
@@ -115,14 +352,69 @@ public class ElasticSearchIndexAnalyzer implements Analyzer<WriteDataResult> {
             final ElasticSearchDataContext dataContext = (ElasticSearchDataContext) _connection.getDataContext();
 
             final Client client = dataContext.getElasticSearchClient();
-            _counter = new AtomicInteger(0);
-            _writeBuffer = new WriteBuffer(bulkIndexSize, new ElasticSearchIndexFlushAction(dataContext, fields,
-                    documentType));
+            _counter = new LongAdder();
+            _valueConverters = ValueConverters.forColumns(values, dateConversion, indexBigNumbersAsStrings);
+            if (adaptiveBulkSizing) {
+                _bulkSizeController = new BulkSizeController(true, bulkIndexSize, minBulkIndexSize,
+                        maxBulkIndexSize, maxConcurrentBulks, targetBulkLatencyMillis);
+            } else {
+                _bulkSizeController = BulkSizeController.fixed(bulkIndexSize, maxConcurrentBulks);
+            }
+            final int stripes = writeBufferStripes > 0 ? writeBufferStripes : Runtime.getRuntime()
+                    .availableProcessors();
+            _previousId = null;
+            _idOrder = IdOrder.forType(idColumn.getDataType());
+            _documentNumber = 0;
+            _resumeLastId = null;
+            _resumeSkippedCount = 0;
+            if (checkpointFile != null) {
+                final File file = partitionCount > 1 ? new File(checkpointFile.getPath() + ".partition-"
+                        + partitionIndex) : checkpointFile;
+                _checkpoint = new IndexCheckpoint(file, checkpointIntervalSeconds * 1000l);
+                if (resumeFromCheckpoint && _checkpoint.load()) {
+                    // continue the numbering of the checkpoint
+                    _documentNumber = _checkpoint.getDocumentCount();
+                    _resumeLastId = _checkpoint.getLastId();
+                    logger.info("Resuming after {} documents, skipping records with IDs before '{}'",
+                            _documentNumber, _resumeLastId);
+                }
+            } else {
+                _checkpoint = null;
+            }
+            if (groupRowsById) {
+                _documentAssembler = new GroupedDocumentAssembler(fields);
+                _flushAction = ElasticSearchIndexFlushAction.forDocuments(dataContext, documentType,
+                        _bulkSizeController);
+            } else {
+                _documentAssembler = null;
+                _flushAction = new ElasticSearchIndexFlushAction(dataContext, new FieldLayout(fields,
+                        deduplicateFieldValues), documentType, _bulkSizeController);
+            }
+            if (versionColumn != null) {
+                _flushAction.setExternalVersioning(values.length + 1, versionType);
+            }
+            if (deadLetterFile != null) {
+                _deadLetterFile = new DeadLetterFile(deadLetterFile, maxDeadLetterFileSizeMb * 1024l * 1024l);
+                _flushAction.setDeadLetterFile(_deadLetterFile);
+            } else {
+                _deadLetterFile = null;
+            }
+            _writeBuffer = new StripedBulkWriteBuffer(stripes, _bulkSizeController, _checkpoint == null ? _flushAction
+                    : _checkpoint.track(_flushAction));
+            _writeBufferStripes = stripes;
 
             final String indexName = elasticsearchDatastore.getIndexName();
-
-            if (!client.admin().indices().prepareExists(indexName).execute().actionGet().isExists())
-                client.admin().indices().prepareCreate(indexName).execute().actionGet();
+            _flushAction.getMetrics().register(getClass().getSimpleName(), indexName);
+
+            if (rolloverTimestampColumn != null) {
+                _rollover = IndexRollover.byDate(indexName, rolloverDatePattern);
+            } else if (maxDocumentsPerIndex != null) {
+                _rollover = IndexRollover.bySize(indexName, maxDocumentsPerIndex);
+            } else {
+                _rollover = null;
+            }
+            _rolloverWriteBuffers = new ConcurrentHashMap<>();
+            _newestRolloverIndex = null;
 
             XContentBuilder builder = XContentFactory.jsonBuilder()
                     .startObject()
@@ -149,9 +441,28 @@ public class ElasticSearchIndexAnalyzer implements Analyzer<WriteDataResult> {
                         .endArray();
             }
 
+            if (explicitMapping) {
+                new ExplicitMappingBuilder(fields, values, groupRowsById, indexBigNumbersAsStrings,
+                        keepStringFieldsInRawForm, keywordFields, textOnlyFields, notIndexedFields,
+                        noDocValuesFields).build(builder);
+            }
+
             builder.endObject().endObject();
-            client.admin().indices().preparePutMapping(indexName).setType(documentType).setSource(builder).execute()
-                    .actionGet();
+
+            if (_rollover != null) {
+                // the rolled over indices are created from these settings and
+                // mapping on first use, rather than from an index template,
+                // whose wildcard would also match other indices of the name
+                _rolloverIndexSettings = createIndexSettings(client);
+                _rolloverMapping = builder.string();
+                _rollover.resume(client);
+            } else {
+                if (!client.admin().indices().prepareExists(indexName).execute().actionGet().isExists()) {
+                    createIndex(client, indexName, createIndexSettings(client), null);
+                }
+                client.admin().indices().preparePutMapping(indexName).setType(documentType).setSource(builder)
+                        .execute().actionGet();
+            }
         } catch (Exception e) {
             logger.error("Exception while running the ElasticSearchIndexAnalyzer", e);
             FileHelper.safeClose(_connection);
@@ -159,8 +470,68 @@ public class ElasticSearchIndexAnalyzer implements Analyzer<WriteDataResult> {
         }
     }
 
+    private void createIndex(Client client, String indexName, Settings settings, String mapping) {
+        logger.info("Creating index '{}' with settings {}", indexName, settings.getAsMap());
+        final CreateIndexRequestBuilder request = client.admin().indices().prepareCreate(indexName).setSettings(
+                settings);
+        if (mapping != null) {
+            request.addMapping(documentType, mapping);
+        }
+        try {
+            request.execute().actionGet();
+        } catch (IndexAlreadyExistsException e) {
+            // created by another partition or job in the meantime
+        }
+        client.admin().cluster().prepareHealth(indexName).setWaitForYellowStatus().execute().actionGet();
+    }
+
+    private Settings createIndexSettings(Client client) {
+        return createIndexSettings(client.admin().cluster().prepareHealth().execute().actionGet()
+                .getNumberOfDataNodes());
+    }
+
+    Settings createIndexSettings(int dataNodes) {
+        final ImmutableSettings.Builder settings = ImmutableSettings.settingsBuilder();
+        if (numberOfShards != null) {
+            settings.put("index.number_of_shards", numberOfShards);
+        } else if (expectedDocumentCount != null) {
+            int shards = (int) Math.max(1, (expectedDocumentCount + documentsPerShard - 1) / documentsPerShard);
+            if (shards > 1 && dataNodes > 1) {
+                // round up to a multiple of the data nodes to balance the load
+                shards = (shards + dataNodes - 1) / dataNodes * dataNodes;
+            }
+            settings.put("index.number_of_shards", shards);
+        }
+        if (numberOfReplicas != null) {
+            final int replicas = Math.min(numberOfReplicas, Math.max(0, dataNodes - 1));
+            if (replicas < numberOfReplicas) {
+                logger.warn("Only {} data nodes available, creating index with {} instead of {} replicas",
+                        dataNodes, replicas, numberOfReplicas);
+            }
+            settings.put("index.number_of_replicas", replicas);
+        }
+        if (!StringUtils.isNullOrEmpty(refreshInterval)) {
+            settings.put("index.refresh_interval", refreshInterval);
+        }
+        if (!StringUtils.isNullOrEmpty(translogFlushThresholdSize)) {
+            settings.put("index.translog.flush_threshold_size", translogFlushThresholdSize);
+        }
+        return settings.build();
+    }
+
     @Close
     public void close() {
+        if (_checkpoint != null) {
+            _checkpoint.save();
+            _checkpoint = null;
+        }
+        if (_flushAction != null) {
+            _flushAction.getMetrics().unregister();
+        }
+        if (_deadLetterFile != null) {
+            FileHelper.safeClose(_deadLetterFile);
+            _deadLetterFile = null;
+        }
         if (_connection != null) {
             FileHelper.safeClose(_connection);
             _connection = null;
@@ -169,30 +540,357 @@ public class ElasticSearchIndexAnalyzer implements Analyzer<WriteDataResult> {
 
     @Override
     public void run(InputRow row, int distinctCount) {
-        final Object[] record = new Object[values.length + 1];
+        // the version and, when checkpointing, the document number follow the
+        // values
+        final Object[] record = new Object[values.length + (versionColumn == null ? 1 : 2)
+                + (_checkpoint == null ? 0 : 1)];
         final String id = ConvertToStringTransformer.transformValue(row.getValue(idColumn));
         if (id == null) {
             logger.warn("Skipping record because ID is null: {}", row);
             return;
         }
+        if (partitionCount > 1 && !PartitionCoordinator.isInPartition(id, partitionIndex, partitionCount)) {
+            return;
+        }
         record[0] = id;
+        final Date timestamp;
+        if (rolloverTimestampColumn != null) {
+            timestamp = row.getValue(rolloverTimestampColumn);
+            if (timestamp == null) {
+                logger.warn("Skipping record because timestamp is null: {}", row);
+                return;
+            }
+        } else {
+            timestamp = null;
+        }
+        if (versionColumn != null) {
+            final Long version = toVersion(row.getValue(versionColumn));
+            if (version == null) {
+                logger.warn("Skipping record because version is null or not a positive number: {}", row);
+                return;
+            }
+            record[values.length + 1] = version;
+        }
         for (int i = 0; i < values.length; i++) {
-            Object value = row.getValue(values[i]);
-            record[i + 1] = value;
+            final Object value = row.getValue(values[i]);
+            if (value != null) {
+                record[i + 1] = _valueConverters[i].convert(value);
+            }
+        }
+        if (_checkpoint == null) {
+            addRecord(record, timestamp);
+        } else {
+            final Object[] document;
+            synchronized (_orderLock) {
+                document = addCheckpointedRecord(record);
+            }
+            if (document != null) {
+                addToBuffer(document, null);
+            }
+        }
+    }
+
+    private void addRecord(Object[] record, Date timestamp) {
+        if (_documentAssembler == null) {
+            addToBuffer(record, timestamp);
+        } else {
+            // the rows of an ID must arrive one after another to end up in the
+            // same document, rather than a later document replacing it
+            final Object[] document;
+            synchronized (_orderLock) {
+                checkOrder((String) record[0], "grouping rows by ID requires");
+                document = _documentAssembler.add(record);
+            }
+            if (document != null) {
+                addToBuffer(document, null);
+            }
+        }
+    }
+
+    /**
+     * Adds a record when checkpointing, holding the checkpoint lock. Checks
+     * that the records arrive in the order of their IDs, skips those that were
+     * indexed before the checkpoint being resumed and numbers the documents.
+     * 
+     * @return the numbered document to buffer, or null if there is none (yet)
+     */
+    private Object[] addCheckpointedRecord(Object[] record) {
+        final String id = (String) record[0];
+        checkOrder(id, "checkpoints require");
+        if (_resumeLastId != null && _idOrder.compare(id, _resumeLastId) < 0) {
+            // records with the last ID itself are indexed again, since it is
+            // not known whether all of them were
+            _resumeSkippedCount++;
+            return null;
+        }
+        if (_documentAssembler == null) {
+            return numberDocument(record);
+        }
+        final Object[] document = _documentAssembler.add(record);
+        return document == null ? null : numberDocument(Arrays.copyOf(document, document.length + 1));
+    }
+
+    /**
+     * Checks that a record arrives in the order of the IDs, holding the order
+     * lock.
+     * 
+     * @param id
+     * @param requirement
+     *            what requires the order, for the error message
+     */
+    private void checkOrder(String id, String requirement) {
+        if (_previousId != null && _idOrder.compare(id, _previousId) < 0) {
+            throw new IllegalStateException("Record with ID '" + id + "' arrived after ID '" + _previousId + "', but "
+                    + requirement + " the records to be sorted by ID and processed in order");
+        }
+        _previousId = id;
+    }
+
+    /**
+     * Sets the number of a document in its last element.
+     */
+    private Object[] numberDocument(Object[] document) {
+        document[document.length - 1] = ++_documentNumber;
+        return document;
+    }
+
+    /**
+     * Gets the write buffer of a rolled over index, creating the index if it
+     * does not exist yet. Each index has its own buffer, so bulks never span
+     * indices.
+     */
+    private StripedBulkWriteBuffer getRolloverWriteBuffer(String indexName) {
+        StripedBulkWriteBuffer writeBuffer = _rolloverWriteBuffers.get(indexName);
+        if (writeBuffer == null) {
+            synchronized (_rolloverWriteBuffers) {
+                writeBuffer = _rolloverWriteBuffers.get(indexName);
+                if (writeBuffer == null) {
+                    final Client client = ((ElasticSearchDataContext) _connection.getDataContext())
+                            .getElasticSearchClient();
+                    if (!client.admin().indices().prepareExists(indexName).execute().actionGet().isExists()) {
+                        createIndex(client, indexName, _rolloverIndexSettings, _rolloverMapping);
+                    }
+                    writeBuffer = new StripedBulkWriteBuffer(_writeBufferStripes, _bulkSizeController, _flushAction
+                            .forIndex(indexName));
+                    _rolloverWriteBuffers.put(indexName, writeBuffer);
+                }
+            }
+        }
+        return writeBuffer;
+    }
+
+    /**
+     * Converts a version value to a long. Dates are converted to milliseconds
+     * since epoch.
+     * 
+     * @return the version, or null if the value is not a valid version
+     */
+    static Long toVersion(Object value) {
+        final long version;
+        if (value == null) {
+            return null;
+        } else if (value instanceof Number) {
+            version = ((Number) value).longValue();
+        } else if (value instanceof Date) {
+            version = ((Date) value).getTime();
+        } else {
+            try {
+                version = Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return version < 0 ? null : version;
+    }
+
+    private void addToBuffer(Object[] record, Date timestamp) {
+        if (_rollover == null) {
+            _writeBuffer.addToBuffer(record);
+        } else {
+            final String indexName = _rollover.getIndexName(timestamp);
+            advanceRollover(indexName, timestamp);
+            // adding is shared, evicting the buffers of past indices exclusive
+            _rolloverLock.readLock().lock();
+            try {
+                getRolloverWriteBuffer(indexName).addToBuffer(record);
+            } finally {
+                _rolloverLock.readLock().unlock();
+            }
+        }
+        _counter.increment();
+    }
+
+    /**
+     * Flushes and removes the write buffers of all other indices when records
+     * move on to a newer index, so that the buffers of past periods do not
+     * keep documents and memory until the job ends. A late record for a past
+     * period gets a new buffer of its index.
+     */
+    private void advanceRollover(String indexName, Date timestamp) {
+        if (indexName.equals(_newestRolloverIndex)) {
+            return;
+        }
+        _rolloverLock.writeLock().lock();
+        try {
+            if (indexName.equals(_newestRolloverIndex)) {
+                return;
+            }
+            // indices rolled over by size only move forward
+            final long time = _rollover.isByDate() ? timestamp.getTime() : 0;
+            if (_newestRolloverIndex != null && _rollover.isByDate() && time <= _newestRolloverTime) {
+                return;
+            }
+            _newestRolloverIndex = indexName;
+            _newestRolloverTime = time;
+            for (Iterator<Map.Entry<String, StripedBulkWriteBuffer>> it = _rolloverWriteBuffers.entrySet()
+                    .iterator(); it.hasNext();) {
+                final Map.Entry<String, StripedBulkWriteBuffer> entry = it.next();
+                if (!entry.getKey().equals(indexName)) {
+                    logger.info("Rolled over from index '{}' to '{}'", entry.getKey(), indexName);
+                    entry.getValue().flushBuffer();
+                    it.remove();
+                }
+            }
+        } finally {
+            _rolloverLock.writeLock().unlock();
         }
-        _writeBuffer.addToBuffer(record);
-        _counter.incrementAndGet();
     }
 
     @Override
     public WriteDataResult getResult() {
+        if (_documentAssembler != null) {
+            Object[] document = _documentAssembler.flush();
+            if (document != null) {
+                if (_checkpoint != null) {
+                    synchronized (_orderLock) {
+                        document = numberDocument(Arrays.copyOf(document, document.length + 1));
+                    }
+                }
+                addToBuffer(document, null);
+            }
+        }
         _writeBuffer.flushBuffer();
+        for (StripedBulkWriteBuffer writeBuffer : _rolloverWriteBuffers.values()) {
+            writeBuffer.flushBuffer();
+        }
+
+        final long replaySkippedCount = replayDeadLetterFile == null ? 0 : replayDeadLetters();
+
+        finalizeIndex();
+
+        if (_checkpoint != null) {
+            if (_resumeSkippedCount > 0) {
+                logger.info("Skipped {} records that were indexed before the checkpoint", _resumeSkippedCount);
+            }
+            _checkpoint.delete();
+            _checkpoint = null;
+        }
 
-        final int indexCount = _counter.get();
-        final WriteDataResult result = new WriteDataResultImpl(indexCount, 0, 0);
+        final int errorCount = _deadLetterFile == null ? 0 : (int) _deadLetterFile.getCount();
+        final int skippedCount = (int) (_flushAction.getMetrics().getVersionConflictCount() + replaySkippedCount);
+        final int indexCount = _counter.intValue() - errorCount - skippedCount;
+        final List<RequestTrace> slowestBulks = _flushAction.getMetrics().getSlowRequests().getSlowest();
+        if (logger.isInfoEnabled()) {
+            for (RequestTrace trace : slowestBulks) {
+                logger.info("Slowest bulks: {}", trace);
+            }
+        }
+        final WriteDataResult result = new ElasticSearchIndexResult(indexCount, 0, errorCount, skippedCount,
+                _flushAction.getBulkLatencies(), slowestBulks);
         return result;
     }
 
+    private IndexFinalizer createIndexFinalizer() {
+        return new IndexFinalizer(finalRefreshInterval, finalNumberOfReplicas, aliasName);
+    }
+
+    /**
+     * Finalizes the index, or - for a partitioned load - marks this partition
+     * as done and finalizes the index if all partitions are done.
+     */
+    private void finalizeIndex() {
+        final IndexFinalizer finalizer = createIndexFinalizer();
+        final Client client = ((ElasticSearchDataContext) _connection.getDataContext()).getElasticSearchClient();
+        if (partitionCount == 1 || partitionMarkerDirectory == null) {
+            if (finalizer.isEnabled()) {
+                finalizer.finalizeIndex(client, getIndexNames(client));
+            }
+            return;
+        }
+
+        final PartitionCoordinator coordinator = new PartitionCoordinator(partitionMarkerDirectory, partitionIndex,
+                partitionCount, TimeUnit.MINUTES.toMillis(partitionLockTimeoutMinutes));
+        try {
+            if (coordinator.markDone()) {
+                try {
+                    finalizer.finalizeIndex(client, getIndexNames(client));
+                } catch (RuntimeException e) {
+                    coordinator.releaseLock();
+                    throw e;
+                }
+                coordinator.finalized();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to coordinate partitions in " + partitionMarkerDirectory, e);
+        }
+    }
+
+    /**
+     * Gets the names of the indices written to, which for a rollover are all
+     * of its indices, including those written by other jobs.
+     */
+    private String[] getIndexNames(Client client) {
+        if (_rollover == null) {
+            return new String[] { elasticsearchDatastore.getIndexName() };
+        }
+        return _rollover.getIndexNames(client);
+    }
+
+    /**
+     * Indexes the documents of the dead letter file to replay again.
+     * Documents that failed with an external version are replayed with that
+     * version and version type, so that they do not overwrite newer documents
+     * indexed since.
+     * 
+     * @return the number of replayed documents skipped because of a version
+     *         conflict
+     */
+    private long replayDeadLetters() {
+        final ElasticSearchDataContext dataContext = (ElasticSearchDataContext) _connection.getDataContext();
+        final ElasticSearchIndexFlushAction replayFlushAction = ElasticSearchIndexFlushAction.forDocuments(
+                dataContext, documentType, _bulkSizeController);
+        replayFlushAction.setDeadLetterFile(_deadLetterFile);
+        // the version and version type, if any, follow the index name
+        replayFlushAction.setExternalVersioning(3, 4);
+        // documents are replayed into the index they failed to be written to
+        final Map<String, BulkWriteBuffer> replayBuffers = new HashMap<>();
+        try {
+            final long replayCount = DeadLetterFile.readDocuments(replayDeadLetterFile, new Action<Object[]>() {
+                @Override
+                public void run(Object[] document) {
+                    final String indexName = document[2] == null ? replayFlushAction.getIndexName()
+                            : (String) document[2];
+                    BulkWriteBuffer replayBuffer = replayBuffers.get(indexName);
+                    if (replayBuffer == null) {
+                        replayBuffer = new BulkWriteBuffer(_bulkSizeController, replayFlushAction.forIndex(indexName));
+                        replayBuffers.put(indexName, replayBuffer);
+                    }
+                    replayBuffer.addToBuffer(document);
+                    _counter.increment();
+                }
+            });
+            for (BulkWriteBuffer replayBuffer : replayBuffers.values()) {
+                replayBuffer.flushBuffer();
+            }
+            logger.info("Replayed {} documents from dead letter file {}", replayCount, replayDeadLetterFile);
+            return replayFlushAction.getMetrics().getVersionConflictCount();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to replay dead letter file " + replayDeadLetterFile, e);
+        }
+    }
+
     public void setBulkIndexSize(int bulkIndexSize) {
         this.bulkIndexSize = bulkIndexSize;
     }
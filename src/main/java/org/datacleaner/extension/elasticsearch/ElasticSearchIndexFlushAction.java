@@ -19,83 +19,449 @@
  */
 package org.datacleaner.extension.elasticsearch;
 
-import java.util.Arrays;
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.metamodel.elasticsearch.nativeclient.ElasticSearchDataContext;
 import org.apache.metamodel.util.Action;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.transport.NoNodeAvailableException;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * WriteBuffer flush action for writing documents to the elastic search index.
+ * 
+ * Records are arrays with the document ID as the first element, followed
+ * either by the values of each field, or - when created with
+ * {@link #forDocuments(ElasticSearchDataContext, String, BulkSizeController)}
+ * - by a single, already assembled document map.
+ * 
+ * Requests that fail are retried if they were rejected because the cluster
+ * was overloaded. Other failures abort the job, unless a {@link DeadLetterFile}
+ * is set, in which case failed requests are written to it and the job goes on.
+ * 
+ * @see ElasticSearchDeleteFlushAction
  */
 public class ElasticSearchIndexFlushAction implements Action<Iterable<Object[]>> {
 
     private static final Logger logger = LoggerFactory.getLogger(ElasticSearchIndexFlushAction.class);
-    private final String[] _fields;
+
+    private static final int MAX_REJECTION_RETRIES = 5;
+    private static final long REJECTION_BACKOFF_MILLIS = 100;
+
+    private final FieldLayout _fieldLayout;
     private final String _documentType;
     private final ElasticSearchDataContext _elasticSearchDataContext;
+    private final String _indexName;
+    private final BulkSizeController _bulkSizeController;
+    private final ElasticSearchMetrics _metrics;
+    private volatile DeadLetterFile _deadLetterFile;
+    private int _versionIndex;
+    private ExternalVersionType _versionType;
+    private int _versionTypeIndex;
 
     public ElasticSearchIndexFlushAction(ElasticSearchDataContext elasticSearchDataContext, String[] fields,
             String documentType) {
+        this(elasticSearchDataContext, fields, documentType, null);
+    }
+
+    public ElasticSearchIndexFlushAction(ElasticSearchDataContext elasticSearchDataContext, String[] fields,
+            String documentType, BulkSizeController bulkSizeController) {
+        this(elasticSearchDataContext, fields == null ? null : new FieldLayout(fields, false), documentType,
+                bulkSizeController);
+    }
+
+    public ElasticSearchIndexFlushAction(ElasticSearchDataContext elasticSearchDataContext, FieldLayout fieldLayout,
+            String documentType, BulkSizeController bulkSizeController) {
         _elasticSearchDataContext = elasticSearchDataContext;
-        _fields = fields;
+        _indexName = elasticSearchDataContext.getIndexName();
+        _fieldLayout = fieldLayout;
         _documentType = documentType;
+        _bulkSizeController = bulkSizeController;
+        _metrics = new ElasticSearchMetrics();
+        _versionIndex = -1;
+        _versionType = null;
+        _versionTypeIndex = -1;
+    }
+
+    private ElasticSearchIndexFlushAction(ElasticSearchIndexFlushAction prototype, String indexName) {
+        _elasticSearchDataContext = prototype._elasticSearchDataContext;
+        _indexName = indexName;
+        _fieldLayout = prototype._fieldLayout;
+        _documentType = prototype._documentType;
+        _bulkSizeController = prototype._bulkSizeController;
+        _metrics = prototype._metrics;
+        _deadLetterFile = prototype._deadLetterFile;
+        _versionIndex = prototype._versionIndex;
+        _versionType = prototype._versionType;
+        _versionTypeIndex = prototype._versionTypeIndex;
+    }
+
+    /**
+     * Creates a flush action that writes the same kind of records to another
+     * index, e.g. when rolling over indices. It shares the bulk size
+     * controller, metrics, dead letter file and versioning of this flush
+     * action.
+     * 
+     * @param indexName
+     * @return a flush action for the other index
+     */
+    public ElasticSearchIndexFlushAction forIndex(String indexName) {
+        return new ElasticSearchIndexFlushAction(this, indexName);
+    }
+
+    /**
+     * Creates a flush action for records that hold an already assembled
+     * document map rather than field values.
+     * 
+     * @param elasticSearchDataContext
+     * @param documentType
+     * @param bulkSizeController
+     * @return a flush action for records of document ID and document map
+     */
+    public static ElasticSearchIndexFlushAction forDocuments(ElasticSearchDataContext elasticSearchDataContext,
+            String documentType, BulkSizeController bulkSizeController) {
+        return new ElasticSearchIndexFlushAction(elasticSearchDataContext, (FieldLayout) null, documentType,
+                bulkSizeController);
     }
 
     @Override
     public void run(Iterable<Object[]> rows) throws Exception {
         try {
+            final long buildStartTime = System.nanoTime();
             final Client client = _elasticSearchDataContext.getElasticSearchClient();
-            final BulkRequestBuilder bulkRequestBuilder = new BulkRequestBuilder(client);
+            BulkRequestBuilder bulkRequestBuilder = new BulkRequestBuilder(client);
 
+            String firstId = null;
             for (Object[] row : rows) {
                 final String id = (String) row[0];
-                final Map<String, Object> map = new HashMap<String, Object>();
-                for (int i = 1; i < row.length; i++) {
-                    String field = _fields[i - 1];
-                    Object value = row[i];
-                    if (value != null) {
-                        final Object valueInMap = map.get(field);
-                        // If already a value exist for a field, then add to the
-                        // list.
-                        if (valueInMap != null) {
-                            value = Arrays.asList(valueInMap, value);
+                if (firstId == null) {
+                    firstId = id;
+                }
+                bulkRequestBuilder.request().add(createRequest(id, row));
+            }
+
+            final String description = "Bulk of " + bulkRequestBuilder.numberOfActions()
+                    + " documents starting with id '" + firstId + "'";
+            RequestTrace trace = new RequestTrace(description);
+            trace.setBuildMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - buildStartTime));
+
+            for (int attempt = 0;; attempt++) {
+                final BulkResponse response = execute(bulkRequestBuilder, trace);
+                final long responseTime = System.nanoTime();
+                if (_deadLetterFile != null && response != null && response.hasFailures()) {
+                    writeDeadLetters(bulkRequestBuilder, response);
+                }
+                final BulkRequestBuilder rejected = createRetryBulk(client, bulkRequestBuilder, response);
+                trace.setConvertMicros(trace.getConvertMicros()
+                        + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - responseTime));
+                _metrics.getSlowRequests().record(trace);
+
+                if (rejected == null) {
+                    if (_deadLetterFile == null && response != null && hasFailures(response)) {
+                        throw new IllegalStateException(response.buildFailureMessage());
+                    }
+                    return;
+                }
+
+                if (attempt >= MAX_REJECTION_RETRIES) {
+                    if (_deadLetterFile != null) {
+                        final String reason = "Rejected by the cluster " + (attempt + 1) + " times";
+                        for (ActionRequest<?> request : rejected.request().requests()) {
+                            _deadLetterFile.write(request, RestStatus.TOO_MANY_REQUESTS.getStatus(), reason);
                         }
-                        map.put(field, value);
+                        return;
+                    }
+                    if (response == null) {
+                        throw new IllegalStateException("Bulk of " + bulkRequestBuilder.numberOfActions()
+                                + " documents was rejected by the cluster " + (attempt + 1) + " times");
                     }
+                    throw new IllegalStateException(response.buildFailureMessage());
                 }
-                logger.debug("Indexing record ({}): {}", id, map);
-                final IndexRequest indexRequest = new IndexRequest(_elasticSearchDataContext.getIndexName(),
-                        _documentType, id);
-                indexRequest.source(map);
-                indexRequest.operationThreaded(false);
-                bulkRequestBuilder.add(indexRequest);
+
+                final long backoff = REJECTION_BACKOFF_MILLIS << attempt;
+                logger.info("{} documents were rejected by the cluster, retrying in {} ms",
+                        rejected.numberOfActions(), backoff);
+                _metrics.onRetry(rejected.numberOfActions());
+                Thread.sleep(backoff);
+                bulkRequestBuilder = rejected;
+                trace = new RequestTrace(description + " (retry " + (attempt + 1) + " of "
+                        + rejected.numberOfActions() + " documents)");
+            }
+        } catch (Exception e) {
+            logger.error("Unexpected error occurred while flushing ElasticSearch index buffer", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Creates the request of a single record in a bulk. Subclasses may
+     * override this to issue other kinds of bulk requests through the same
+     * pipeline of bounded, concurrent and retried bulks.
+     * 
+     * @param id
+     *            the document ID, the first element of the record
+     * @param row
+     *            the record
+     * @return an index, delete or update request
+     */
+    protected ActionRequest<?> createRequest(String id, Object[] row) {
+        final Map<String, Object> map = createDocument(row);
+        logger.debug("Indexing record ({}): {}", id, map);
+        final IndexRequest indexRequest = new IndexRequest(_indexName, _documentType, id);
+        indexRequest.source(map);
+        indexRequest.operationThreaded(false);
+        if (_versionIndex != -1 && row[_versionIndex] != null) {
+            final ExternalVersionType versionType = _versionTypeIndex == -1 ? _versionType
+                    : (ExternalVersionType) row[_versionTypeIndex];
+            indexRequest.version((Long) row[_versionIndex]);
+            indexRequest.versionType(versionType.getVersionType());
+        }
+        return indexRequest;
+    }
+
+    /**
+     * Writes the requests that failed for other reasons than being rejected to
+     * the dead letter file.
+     */
+    private void writeDeadLetters(BulkRequestBuilder bulkRequestBuilder, BulkResponse response) throws IOException {
+        final List<ActionRequest> requests = bulkRequestBuilder.request().requests();
+        for (BulkItemResponse item : response.getItems()) {
+            if (isFailure(item) && !isRejected(item)) {
+                logger.debug("Writing failed document ({}) to dead letter file: {}", item.getId(),
+                        item.getFailureMessage());
+                _deadLetterFile.write(requests.get(item.getItemId()), item.getFailure().getStatus().getStatus(),
+                        item.getFailureMessage());
             }
+        }
+    }
+
+    /**
+     * Sets the file that requests failing for other reasons than being rejected
+     * by an overloaded cluster are written to, instead of aborting the job.
+     * 
+     * @param deadLetterFile
+     *            the dead letter file, or null to abort on failures
+     */
+    public void setDeadLetterFile(DeadLetterFile deadLetterFile) {
+        _deadLetterFile = deadLetterFile;
+    }
+
+    /**
+     * Makes documents be indexed with an external version, so that
+     * ElasticSearch rejects documents older than the indexed ones. Such
+     * version conflicts are not treated as failures, but counted as skipped
+     * documents.
+     * 
+     * @param versionIndex
+     *            the index of the version (a Long) in the records; records
+     *            without a version are indexed with internal versioning
+     * @param versionType
+     *            the type of versioning
+     */
+    public void setExternalVersioning(int versionIndex, ExternalVersionType versionType) {
+        _versionIndex = versionIndex;
+        _versionType = versionType;
+        _versionTypeIndex = -1;
+    }
 
-            // execute and block until done.
-            BulkResponse response;
+    /**
+     * Makes documents be indexed with an external version like
+     * {@link #setExternalVersioning(int, ExternalVersionType)}, taking the
+     * type of versioning from each record, e.g. when replaying dead letters
+     * that were indexed with different types.
+     * 
+     * @param versionIndex
+     *            the index of the version (a Long) in the records; records
+     *            without a version are indexed with internal versioning
+     * @param versionTypeIndex
+     *            the index of the {@link ExternalVersionType} in the records
+     */
+    public void setExternalVersioning(int versionIndex, int versionTypeIndex) {
+        _versionIndex = versionIndex;
+        _versionType = null;
+        _versionTypeIndex = versionTypeIndex;
+    }
+
+    public String getIndexName() {
+        return _indexName;
+    }
+
+    protected String getDocumentType() {
+        return _documentType;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> createDocument(Object[] row) {
+        if (_fieldLayout == null) {
+            return (Map<String, Object>) row[1];
+        }
+        return _fieldLayout.createDocument(row);
+    }
+
+    /**
+     * Executes a bulk and blocks until done.
+     * 
+     * @return the response, or null if the whole bulk was rejected
+     */
+    private BulkResponse execute(BulkRequestBuilder bulkRequestBuilder, RequestTrace trace)
+            throws InterruptedException {
+        final int itemCount = bulkRequestBuilder.numberOfActions();
+        _metrics.onBulkStarted(bulkRequestBuilder.request().estimatedSizeInBytes());
+        final long startTime = System.nanoTime();
+        BulkResponse response;
+        try {
             try {
-                response = bulkRequestBuilder.execute().actionGet();
+                response = executeBulk(bulkRequestBuilder);
             } catch (NoNodeAvailableException e) {
                 // retry after a short wait
                 Thread.sleep(100);
-                response = bulkRequestBuilder.execute().actionGet();
+                response = executeBulk(bulkRequestBuilder);
             }
-            if (response.hasFailures()) {
-                throw new IllegalStateException(response.buildFailureMessage());
+        } catch (RuntimeException e) {
+            if (ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException) {
+                trace.setWaitMicros(onBulkCompleted(itemCount, 0, itemCount, startTime));
+                return null;
             }
-        } catch (Exception e) {
-            logger.error("Unexpected error occurred while flushing ElasticSearch index buffer", e);
+            _metrics.onBulkCompleted(0, 0, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+            throw e;
+        } catch (InterruptedException e) {
+            // interrupted while waiting to retry, the bulk is no longer in flight
+            _metrics.onBulkCompleted(0, 0, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+            Thread.currentThread().interrupt();
             throw e;
         }
+
+        trace.setWaitMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+        trace.setServerMicros(TimeUnit.MILLISECONDS.toMicros(response.getTookInMillis()));
+
+        final long convertStartTime = System.nanoTime();
+        int failedCount = 0;
+        int rejectedCount = 0;
+        int conflictCount = 0;
+        if (response.hasFailures()) {
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    failedCount++;
+                    if (isRejected(item)) {
+                        rejectedCount++;
+                    } else if (isVersionConflict(item)) {
+                        conflictCount++;
+                    }
+                }
+            }
+        }
+        trace.setConvertMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - convertStartTime));
+        if (conflictCount > 0) {
+            _metrics.onVersionConflicts(conflictCount);
+        }
+        onBulkCompleted(itemCount, itemCount - failedCount, rejectedCount, startTime);
+        return response;
+    }
+
+    /**
+     * Sends a bulk to the cluster and blocks until its response arrives.
+     */
+    BulkResponse executeBulk(BulkRequestBuilder bulkRequestBuilder) {
+        return bulkRequestBuilder.execute().actionGet();
+    }
+
+    private long onBulkCompleted(int itemCount, int indexedCount, int rejectedCount, long startTime) {
+        final long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime);
+        _metrics.onBulkCompleted(indexedCount, rejectedCount, latencyMicros);
+        if (_bulkSizeController != null) {
+            _bulkSizeController.onBulkCompleted(itemCount, rejectedCount, latencyMicros / 1000);
+        }
+        return latencyMicros;
+    }
+
+    /**
+     * Gets the latencies of the bulk requests executed by this flush action,
+     * including retries.
+     * 
+     * @return the histogram of bulk latencies
+     */
+    public LatencyHistogram getBulkLatencies() {
+        return _metrics.getBulkLatencies();
+    }
+
+    public ElasticSearchMetrics getMetrics() {
+        return _metrics;
+    }
+
+    /**
+     * Creates a bulk of the requests that were rejected because the cluster was
+     * overloaded.
+     * 
+     * @return a bulk to retry, or null if nothing needs to be retried
+     */
+    private BulkRequestBuilder createRetryBulk(Client client, BulkRequestBuilder bulkRequestBuilder,
+            BulkResponse response) {
+        if (response == null) {
+            return bulkRequestBuilder;
+        }
+        if (!response.hasFailures()) {
+            return null;
+        }
+
+        final List<ActionRequest> requests = bulkRequestBuilder.request().requests();
+        final List<ActionRequest> retries = new ArrayList<>();
+        for (BulkItemResponse item : response.getItems()) {
+            if (isRejected(item)) {
+                retries.add(requests.get(item.getItemId()));
+            } else if (isFailure(item) && _deadLetterFile == null) {
+                // non-retryable failure, no point in retrying the rest
+                return null;
+            }
+        }
+        if (retries.isEmpty()) {
+            return null;
+        }
+
+        final BulkRequestBuilder retryBulk = new BulkRequestBuilder(client);
+        for (ActionRequest request : retries) {
+            retryBulk.request().add(request);
+        }
+        return retryBulk;
+    }
+
+    private boolean hasFailures(BulkResponse response) {
+        if (!response.hasFailures()) {
+            return false;
+        }
+        for (BulkItemResponse item : response.getItems()) {
+            if (isFailure(item)) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    /**
+     * Determines if a bulk item failed, not counting version conflicts when
+     * using external versioning.
+     */
+    private boolean isFailure(BulkItemResponse item) {
+        return item.isFailed() && !isVersionConflict(item);
+    }
+
+    private boolean isVersionConflict(BulkItemResponse item) {
+        return _versionIndex != -1 && item.isFailed() && item.getFailure().getStatus() == RestStatus.CONFLICT;
+    }
+
+    private static boolean isRejected(BulkItemResponse item) {
+        return item.isFailed() && item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS;
+    }
 }
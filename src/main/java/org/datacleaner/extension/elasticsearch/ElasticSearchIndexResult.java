@@ -0,0 +1,121 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.datacleaner.api.Description;
+import org.datacleaner.api.Metric;
+import org.datacleaner.beans.writers.WriteDataResultImpl;
+
+/**
+ * Result of the {@link ElasticSearchIndexAnalyzer} and the
+ * {@link ElasticSearchDeleteAnalyzer}. Besides the written row count it holds
+ * statistics of the bulk requests that were executed and the timing breakdown
+ * of the slowest of them.
+ */
+public class ElasticSearchIndexResult extends WriteDataResultImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long _bulkCount;
+    private final long _bulkLatencyMeanMicros;
+    private final long _bulkLatency50Micros;
+    private final long _bulkLatency95Micros;
+    private final long _bulkLatency99Micros;
+    private final long _bulkLatencyMaxMicros;
+    private final List<String> _slowestBulks;
+    private final int _skippedCount;
+
+    public ElasticSearchIndexResult(int writtenRowCount, int updatesCount, int errorRowCount,
+            LatencyHistogram bulkLatencies) {
+        this(writtenRowCount, updatesCount, errorRowCount, bulkLatencies, Collections.<RequestTrace> emptyList());
+    }
+
+    public ElasticSearchIndexResult(int writtenRowCount, int updatesCount, int errorRowCount,
+            LatencyHistogram bulkLatencies, List<RequestTrace> slowestBulks) {
+        this(writtenRowCount, updatesCount, errorRowCount, 0, bulkLatencies, slowestBulks);
+    }
+
+    public ElasticSearchIndexResult(int writtenRowCount, int updatesCount, int errorRowCount, int skippedCount,
+            LatencyHistogram bulkLatencies, List<RequestTrace> slowestBulks) {
+        super(writtenRowCount, updatesCount, errorRowCount);
+        _skippedCount = skippedCount;
+        _bulkCount = bulkLatencies.getCount();
+        _bulkLatencyMeanMicros = (long) bulkLatencies.getMeanMicros();
+        _bulkLatency50Micros = bulkLatencies.getPercentileMicros(50);
+        _bulkLatency95Micros = bulkLatencies.getPercentileMicros(95);
+        _bulkLatency99Micros = bulkLatencies.getPercentileMicros(99);
+        _bulkLatencyMaxMicros = bulkLatencies.getMaxMicros();
+        _slowestBulks = new ArrayList<>(slowestBulks.size());
+        for (RequestTrace trace : slowestBulks) {
+            _slowestBulks.add(trace.toString());
+        }
+    }
+
+    @Metric("Skipped rows")
+    @Description("The number of documents not written because the index already held the same or a newer version of them")
+    public int getSkippedCount() {
+        return _skippedCount;
+    }
+
+    @Metric("Bulk requests")
+    @Description("The number of bulk requests executed, including retries")
+    public long getBulkCount() {
+        return _bulkCount;
+    }
+
+    @Metric("Bulk latency mean (ms)")
+    public double getBulkLatencyMeanMillis() {
+        return _bulkLatencyMeanMicros / 1000d;
+    }
+
+    @Metric("Bulk latency p50 (ms)")
+    public double getBulkLatency50Millis() {
+        return _bulkLatency50Micros / 1000d;
+    }
+
+    @Metric("Bulk latency p95 (ms)")
+    public double getBulkLatency95Millis() {
+        return _bulkLatency95Micros / 1000d;
+    }
+
+    @Metric("Bulk latency p99 (ms)")
+    public double getBulkLatency99Millis() {
+        return _bulkLatency99Micros / 1000d;
+    }
+
+    @Metric("Bulk latency max (ms)")
+    public double getBulkLatencyMaxMillis() {
+        return _bulkLatencyMaxMicros / 1000d;
+    }
+
+    /**
+     * Gets the timing breakdown (build, wire, server and convert time) of the
+     * slowest bulk requests, slowest first.
+     * 
+     * @return the slowest bulk requests
+     */
+    public List<String> getSlowestBulks() {
+        return Collections.unmodifiableList(_slowestBulks);
+    }
+}
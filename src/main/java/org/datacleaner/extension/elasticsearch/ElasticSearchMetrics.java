@@ -0,0 +1,304 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.lang.management.ManagementFactory;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters and latency histograms of a single component, which can be exposed
+ * as an MBean over JMX, tagged by component and index.
+ * 
+ * Recording is lock-free, so the metrics are always collected and only
+ * registering them with JMX is optional.
+ */
+public class ElasticSearchMetrics implements ElasticSearchMetricsMBean {
+
+    public static final String JMX_DOMAIN = "org.datacleaner.extension.elasticsearch";
+
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchMetrics.class);
+
+    private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
+    private static final int SLOW_REQUEST_LOG_SIZE = 10;
+
+    private final long _startTime;
+    private final LongAdder _documents;
+    private final AtomicInteger _bulksInFlight;
+    private final LongAdder _bulkBytes;
+    private final LongAdder _retries;
+    private final LongAdder _rejections;
+    private final LongAdder _versionConflicts;
+    private final LatencyHistogram _bulkLatencies;
+    private final LongAdder _requestFailures;
+    private final LatencyHistogram _requestLatencies;
+    private final LongAdder _cacheRequests;
+    private final LongAdder _cacheMisses;
+    private final SlowRequestLog _slowRequests;
+
+    private volatile String _component;
+    private volatile String _index;
+    private volatile ObjectName _objectName;
+
+    public ElasticSearchMetrics() {
+        _startTime = System.nanoTime();
+        _documents = new LongAdder();
+        _bulksInFlight = new AtomicInteger();
+        _bulkBytes = new LongAdder();
+        _retries = new LongAdder();
+        _rejections = new LongAdder();
+        _versionConflicts = new LongAdder();
+        _bulkLatencies = new LatencyHistogram();
+        _requestFailures = new LongAdder();
+        _requestLatencies = new LatencyHistogram();
+        _cacheRequests = new LongAdder();
+        _cacheMisses = new LongAdder();
+        _slowRequests = new SlowRequestLog(SLOW_REQUEST_LOG_SIZE);
+    }
+
+    /**
+     * Registers these metrics as an MBean with the platform MBean server.
+     * Failing to register is logged but otherwise ignored, since metrics
+     * should never break a job.
+     * 
+     * @param component
+     *            the name of the component the metrics belong to
+     * @param index
+     *            the name of the index the component works on
+     */
+    public synchronized void register(String component, String index) {
+        if (_objectName != null) {
+            return;
+        }
+        _component = component;
+        _index = index;
+
+        final Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("type", ObjectName.quote(component));
+        properties.put("index", ObjectName.quote(index == null ? "" : index));
+        properties.put("instance", Integer.toString(INSTANCE_COUNTER.incrementAndGet()));
+        try {
+            final ObjectName objectName = new ObjectName(JMX_DOMAIN, properties);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            _objectName = objectName;
+        } catch (JMException e) {
+            logger.warn("Failed to register metrics of {} with JMX: {}", component, e.getMessage());
+        }
+    }
+
+    /**
+     * Unregisters these metrics from the platform MBean server, if registered.
+     */
+    public synchronized void unregister() {
+        if (_objectName == null) {
+            return;
+        }
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(_objectName);
+        } catch (JMException e) {
+            logger.warn("Failed to unregister metrics {} from JMX: {}", _objectName, e.getMessage());
+        }
+        _objectName = null;
+    }
+
+    public ObjectName getObjectName() {
+        return _objectName;
+    }
+
+    public void onBulkStarted(long bytes) {
+        _bulksInFlight.incrementAndGet();
+        _bulkBytes.add(bytes);
+    }
+
+    public void onBulkCompleted(int indexedCount, int rejectedCount, long latencyMicros) {
+        _bulksInFlight.decrementAndGet();
+        _documents.add(indexedCount);
+        _rejections.add(rejectedCount);
+        _bulkLatencies.record(latencyMicros);
+    }
+
+    public void onRetry(int documentCount) {
+        _retries.add(documentCount);
+    }
+
+    /**
+     * Records documents that were not indexed because the index already holds
+     * the same or a newer version of them.
+     */
+    public void onVersionConflicts(int documentCount) {
+        _versionConflicts.add(documentCount);
+    }
+
+    public void onRequestCompleted(long latencyMicros) {
+        _requestLatencies.record(latencyMicros);
+    }
+
+    public void onRequestFailed() {
+        _requestFailures.increment();
+    }
+
+    /**
+     * Records a request that could be served from a cache or shared with
+     * another request in flight. Requests that actually had to be sent are
+     * recorded with {@link #onCacheMiss()}.
+     */
+    public void onCacheRequest() {
+        _cacheRequests.increment();
+    }
+
+    public void onCacheMiss() {
+        _cacheMisses.increment();
+    }
+
+    public SlowRequestLog getSlowRequests() {
+        return _slowRequests;
+    }
+
+    public LatencyHistogram getBulkLatencies() {
+        return _bulkLatencies;
+    }
+
+    public LatencyHistogram getRequestLatencies() {
+        return _requestLatencies;
+    }
+
+    @Override
+    public String getComponent() {
+        return _component;
+    }
+
+    @Override
+    public String getIndex() {
+        return _index;
+    }
+
+    @Override
+    public long getDocumentCount() {
+        return _documents.sum();
+    }
+
+    @Override
+    public double getDocumentsPerSecond() {
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - _startTime);
+        if (elapsedMillis == 0) {
+            return 0;
+        }
+        return _documents.sum() * 1000d / elapsedMillis;
+    }
+
+    @Override
+    public int getBulksInFlight() {
+        return _bulksInFlight.get();
+    }
+
+    @Override
+    public long getBulkCount() {
+        return _bulkLatencies.getCount();
+    }
+
+    @Override
+    public long getBulkBytes() {
+        return _bulkBytes.sum();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return _retries.sum();
+    }
+
+    @Override
+    public long getRejectionCount() {
+        return _rejections.sum();
+    }
+
+    @Override
+    public long getVersionConflictCount() {
+        return _versionConflicts.sum();
+    }
+
+    @Override
+    public double getBulkLatencyMeanMillis() {
+        return _bulkLatencies.getMeanMicros() / 1000d;
+    }
+
+    @Override
+    public double getBulkLatency95Millis() {
+        return _bulkLatencies.getPercentileMicros(95) / 1000d;
+    }
+
+    @Override
+    public double getBulkLatency99Millis() {
+        return _bulkLatencies.getPercentileMicros(99) / 1000d;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return _requestLatencies.getCount() + _requestFailures.sum();
+    }
+
+    @Override
+    public long getRequestFailureCount() {
+        return _requestFailures.sum();
+    }
+
+    @Override
+    public double getRequestLatencyMeanMillis() {
+        return _requestLatencies.getMeanMicros() / 1000d;
+    }
+
+    @Override
+    public double getRequestLatency95Millis() {
+        return _requestLatencies.getPercentileMicros(95) / 1000d;
+    }
+
+    @Override
+    public double getRequestLatency99Millis() {
+        return _requestLatencies.getPercentileMicros(99) / 1000d;
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return Math.max(0, _cacheRequests.sum() - _cacheMisses.sum());
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        final long requests = _cacheRequests.sum();
+        if (requests == 0) {
+            return 0;
+        }
+        return (double) getCacheHitCount() / requests;
+    }
+
+    @Override
+    public String[] getSlowestRequests() {
+        return _slowRequests.getSlowestAsStrings();
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+/**
+ * JMX management interface of {@link ElasticSearchMetrics}.
+ */
+public interface ElasticSearchMetricsMBean {
+
+    public String getComponent();
+
+    public String getIndex();
+
+    public long getDocumentCount();
+
+    public double getDocumentsPerSecond();
+
+    public int getBulksInFlight();
+
+    public long getBulkCount();
+
+    public long getBulkBytes();
+
+    public long getRetryCount();
+
+    public long getRejectionCount();
+
+    public long getVersionConflictCount();
+
+    public double getBulkLatencyMeanMillis();
+
+    public double getBulkLatency95Millis();
+
+    public double getBulkLatency99Millis();
+
+    public long getRequestCount();
+
+    public long getRequestFailureCount();
+
+    public double getRequestLatencyMeanMillis();
+
+    public double getRequestLatency95Millis();
+
+    public double getRequestLatency99Millis();
+
+    public long getCacheHitCount();
+
+    public double getCacheHitRatio();
+
+    public String[] getSlowestRequests();
+}
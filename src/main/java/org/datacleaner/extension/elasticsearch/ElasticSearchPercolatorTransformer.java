@@ -0,0 +1,276 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Named;
+
+import org.apache.metamodel.elasticsearch.nativeclient.ElasticSearchDataContext;
+import org.apache.metamodel.util.FileHelper;
+import org.datacleaner.api.Categorized;
+import org.datacleaner.api.Close;
+import org.datacleaner.api.Configured;
+import org.datacleaner.api.Description;
+import org.datacleaner.api.Initialize;
+import org.datacleaner.api.InputColumn;
+import org.datacleaner.api.InputRow;
+import org.datacleaner.api.MappedProperty;
+import org.datacleaner.api.NumberProperty;
+import org.datacleaner.api.OutputColumns;
+import org.datacleaner.api.TableProperty;
+import org.datacleaner.api.Validate;
+import org.datacleaner.components.categories.ImproveSuperCategory;
+import org.datacleaner.components.categories.ReferenceDataCategory;
+import org.datacleaner.connection.ElasticSearchDatastore;
+import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
+import org.datacleaner.connection.UpdateableDatastoreConnection;
+import org.datacleaner.extension.elasticsearch.ElasticSearchRequestExecutor.RequestSender;
+import org.datacleaner.extension.elasticsearch.ui.IllegalElasticSearchConnectorException;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.percolate.MultiPercolateRequestBuilder;
+import org.elasticsearch.action.percolate.MultiPercolateResponse;
+import org.elasticsearch.action.percolate.PercolateResponse;
+import org.elasticsearch.action.percolate.PercolateSourceBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Matches each record against a set of stored queries (rules) using the
+ * ElasticSearch percolator, returning the IDs of all matching rules. Records
+ * from concurrent threads are percolated together in multi percolate requests.
+ */
+@Named("ElasticSearch rule matching (percolator)")
+@Description("Matches every record against queries stored in an ElasticSearch index and returns the IDs of the matching queries.")
+@Categorized(superCategory = ImproveSuperCategory.class, value = ReferenceDataCategory.class)
+public class ElasticSearchPercolatorTransformer implements ElasticSearchTransformer {
+
+    public static final String PROPERTY_INPUT_COLUMNS = "Values";
+    public static final String PROPERTY_FIELD_NAMES = "Fields";
+    public static final String PROPERTY_RULE_IDS = "Rule IDs";
+    public static final String PROPERTY_RULE_QUERIES = "Rule queries";
+
+    private static final String PERCOLATOR_TYPE = ".percolator";
+
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchPercolatorTransformer.class);
+
+    @Configured(PROPERTY_INPUT_COLUMNS)
+    InputColumn<?>[] values;
+
+    @Configured(PROPERTY_FIELD_NAMES)
+    @MappedProperty(PROPERTY_INPUT_COLUMNS)
+    String[] fields;
+
+    @Configured(order = 1, value = PROPERTY_ES_DATASTORE)
+    ElasticSearchDatastore elasticsearchDatastore;
+
+    @Configured(order = 2, value = PROPERTY_DOCUMENT_TYPE)
+    @TableProperty
+    @Description("The document type whose mapping the records are percolated as.")
+    String documentType;
+
+    @Configured(order = 3, value = PROPERTY_RULE_IDS, required = false)
+    @Description("IDs of the rules to register before matching. If not set, the rules already registered in the index are used.")
+    String[] ruleIds;
+
+    @Configured(order = 4, value = PROPERTY_RULE_QUERIES, required = false)
+    @Description("The queries of the rules to register, in query string syntax, e.g. 'country:dk AND city:copenhagen'.")
+    String[] ruleQueries;
+
+    @Configured(order = 5, required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The maximum number of records percolated in a single request.")
+    int percolateBatchSize = 100;
+
+    @Configured(order = 6, required = false)
+    @Description("How date values are percolated: as ISO-8601 formatted strings or as milliseconds since epoch.")
+    DateConversion dateConversion = DateConversion.ISO_8601;
+
+    @Configured(order = 7, required = false)
+    @NumberProperty(negative = false, zero = false)
+    @Description("The maximum number of multi percolate requests in flight at the same time.")
+    int maxConcurrentBatches = 4;
+
+    @Configured(order = 10, required = false)
+    @NumberProperty(negative = false)
+    @Description("Maximum time in milliseconds to wait for a response. Zero means wait indefinitely.")
+    long requestTimeoutMillis = 30000;
+
+    @Configured(order = 12, required = false)
+    @NumberProperty(negative = false)
+    @Description("Error rate (in percent) of recent requests at which further requests are rejected for a while. Zero disables the circuit breaker.")
+    int circuitBreakerErrorRate = 0;
+
+    @Configured(order = 13, required = false)
+    @Description("What to do when a request fails, times out or is rejected by the circuit breaker.")
+    RequestFailureBehavior failureBehavior = RequestFailureBehavior.FAIL;
+
+    private UpdateableDatastoreConnection _connection;
+    private ElasticSearchRequestExecutor _requestExecutor;
+    private ValueConverter[] _valueConverters;
+    private FieldLayout _fieldLayout;
+    private MicroBatcher<Map<String, Object>, MultiPercolateResponse.Item> _batcher;
+
+    @Validate
+    public void validate() {
+        final int ruleIdCount = ruleIds == null ? 0 : ruleIds.length;
+        final int ruleQueryCount = ruleQueries == null ? 0 : ruleQueries.length;
+        if (ruleIdCount != ruleQueryCount) {
+            throw new IllegalStateException("The number of rule IDs (" + ruleIdCount
+                    + ") does not match the number of rule queries (" + ruleQueryCount + ")");
+        }
+
+        final ClientType clientType = elasticsearchDatastore.getClientType();
+        switch (clientType) {
+        case NODE:
+        case TRANSPORT:
+            return;
+        case REST:
+            throw new IllegalElasticSearchConnectorException();
+        default:
+            // do nothing
+        }
+    }
+
+    @Initialize
+    public void init() throws Exception {
+        _connection = elasticsearchDatastore.openConnection();
+        try {
+            _requestExecutor = new ElasticSearchRequestExecutor(requestTimeoutMillis, false, circuitBreakerErrorRate);
+            _requestExecutor.getMetrics().register(getClass().getSimpleName(),
+                    elasticsearchDatastore.getIndexName());
+            _valueConverters = ValueConverters.forColumns(values, dateConversion);
+            _fieldLayout = new FieldLayout(fields, false);
+
+            final ElasticSearchDataContext dataContext = (ElasticSearchDataContext) _connection.getDataContext();
+            final Client client = dataContext.getElasticSearchClient();
+            if (ruleIds != null) {
+                registerRules(client);
+            }
+
+            _batcher = new MicroBatcher<>(percolateBatchSize, maxConcurrentBatches,
+                    new MicroBatcher.BatchCall<Map<String, Object>, MultiPercolateResponse.Item>() {
+                        @Override
+                        public List<MultiPercolateResponse.Item> call(List<Map<String, Object>> documents) {
+                            return percolate(client, documents);
+                        }
+                    });
+        } catch (Exception e) {
+            logger.error("Exception while initializing the ElasticSearchPercolatorTransformer", e);
+            FileHelper.safeClose(_connection);
+            _connection = null;
+            throw e;
+        }
+    }
+
+    private void registerRules(Client client) throws Exception {
+        final String indexName = elasticsearchDatastore.getIndexName();
+        for (int i = 0; i < ruleIds.length; i++) {
+            client.prepareIndex(indexName, PERCOLATOR_TYPE, ruleIds[i]).setSource(XContentFactory.jsonBuilder()
+                    .startObject().field("query", QueryBuilders.queryStringQuery(ruleQueries[i])).endObject())
+                    .execute().actionGet();
+        }
+        logger.info("Registered {} rules in index '{}'", ruleIds.length, indexName);
+    }
+
+    @Close
+    public void close() {
+        if (_requestExecutor != null) {
+            _requestExecutor.getMetrics().unregister();
+        }
+        if (_connection != null) {
+            FileHelper.safeClose(_connection);
+            _connection = null;
+        }
+    }
+
+    @Override
+    public OutputColumns getOutputColumns() {
+        final String[] names = new String[] { "Matching rules", "Match count" };
+        final Class<?>[] types = new Class[] { List.class, Integer.class };
+        return new OutputColumns(names, types);
+    }
+
+    @Override
+    public Object[] transform(InputRow row) {
+        final Object[] record = new Object[values.length + 1];
+        for (int i = 0; i < values.length; i++) {
+            final Object value = row.getValue(values[i]);
+            if (value != null) {
+                record[i + 1] = _valueConverters[i].convert(value);
+            }
+        }
+        final Map<String, Object> document = _fieldLayout.createDocument(record);
+
+        final List<String> matches;
+        try {
+            // each record gets its own item, so a failing record does not
+            // fail the others of the same request
+            matches = getMatches(_batcher.execute(document));
+        } catch (RuntimeException e) {
+            if (failureBehavior == RequestFailureBehavior.EMIT_NULLS) {
+                logger.warn("Percolation failed, emitting nulls: {}", e.getMessage());
+                return new Object[2];
+            }
+            logger.error("Exception while running the ElasticSearchPercolatorTransformer", e);
+            throw e;
+        }
+        return new Object[] { matches, matches.size() };
+    }
+
+    private List<MultiPercolateResponse.Item> percolate(final Client client,
+            final List<Map<String, Object>> documents) {
+        final MultiPercolateResponse response = _requestExecutor.execute(
+                new RequestSender<MultiPercolateResponse>() {
+                    @Override
+                    public ListenableActionFuture<MultiPercolateResponse> send(String preference) {
+                        final MultiPercolateRequestBuilder request = client.prepareMultiPercolate();
+                        for (Map<String, Object> document : documents) {
+                            request.add(client.preparePercolate().setIndices(elasticsearchDatastore.getIndexName())
+                                    .setDocumentType(documentType).setPreference(preference)
+                                    .setPercolateDoc(PercolateSourceBuilder.docBuilder().setDoc(document)));
+                        }
+                        return request.execute();
+                    }
+                });
+        return Arrays.asList(response.getItems());
+    }
+
+    private static List<String> getMatches(MultiPercolateResponse.Item item) {
+        if (item.isFailure()) {
+            throw new IllegalStateException("Percolation failed: " + item.getErrorMessage());
+        }
+        final PercolateResponse.Match[] matches = item.getResponse().getMatches();
+        if (matches == null || matches.length == 0) {
+            return Collections.<String> emptyList();
+        }
+        final String[] ids = new String[matches.length];
+        for (int i = 0; i < matches.length; i++) {
+            ids[i] = matches[i].getId().string();
+        }
+        return Collections.unmodifiableList(Arrays.asList(ids));
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Named;
+
+import org.apache.metamodel.elasticsearch.nativeclient.ElasticSearchDataContext;
+import org.apache.metamodel.util.FileHelper;
+import org.datacleaner.api.Analyzer;
+import org.datacleaner.api.Categorized;
+import org.datacleaner.api.Close;
+import org.datacleaner.api.Configured;
+import org.datacleaner.api.Description;
+import org.datacleaner.api.Initialize;
+import org.datacleaner.api.InputColumn;
+import org.datacleaner.api.InputRow;
+import org.datacleaner.api.NumberProperty;
+import org.datacleaner.api.Validate;
+import org.datacleaner.components.categories.ProfilingSuperCategory;
+import org.datacleaner.connection.ElasticSearchDatastore;
+import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
+import org.datacleaner.connection.UpdateableDatastoreConnection;
+import org.datacleaner.extension.elasticsearch.ui.IllegalElasticSearchConnectorException;
+import org.datacleaner.result.Crosstab;
+import org.datacleaner.result.CrosstabNavigator;
+import org.elasticsearch.action.admin.indices.mapping.get.GetMappingsResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.missing.Missing;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.cardinality.Cardinality;
+import org.elasticsearch.search.aggregations.metrics.stats.Stats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Profiles the contents of an index with aggregations that are computed by
+ * ElasticSearch, so the documents don't have to be read by DataCleaner.
+ * 
+ * The fields to profile are the names of the input columns, typically columns
+ * of the document type's table. The rows themselves are not used, so the
+ * input must be limited with a 'Max rows' filter to avoid reading the index:
+ * the job fails once more than {@link #MAX_INPUT_ROWS} rows arrive, rather
+ * than streaming all documents for nothing.
+ * How a field is profiled depends on its type in the mapping of the document
+ * type, not on the type of the column.
+ */
+@Named("ElasticSearch index profiler")
+@Description("Profiles fields of an ElasticSearch document type with server-side aggregations: null and distinct counts, min/max/mean of numbers and dates and the most frequent values. The rows passed to this component are not used, so it requires a 'Max rows' filter (e.g. of 1 row) in front of it to avoid reading the documents; the job fails if more than 100 rows are passed to it.")
+@Categorized(superCategory = ProfilingSuperCategory.class)
+public class ElasticSearchProfilingAnalyzer implements Analyzer<ElasticSearchProfilingResult> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchProfilingAnalyzer.class);
+
+    static final int MAX_INPUT_ROWS = 100;
+
+    private static final List<String> STATS_TYPES = Arrays.asList("long", "integer", "short", "byte", "double",
+            "float", "date");
+
+    @Configured
+    @Description("Columns named after the fields to profile.")
+    InputColumn<?>[] columns;
+
+    @Configured(value = "ElasticSearch index", order = 1)
+    ElasticSearchDatastore elasticsearchDatastore;
+
+    @Configured(order = 2)
+    String documentType;
+
+    @Configured(order = 3, required = false)
+    @NumberProperty(negative = false)
+    @Description("The number of most frequent values to determine per field. Zero disables value distributions.")
+    int topValueCount = 10;
+
+    @Configured(order = 4, required = false)
+    @Description("Computes distinct counts and value distributions of string fields on their raw, not analyzed, form ('{field}.raw', as created by the indexer) instead of on analyzed terms, if the mapping has such a field.")
+    boolean useRawStringFields = true;
+
+    private UpdateableDatastoreConnection _connection;
+    private AtomicInteger _inputRowCount;
+
+    @Validate
+    public void validate() {
+        final ClientType clientType = elasticsearchDatastore.getClientType();
+        switch (clientType) {
+        case NODE:
+        case TRANSPORT:
+            return;
+        case REST:
+            throw new IllegalElasticSearchConnectorException();
+        default:
+            // do nothing
+        }
+    }
+
+    @Initialize
+    public void init() {
+        _connection = elasticsearchDatastore.openConnection();
+        _inputRowCount = new AtomicInteger();
+    }
+
+    @Close
+    public void close() {
+        if (_connection != null) {
+            FileHelper.safeClose(_connection);
+            _connection = null;
+        }
+    }
+
+    @Override
+    public void run(InputRow row, int distinctCount) {
+        // the profile is computed by ElasticSearch in getResult()
+        if (_inputRowCount.incrementAndGet() > MAX_INPUT_ROWS) {
+            throw new IllegalStateException("The ElasticSearch index profiler does not use its input rows, but got "
+                    + "more than " + MAX_INPUT_ROWS + "; limit them with a 'Max rows' filter to avoid reading the "
+                    + "whole index");
+        }
+    }
+
+    @Override
+    public ElasticSearchProfilingResult getResult() {
+        final ElasticSearchDataContext dataContext = (ElasticSearchDataContext) _connection.getDataContext();
+        final Client client = dataContext.getElasticSearchClient();
+
+        final Map<String, Object> typeMapping = getTypeMapping(client);
+        final String[] types = new String[columns.length];
+
+        final SearchRequestBuilder request = new SearchRequestBuilder(client).setIndices(
+                elasticsearchDatastore.getIndexName()).setTypes(documentType).setSize(0);
+        for (int i = 0; i < columns.length; i++) {
+            final String field = columns[i].getName();
+            final Map<String, Object> fieldMapping = getFieldMapping(typeMapping, field);
+            types[i] = fieldMapping == null ? null : (String) fieldMapping.get("type");
+            final String termsField = getTermsField(field, fieldMapping);
+            request.addAggregation(AggregationBuilders.missing("missing_" + i).field(field));
+            request.addAggregation(AggregationBuilders.cardinality("cardinality_" + i).field(termsField));
+            if (STATS_TYPES.contains(types[i])) {
+                request.addAggregation(AggregationBuilders.stats("stats_" + i).field(field));
+            }
+            if (topValueCount > 0) {
+                request.addAggregation(AggregationBuilders.terms("terms_" + i).field(termsField).size(
+                        topValueCount));
+            }
+        }
+
+        logger.info("Profiling {} fields of document type '{}'", columns.length, documentType);
+        final SearchResponse response = request.execute().actionGet();
+        final long documentCount = response.getHits().getTotalHits();
+        final Aggregations aggregations = response.getAggregations();
+
+        final Crosstab<Serializable> crosstab = new Crosstab<>(Serializable.class,
+                ElasticSearchProfilingResult.DIMENSION_FIELD, ElasticSearchProfilingResult.DIMENSION_MEASURE);
+        final Map<String, Map<String, Long>> topValues = new LinkedHashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            final String field = columns[i].getName();
+            final CrosstabNavigator<Serializable> nav = crosstab.where(ElasticSearchProfilingResult.DIMENSION_FIELD,
+                    field);
+
+            final long nullCount = aggregations.<Missing> get("missing_" + i).getDocCount();
+            put(nav, ElasticSearchProfilingResult.MEASURE_DOCUMENT_COUNT, documentCount);
+            put(nav, ElasticSearchProfilingResult.MEASURE_NON_NULL_COUNT, documentCount - nullCount);
+            put(nav, ElasticSearchProfilingResult.MEASURE_NULL_COUNT, nullCount);
+            put(nav, ElasticSearchProfilingResult.MEASURE_DISTINCT_COUNT, aggregations.<Cardinality> get(
+                    "cardinality_" + i).getValue());
+
+            final Stats stats = aggregations.get("stats_" + i);
+            if (stats != null && stats.getCount() > 0) {
+                put(nav, ElasticSearchProfilingResult.MEASURE_MIN, toValue(types[i], stats.getMin()));
+                put(nav, ElasticSearchProfilingResult.MEASURE_MAX, toValue(types[i], stats.getMax()));
+                put(nav, ElasticSearchProfilingResult.MEASURE_MEAN, toValue(types[i], stats.getAvg()));
+            }
+
+            final Terms terms = aggregations.get("terms_" + i);
+            if (terms != null) {
+                final Map<String, Long> values = new LinkedHashMap<>();
+                for (Terms.Bucket bucket : terms.getBuckets()) {
+                    values.put(bucket.getKey(), bucket.getDocCount());
+                }
+                topValues.put(field, values);
+            }
+        }
+
+        return new ElasticSearchProfilingResult(crosstab, topValues);
+    }
+
+    private static void put(CrosstabNavigator<Serializable> nav, String measure, Serializable value) {
+        nav.where(ElasticSearchProfilingResult.DIMENSION_MEASURE, measure).put(value, true);
+    }
+
+    /**
+     * Gets the mapping of the document type.
+     * 
+     * @return the mapping, or an empty map if the document type is not mapped
+     */
+    private Map<String, Object> getTypeMapping(Client client) {
+        final GetMappingsResponse response = client.admin().indices().prepareGetMappings(elasticsearchDatastore
+                .getIndexName()).setTypes(documentType).execute().actionGet();
+        // the index name may be an alias of one or more indices
+        final Iterator<ImmutableOpenMap<String, MappingMetaData>> indexMappings = response.getMappings().valuesIt();
+        while (indexMappings.hasNext()) {
+            final MappingMetaData mapping = indexMappings.next().get(documentType);
+            if (mapping != null) {
+                try {
+                    return mapping.sourceAsMap();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not read the mapping of document type '" + documentType
+                            + "'", e);
+                }
+            }
+        }
+        logger.warn("No mapping found for document type '{}'", documentType);
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Gets the mapping of a (dotted) field.
+     * 
+     * @return the mapping, or null if the field is not mapped
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> getFieldMapping(Map<String, Object> typeMapping, String field) {
+        Map<String, Object> mapping = typeMapping;
+        for (String name : field.split("\\.")) {
+            final Object properties = mapping.get("properties");
+            if (!(properties instanceof Map)) {
+                return null;
+            }
+            final Object child = ((Map<String, Object>) properties).get(name);
+            if (!(child instanceof Map)) {
+                return null;
+            }
+            mapping = (Map<String, Object>) child;
+        }
+        return mapping;
+    }
+
+    @SuppressWarnings("unchecked")
+    private String getTermsField(String field, Map<String, Object> fieldMapping) {
+        if (useRawStringFields && fieldMapping != null && "string".equals(fieldMapping.get("type"))) {
+            final Object fields = fieldMapping.get("fields");
+            if (fields instanceof Map && ((Map<String, Object>) fields).containsKey("raw")) {
+                return field + ".raw";
+            }
+        }
+        return field;
+    }
+
+    private static Serializable toValue(String type, double value) {
+        if ("date".equals(type)) {
+            return new Date((long) value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.datacleaner.result.Crosstab;
+import org.datacleaner.result.CrosstabResult;
+
+/**
+ * Result of the {@link ElasticSearchProfilingAnalyzer}: a crosstab of
+ * measures per field, plus the most frequent values of each field.
+ */
+public class ElasticSearchProfilingResult extends CrosstabResult {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String DIMENSION_FIELD = "Field";
+    public static final String DIMENSION_MEASURE = "Measure";
+
+    public static final String MEASURE_DOCUMENT_COUNT = "Document count";
+    public static final String MEASURE_NON_NULL_COUNT = "Non-null count";
+    public static final String MEASURE_NULL_COUNT = "Null count";
+    public static final String MEASURE_DISTINCT_COUNT = "Distinct count (approx.)";
+    public static final String MEASURE_MIN = "Min";
+    public static final String MEASURE_MAX = "Max";
+    public static final String MEASURE_MEAN = "Mean";
+
+    private final Map<String, Map<String, Long>> _topValues;
+
+    public ElasticSearchProfilingResult(Crosstab<?> crosstab, Map<String, Map<String, Long>> topValues) {
+        super(crosstab);
+        _topValues = new LinkedHashMap<>(topValues);
+    }
+
+    /**
+     * Gets the most frequent values of a field with their document counts,
+     * most frequent first.
+     * 
+     * @param field
+     *            the field
+     * @return the most frequent values, or an empty map if not profiled
+     */
+    public Map<String, Long> getTopValues(String field) {
+        final Map<String, Long> topValues = _topValues.get(field);
+        if (topValues == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(topValues);
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ListenableActionFuture;
+
+/**
+ * Executes read requests (gets and searches) with a bounded wait time,
+ * optional hedging and an optional {@link CircuitBreaker}.
+ * 
+ * When hedging is enabled and no response to a request has arrived within the
+ * 95th percentile of the observed response times, a duplicate request
+ * preferring replica shards is sent. The first request is sent without a
+ * preference, so reads stay spread across primaries and replicas. The first
+ * successful response wins. Hedging only helps when the index has replicas.
+ */
+public class ElasticSearchRequestExecutor {
+
+    /**
+     * Sends a request with a given shard preference.
+     * 
+     * @param <R>
+     *            the response type
+     */
+    public static interface RequestSender<R> {
+
+        /**
+         * Sends the request.
+         * 
+         * @param preference
+         *            the preference to use, or null if the default should be
+         *            used
+         * @return the future of the response
+         */
+        public ListenableActionFuture<R> send(String preference);
+    }
+
+    public static final String PREFERENCE_REPLICA_FIRST = "_replica_first";
+
+    private static final int CIRCUIT_BREAKER_WINDOW_SIZE = 100;
+    private static final long CIRCUIT_BREAKER_OPEN_MILLIS = 5000;
+    private static final int HEDGING_MIN_SAMPLES = 100;
+    private static final double HEDGING_PERCENTILE = 95d;
+
+    private final long _timeoutMillis;
+    private final boolean _hedging;
+    private final CircuitBreaker _circuitBreaker;
+    private final ElasticSearchMetrics _metrics;
+    private final LatencyHistogram _latencies;
+
+    /**
+     * Creates a request executor.
+     * 
+     * @param timeoutMillis
+     *            the maximum time to wait for a response, or zero to wait
+     *            indefinitely
+     * @param hedging
+     *            whether or not to send hedged requests to replicas
+     * @param circuitBreakerErrorRate
+     *            the error rate (in percent) at which the circuit breaker
+     *            opens, or zero to disable the circuit breaker
+     */
+    public ElasticSearchRequestExecutor(long timeoutMillis, boolean hedging, int circuitBreakerErrorRate) {
+        _timeoutMillis = timeoutMillis;
+        _hedging = hedging;
+        if (circuitBreakerErrorRate > 0) {
+            _circuitBreaker = new CircuitBreaker(CIRCUIT_BREAKER_WINDOW_SIZE, circuitBreakerErrorRate,
+                    CIRCUIT_BREAKER_OPEN_MILLIS);
+        } else {
+            _circuitBreaker = null;
+        }
+        _metrics = new ElasticSearchMetrics();
+        _latencies = _metrics.getRequestLatencies();
+    }
+
+    /**
+     * Executes a request and blocks until a response is available.
+     * 
+     * @param sender
+     *            the sender of the request
+     * @return the response
+     * @throws CircuitBreakerOpenException
+     *             if the circuit breaker is open
+     * @throws ElasticsearchTimeoutException
+     *             if no response was received within the timeout
+     */
+    public <R> R execute(RequestSender<R> sender) {
+        return execute(sender, null);
+    }
+
+    /**
+     * Executes a request and blocks until a response is available, recording
+     * the time spent building and sending the (first) request in a trace.
+     * 
+     * @param sender
+     *            the sender of the request
+     * @param trace
+     *            the trace to record the build time in, or null
+     * @return the response
+     * @throws CircuitBreakerOpenException
+     *             if the circuit breaker is open
+     * @throws ElasticsearchTimeoutException
+     *             if no response was received within the timeout
+     */
+    public <R> R execute(RequestSender<R> sender, RequestTrace trace) {
+        final RequestSender<R> timedSender = trace == null ? sender : new TimingRequestSender<>(sender, trace);
+        if (_circuitBreaker != null && !_circuitBreaker.allowRequest()) {
+            _metrics.onRequestFailed();
+            throw new CircuitBreakerOpenException();
+        }
+
+        final long startTime = System.nanoTime();
+        final R response;
+        try {
+            if (isHedgingReady()) {
+                response = executeHedged(timedSender, startTime);
+            } else {
+                response = await(timedSender.send(null), _timeoutMillis);
+            }
+        } catch (RuntimeException e) {
+            _metrics.onRequestFailed();
+            if (_circuitBreaker != null) {
+                _circuitBreaker.onFailure();
+            }
+            throw e;
+        }
+
+        _metrics.onRequestCompleted(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+        if (_circuitBreaker != null) {
+            _circuitBreaker.onSuccess();
+        }
+        return response;
+    }
+
+    public LatencyHistogram getLatencies() {
+        return _latencies;
+    }
+
+    public ElasticSearchMetrics getMetrics() {
+        return _metrics;
+    }
+
+    private boolean isHedgingReady() {
+        return _hedging && _latencies.getCount() >= HEDGING_MIN_SAMPLES;
+    }
+
+    private <R> R executeHedged(RequestSender<R> sender, long startTime) {
+        final long hedgeDelayMillis = Math.max(1,
+                TimeUnit.MICROSECONDS.toMillis(_latencies.getPercentileMicros(HEDGING_PERCENTILE)));
+        if (_timeoutMillis > 0 && hedgeDelayMillis >= _timeoutMillis) {
+            return await(sender.send(null), _timeoutMillis);
+        }
+
+        final ListenableActionFuture<R> first = sender.send(null);
+        try {
+            return first.get(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // fall through and send the hedged request
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ElasticsearchException("Interrupted while waiting for response", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+
+        final ListenableActionFuture<R> hedge = sender.send(PREFERENCE_REPLICA_FIRST);
+        final CompletableFuture<R> firstResponse = new CompletableFuture<>();
+        final ActionListener<R> listener = new FirstResponseListener<>(firstResponse, 2);
+        first.addListener(listener);
+        hedge.addListener(listener);
+
+        final long remainingMillis;
+        if (_timeoutMillis > 0) {
+            remainingMillis = Math.max(1, _timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        } else {
+            remainingMillis = 0;
+        }
+        return await(firstResponse, remainingMillis);
+    }
+
+    private static <R> R await(Future<R> future, long timeoutMillis) {
+        try {
+            if (timeoutMillis > 0) {
+                return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            return future.get();
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new ElasticsearchTimeoutException("No response from ElasticSearch within " + timeoutMillis + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ElasticsearchException("Interrupted while waiting for response", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new ElasticsearchException(cause == null ? e.getMessage() : cause.getMessage(), cause);
+    }
+
+    /**
+     * Sender that records the time it takes to build and dispatch the first
+     * request in a trace.
+     */
+    private static class TimingRequestSender<R> implements RequestSender<R> {
+
+        private final RequestSender<R> _delegate;
+        private final RequestTrace _trace;
+        private boolean _sent;
+
+        public TimingRequestSender(RequestSender<R> delegate, RequestTrace trace) {
+            _delegate = delegate;
+            _trace = trace;
+        }
+
+        @Override
+        public ListenableActionFuture<R> send(String preference) {
+            if (_sent) {
+                return _delegate.send(preference);
+            }
+            _sent = true;
+            final long startTime = System.nanoTime();
+            final ListenableActionFuture<R> future = _delegate.send(preference);
+            _trace.setBuildMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+            return future;
+        }
+    }
+
+    /**
+     * Listener that completes a future with the first successful response, or
+     * with the last failure if all requests failed.
+     */
+    private static class FirstResponseListener<R> implements ActionListener<R> {
+
+        private final CompletableFuture<R> _future;
+        private final AtomicInteger _remaining;
+
+        public FirstResponseListener(CompletableFuture<R> future, int requestCount) {
+            _future = future;
+            _remaining = new AtomicInteger(requestCount);
+        }
+
+        @Override
+        public void onResponse(R response) {
+            _future.complete(response);
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            if (_remaining.decrementAndGet() == 0) {
+                _future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.datacleaner.api.InputColumn;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * Builds the "properties" part of an explicit mapping based on the data types
+ * of the columns that are mapped to each field. Fields whose type cannot be
+ * determined are left out, leaving them to dynamic mapping. When documents are
+ * assembled by {@link GroupedDocumentAssembler}, dotted field names (see
+ * {@link FieldPath}) are mapped as fields of (arrays of) objects. Otherwise
+ * they are mapped literally, like {@link FieldLayout} writes them.
+ */
+public class ExplicitMappingBuilder {
+
+    private final Map<String, Class<?>> _fieldTypes;
+    private final boolean _objectPaths;
+    private final boolean _bigNumbersAsStrings;
+    private final boolean _keepStringFieldsInRawForm;
+    private final Set<String> _keywordFields;
+    private final Set<String> _textOnlyFields;
+    private final Set<String> _notIndexedFields;
+    private final Set<String> _noDocValuesFields;
+
+    public ExplicitMappingBuilder(String[] fields, InputColumn<?>[] values, boolean objectPaths,
+            boolean bigNumbersAsStrings, boolean keepStringFieldsInRawForm, String[] keywordFields,
+            String[] textOnlyFields, String[] notIndexedFields, String[] noDocValuesFields) {
+        _fieldTypes = new LinkedHashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            if (!_fieldTypes.containsKey(fields[i])) {
+                _fieldTypes.put(fields[i], values[i].getDataType());
+            }
+        }
+        _objectPaths = objectPaths;
+        _bigNumbersAsStrings = bigNumbersAsStrings;
+        _keepStringFieldsInRawForm = keepStringFieldsInRawForm;
+        _keywordFields = toSet(keywordFields);
+        _textOnlyFields = toSet(textOnlyFields);
+        _notIndexedFields = toSet(notIndexedFields);
+        _noDocValuesFields = toSet(noDocValuesFields);
+    }
+
+    /**
+     * Writes the "properties" object of the mapping.
+     * 
+     * @param builder
+     *            the builder of the type mapping, positioned inside the type
+     *            object
+     * @throws IOException
+     *             if the mapping could not be written
+     */
+    public void build(XContentBuilder builder) throws IOException {
+        // tree of property names to either field names (leaves) or subtrees
+        final Map<String, Object> tree = new LinkedHashMap<>();
+        for (String field : _fieldTypes.keySet()) {
+            if (getElasticSearchType(_fieldTypes.get(field), _bigNumbersAsStrings) == null) {
+                continue;
+            }
+            final String[] segments = _objectPaths ? FieldPath.parse(field).getSegments() : new String[] { field };
+            Map<String, Object> node = tree;
+            for (int i = 0; i < segments.length - 1; i++) {
+                node = getSubtree(node, segments[i]);
+            }
+            node.put(segments[segments.length - 1], field);
+        }
+        buildProperties(builder, tree);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getSubtree(Map<String, Object> node, String name) {
+        final Object child = node.get(name);
+        if (child instanceof Map) {
+            return (Map<String, Object>) child;
+        }
+        final Map<String, Object> subtree = new LinkedHashMap<>();
+        node.put(name, subtree);
+        return subtree;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void buildProperties(XContentBuilder builder, Map<String, Object> tree) throws IOException {
+        builder.startObject("properties");
+        for (Entry<String, Object> entry : tree.entrySet()) {
+            builder.startObject(entry.getKey());
+            if (entry.getValue() instanceof Map) {
+                builder.field("type", "object");
+                buildProperties(builder, (Map<String, Object>) entry.getValue());
+            } else {
+                buildField(builder, (String) entry.getValue());
+            }
+            builder.endObject();
+        }
+        builder.endObject();
+    }
+
+    private void buildField(XContentBuilder builder, String field) throws IOException {
+        final String type = getElasticSearchType(_fieldTypes.get(field), _bigNumbersAsStrings);
+        builder.field("type", type);
+        if (_notIndexedFields.contains(field)) {
+            builder.field("index", "no");
+        } else if ("string".equals(type)) {
+            buildStringField(builder, field);
+        } else if (!"binary".equals(type)) {
+            builder.field("doc_values", !_noDocValuesFields.contains(field));
+        }
+    }
+
+    private void buildStringField(XContentBuilder builder, String field) throws IOException {
+        final boolean docValues = !_noDocValuesFields.contains(field);
+        if (_keywordFields.contains(field)) {
+            builder.field("index", "not_analyzed");
+            builder.field("doc_values", docValues);
+        } else if (_keepStringFieldsInRawForm && !_textOnlyFields.contains(field)) {
+            builder.startObject("fields").startObject("raw");
+            builder.field("type", "string");
+            builder.field("index", "not_analyzed");
+            builder.field("ignore_above", 256);
+            builder.field("doc_values", docValues);
+            builder.endObject().endObject();
+        }
+    }
+
+    /**
+     * Determines the ElasticSearch type of values of a particular data type,
+     * as converted by {@link ValueConverters}.
+     * 
+     * @param dataType
+     *            the data type of a column
+     * @param bigNumbersAsStrings
+     *            whether BigDecimal and BigInteger values are indexed as
+     *            strings
+     * @return the type name, or null if it cannot be determined
+     */
+    static String getElasticSearchType(Class<?> dataType, boolean bigNumbersAsStrings) {
+        if (dataType == null) {
+            return null;
+        }
+        if (dataType == String.class || dataType == Character.class) {
+            return "string";
+        }
+        if (dataType == BigDecimal.class || dataType == BigInteger.class) {
+            if (bigNumbersAsStrings) {
+                return "string";
+            }
+            // BigDecimal values with a fraction are indexed as doubles
+            return dataType == BigInteger.class ? "long" : "double";
+        }
+        if (dataType == Boolean.class) {
+            return "boolean";
+        }
+        if (dataType == Integer.class) {
+            return "integer";
+        }
+        if (dataType == Short.class) {
+            return "short";
+        }
+        if (dataType == Byte.class) {
+            return "byte";
+        }
+        if (dataType == Long.class || ValueConverters.isIntegral(dataType)) {
+            return "long";
+        }
+        if (dataType == Float.class) {
+            return "float";
+        }
+        if (dataType == Double.class || Number.class.isAssignableFrom(dataType)) {
+            return "double";
+        }
+        if (Date.class.isAssignableFrom(dataType)) {
+            return "date";
+        }
+        if (dataType == byte[].class) {
+            return "binary";
+        }
+        return null;
+    }
+
+    private static Set<String> toSet(String[] values) {
+        if (values == null) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
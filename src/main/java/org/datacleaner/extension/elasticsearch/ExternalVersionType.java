@@ -0,0 +1,71 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import org.elasticsearch.index.VersionType;
+
+/**
+ * Determines how the versions of indexed documents are compared to the
+ * versions of the documents already in the index. With either type, a
+ * document that is older than the indexed one is rejected by ElasticSearch
+ * with a version conflict.
+ */
+public enum ExternalVersionType {
+
+    /**
+     * A document is only indexed if its version is greater than the version
+     * of the indexed document.
+     */
+    EXTERNAL(VersionType.EXTERNAL),
+
+    /**
+     * A document is indexed if its version is greater than or equal to the
+     * version of the indexed document, so the same version can be indexed
+     * again.
+     */
+    EXTERNAL_GTE(VersionType.EXTERNAL_GTE);
+
+    private final VersionType _versionType;
+
+    private ExternalVersionType(VersionType versionType) {
+        _versionType = versionType;
+    }
+
+    public VersionType getVersionType() {
+        return _versionType;
+    }
+
+    /**
+     * Gets the external version type of an ElasticSearch version type.
+     * 
+     * @param versionType
+     * @return the external version type
+     * @throws IllegalArgumentException
+     *             if the version type is not an external one
+     */
+    public static ExternalVersionType forVersionType(VersionType versionType) {
+        for (ExternalVersionType externalVersionType : values()) {
+            if (externalVersionType._versionType == versionType) {
+                return externalVersionType;
+            }
+        }
+        throw new IllegalArgumentException("Not an external version type: " + versionType);
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The layout of indexed documents, determined once from the field names that
+ * the value columns are mapped to. Fields that more than one column is mapped
+ * to are multi-valued: their non-null values are collected into a single flat
+ * list, optionally without duplicates. A multi-valued field with just one
+ * non-null value in a row is indexed as a single value.
+ */
+public class FieldLayout {
+
+    private final String[] _fieldNames;
+    private final int[] _columnFields;
+    private final int[] _multiValueOffsets;
+    private final int[] _multiValueCounts;
+    private final int _multiValueSize;
+    private final boolean _deduplicateValues;
+
+    public FieldLayout(String[] fields, boolean deduplicateValues) {
+        final Map<String, Integer> fieldIndexes = new LinkedHashMap<>();
+        final int[] columnCounts = new int[fields.length];
+        _columnFields = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            Integer fieldIndex = fieldIndexes.get(fields[i]);
+            if (fieldIndex == null) {
+                fieldIndex = fieldIndexes.size();
+                fieldIndexes.put(fields[i], fieldIndex);
+            }
+            _columnFields[i] = fieldIndex;
+            columnCounts[fieldIndex]++;
+        }
+
+        final int fieldCount = fieldIndexes.size();
+        _fieldNames = fieldIndexes.keySet().toArray(new String[fieldCount]);
+        _multiValueOffsets = new int[fieldCount];
+        _multiValueCounts = Arrays.copyOf(columnCounts, fieldCount);
+        int multiValueSize = 0;
+        for (int i = 0; i < fieldCount; i++) {
+            if (_multiValueCounts[i] > 1) {
+                _multiValueOffsets[i] = multiValueSize;
+                multiValueSize += _multiValueCounts[i];
+            } else {
+                _multiValueOffsets[i] = -1;
+            }
+        }
+        _multiValueSize = multiValueSize;
+        _deduplicateValues = deduplicateValues;
+    }
+
+    /**
+     * Creates the document of a record.
+     * 
+     * @param record
+     *            the record, with the document ID as the first element
+     *            followed by the values of each column
+     * @return the document
+     */
+    public Map<String, Object> createDocument(Object[] record) {
+        final Map<String, Object> document = new HashMap<>((int) (_fieldNames.length / 0.75f) + 1);
+        if (_multiValueSize == 0) {
+            for (int i = 0; i < _columnFields.length; i++) {
+                final Object value = record[i + 1];
+                if (value != null) {
+                    document.put(_fieldNames[_columnFields[i]], value);
+                }
+            }
+            return document;
+        }
+
+        final Object[] multiValues = new Object[_multiValueSize];
+        final int[] multiValueCounts = new int[_fieldNames.length];
+        for (int i = 0; i < _columnFields.length; i++) {
+            final Object value = record[i + 1];
+            if (value == null) {
+                continue;
+            }
+            final int field = _columnFields[i];
+            final int offset = _multiValueOffsets[field];
+            if (offset == -1) {
+                document.put(_fieldNames[field], value);
+            } else if (!_deduplicateValues || !contains(multiValues, offset, multiValueCounts[field], value)) {
+                multiValues[offset + multiValueCounts[field]] = value;
+                multiValueCounts[field]++;
+            }
+        }
+
+        for (int field = 0; field < _fieldNames.length; field++) {
+            final int count = multiValueCounts[field];
+            if (count == 1) {
+                document.put(_fieldNames[field], multiValues[_multiValueOffsets[field]]);
+            } else if (count > 1) {
+                final int offset = _multiValueOffsets[field];
+                document.put(_fieldNames[field], Arrays.asList(Arrays.copyOfRange(multiValues, offset, offset
+                        + count)));
+            }
+        }
+        return document;
+    }
+
+    private static boolean contains(Object[] values, int offset, int count, Object value) {
+        for (int i = offset; i < offset + count; i++) {
+            if (value.equals(values[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.Arrays;
+
+/**
+ * Parsed representation of a (possibly dotted) field name, such as
+ * "address.city" (a field of an object) or "orders[].amount" (a field of the
+ * objects in an array). At most one array segment is supported; any further
+ * "[]" markers are ignored.
+ */
+public final class FieldPath {
+
+    private static final String ARRAY_MARKER = "[]";
+
+    private final String _name;
+    private final String[] _segments;
+    private final int _arraySegment;
+
+    private FieldPath(String name, String[] segments, int arraySegment) {
+        _name = name;
+        _segments = segments;
+        _arraySegment = arraySegment;
+    }
+
+    public static FieldPath parse(String name) {
+        final String[] segments = name.split("\\.");
+        int arraySegment = -1;
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].endsWith(ARRAY_MARKER)) {
+                segments[i] = segments[i].substring(0, segments[i].length() - ARRAY_MARKER.length());
+                if (arraySegment == -1) {
+                    arraySegment = i;
+                }
+            }
+        }
+        return new FieldPath(name, segments, arraySegment);
+    }
+
+    /**
+     * Gets the field name as it was configured.
+     * 
+     * @return the field name
+     */
+    public String getName() {
+        return _name;
+    }
+
+    public String[] getSegments() {
+        return _segments;
+    }
+
+    /**
+     * Gets the index of the segment that denotes an array, or -1 if the path
+     * does not contain an array.
+     * 
+     * @return the index of the array segment
+     */
+    public int getArraySegment() {
+        return _arraySegment;
+    }
+
+    public boolean isArray() {
+        return _arraySegment != -1;
+    }
+
+    /**
+     * Determines if the path is a plain top-level field name.
+     * 
+     * @return true if there is only one segment and it is not an array
+     */
+    public boolean isSimple() {
+        return _segments.length == 1 && _arraySegment == -1;
+    }
+
+    /**
+     * Gets the dotted path of the array this field belongs to, e.g. "orders"
+     * for "orders[].amount".
+     * 
+     * @return the array path, or null if the field is not part of an array
+     */
+    public String getArrayPath() {
+        if (_arraySegment == -1) {
+            return null;
+        }
+        return join(_segments, 0, _arraySegment + 1);
+    }
+
+    private static String join(String[] segments, int start, int end) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                sb.append('.');
+            }
+            sb.append(segments[i]);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "FieldPath[" + Arrays.toString(_segments) + ",arraySegment=" + _arraySegment + "]";
+    }
+}
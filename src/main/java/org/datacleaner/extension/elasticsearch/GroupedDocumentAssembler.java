@@ -0,0 +1,181 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles documents from rows that are grouped by document ID. Rows with the
+ * same ID must arrive consecutively; each row is merged into the current
+ * document and the document is emitted as soon as a row with a different ID
+ * arrives, so only one document is held in memory at a time.
+ * 
+ * Field names are interpreted as paths (see {@link FieldPath}): plain and
+ * dotted fields become (nested) object fields taking the first non-null value
+ * of the group, while each row contributes one element to every array field,
+ * e.g. "orders[].amount" and "orders[].date" of a row become one object in the
+ * "orders" array, and "tags[]" adds the value to the "tags" array.
+ */
+public class GroupedDocumentAssembler {
+
+    private final FieldPath[] _paths;
+    private final int[] _arrayIndexes;
+    private final FieldPath[] _arrays;
+
+    private String _currentId;
+    private Map<String, Object> _currentDocument;
+
+    public GroupedDocumentAssembler(String[] fields) {
+        _paths = new FieldPath[fields.length];
+        _arrayIndexes = new int[fields.length];
+        final List<String> arrayPaths = new ArrayList<>();
+        final List<FieldPath> arrays = new ArrayList<>();
+        for (int i = 0; i < fields.length; i++) {
+            final FieldPath path = FieldPath.parse(fields[i]);
+            _paths[i] = path;
+            if (path.isArray()) {
+                final String arrayPath = path.getArrayPath();
+                int index = arrayPaths.indexOf(arrayPath);
+                if (index == -1) {
+                    index = arrayPaths.size();
+                    arrayPaths.add(arrayPath);
+                    arrays.add(path);
+                }
+                _arrayIndexes[i] = index;
+            } else {
+                _arrayIndexes[i] = -1;
+            }
+        }
+        _arrays = arrays.toArray(new FieldPath[arrays.size()]);
+    }
+
+    /**
+     * Adds a row to the document being assembled.
+     * 
+     * @param record
+     *            the row, with the document ID as the first element followed
+     *            by the values of each field
+     * @return the previous document, as a record of ID and document map, if
+     *         the row starts a new document, or null otherwise
+     */
+    public synchronized Object[] add(Object[] record) {
+        final String id = (String) record[0];
+        Object[] completed = null;
+        if (_currentId != null && !_currentId.equals(id)) {
+            completed = complete();
+        }
+        if (_currentDocument == null) {
+            _currentId = id;
+            _currentDocument = new LinkedHashMap<>();
+        }
+        merge(record);
+        return completed;
+    }
+
+    /**
+     * Completes the document being assembled, if any.
+     * 
+     * @return the last document, as a record of ID and document map, or null
+     */
+    public synchronized Object[] flush() {
+        if (_currentDocument == null) {
+            return null;
+        }
+        return complete();
+    }
+
+    private Object[] complete() {
+        final Object[] completed = new Object[] { _currentId, _currentDocument };
+        _currentId = null;
+        _currentDocument = null;
+        return completed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void merge(Object[] record) {
+        final Object[] elements = new Object[_arrays.length];
+        for (int i = 0; i < _paths.length; i++) {
+            final Object value = record[i + 1];
+            if (value == null) {
+                continue;
+            }
+            final FieldPath path = _paths[i];
+            final String[] segments = path.getSegments();
+            final int arrayIndex = _arrayIndexes[i];
+            if (arrayIndex == -1) {
+                final Map<String, Object> parent = getObject(_currentDocument, segments, 0, segments.length - 1);
+                final String key = segments[segments.length - 1];
+                if (!parent.containsKey(key)) {
+                    parent.put(key, value);
+                }
+            } else if (path.getArraySegment() == segments.length - 1) {
+                // array of scalar values
+                if (elements[arrayIndex] == null) {
+                    elements[arrayIndex] = new ArrayList<Object>();
+                }
+                ((List<Object>) elements[arrayIndex]).add(value);
+            } else {
+                if (elements[arrayIndex] == null) {
+                    elements[arrayIndex] = new LinkedHashMap<String, Object>();
+                }
+                final Map<String, Object> element = (Map<String, Object>) elements[arrayIndex];
+                final int start = path.getArraySegment() + 1;
+                getObject(element, segments, start, segments.length - 1).put(segments[segments.length - 1], value);
+            }
+        }
+
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] != null) {
+                final String[] segments = _arrays[i].getSegments();
+                final int arraySegment = _arrays[i].getArraySegment();
+                final Map<String, Object> parent = getObject(_currentDocument, segments, 0, arraySegment);
+                List<Object> list = (List<Object>) parent.get(segments[arraySegment]);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    parent.put(segments[arraySegment], list);
+                }
+                if (elements[i] instanceof List) {
+                    list.addAll((List<Object>) elements[i]);
+                } else {
+                    list.add(elements[i]);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getObject(Map<String, Object> root, String[] segments, int start, int end) {
+        Map<String, Object> current = root;
+        for (int i = start; i < end; i++) {
+            final Object child = current.get(segments[i]);
+            if (child instanceof Map) {
+                current = (Map<String, Object>) child;
+            } else {
+                final Map<String, Object> map = new LinkedHashMap<>();
+                current.put(segments[i], map);
+                current = map;
+            }
+        }
+        return current;
+    }
+}
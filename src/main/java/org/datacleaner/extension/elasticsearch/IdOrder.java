@@ -0,0 +1,67 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+
+/**
+ * The order of document IDs in sorted input. IDs are compared as the strings
+ * they are indexed as, but IDs of number columns are compared numerically, so
+ * that e.g. '9' comes before '10' like in a database sorted by a number column.
+ */
+public enum IdOrder implements Comparator<String> {
+
+    LEXICOGRAPHIC {
+        @Override
+        public int compare(String id1, String id2) {
+            return id1.compareTo(id2);
+        }
+    },
+
+    NUMERIC {
+        @Override
+        public int compare(String id1, String id2) {
+            return toNumber(id1).compareTo(toNumber(id2));
+        }
+
+        private BigDecimal toNumber(String id) {
+            try {
+                return new BigDecimal(id);
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("ID '" + id + "' is not a number", e);
+            }
+        }
+    };
+
+    /**
+     * Gets the order of the IDs of an ID column.
+     * 
+     * @param dataType
+     *            the data type of the ID column
+     * @return the order
+     */
+    public static IdOrder forType(Class<?> dataType) {
+        if (dataType != null && Number.class.isAssignableFrom(dataType)) {
+            return NUMERIC;
+        }
+        return LEXICOGRAPHIC;
+    }
+}
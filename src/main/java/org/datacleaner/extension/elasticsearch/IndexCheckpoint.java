@@ -0,0 +1,232 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.metamodel.util.Action;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of how far an indexing job has got, so that a failed job can be
+ * resumed instead of started over.
+ * 
+ * Documents are numbered in the order they are produced, and each buffered
+ * record carries its number as its last element. Once a bulk has been
+ * acknowledged by the cluster its numbers are marked as done, and the
+ * checkpoint is the highest number up to which all documents are done, along
+ * with the ID of that document. Bulks may hold any numbers, e.g. when records
+ * are spread over several {@link BulkWriteBuffer}s.
+ * 
+ * If the documents are produced in the order of their IDs, all documents with
+ * a lower ID than the last ID of the checkpoint have been indexed, so a resumed
+ * job can skip them.
+ * 
+ * The checkpoint is saved to a properties file at most once per save interval
+ * and when the job is closed. The file is replaced atomically, so a crash never
+ * leaves a partially written checkpoint behind.
+ */
+public class IndexCheckpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexCheckpoint.class);
+
+    private static final String KEY_DOCUMENT_COUNT = "documents";
+    private static final String KEY_LAST_ID = "lastId";
+
+    private final File _file;
+    private final long _saveIntervalNanos;
+    private final TreeMap<Long, Object[]> _doneRanges;
+    private long _documentCount;
+    private String _lastId;
+    private long _savedDocumentCount;
+    private long _lastSaveTime;
+
+    public IndexCheckpoint(File file, long saveIntervalMillis) {
+        _file = file;
+        _saveIntervalNanos = TimeUnit.MILLISECONDS.toNanos(saveIntervalMillis);
+        _doneRanges = new TreeMap<>();
+        _lastSaveTime = System.nanoTime();
+    }
+
+    /**
+     * Loads the checkpoint saved in the file, if any.
+     * 
+     * @return true if a checkpoint was loaded
+     * @throws IOException
+     */
+    public synchronized boolean load() throws IOException {
+        if (!_file.exists()) {
+            return false;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(_file.toPath())) {
+            properties.load(in);
+        }
+        final String documentCount = properties.getProperty(KEY_DOCUMENT_COUNT);
+        if (documentCount == null) {
+            throw new IllegalStateException("Not a valid checkpoint file: " + _file);
+        }
+        _documentCount = Long.parseLong(documentCount);
+        _lastId = properties.getProperty(KEY_LAST_ID);
+        _savedDocumentCount = _documentCount;
+        return true;
+    }
+
+    /**
+     * Gets the number of documents up to which all documents have been
+     * acknowledged by the cluster.
+     */
+    public synchronized long getDocumentCount() {
+        return _documentCount;
+    }
+
+    /**
+     * Gets the ID of the last document covered by the checkpoint.
+     */
+    public synchronized String getLastId() {
+        return _lastId;
+    }
+
+    /**
+     * Marks the consecutively numbered documents from first to last as
+     * acknowledged and saves the checkpoint if the save interval has passed.
+     * 
+     * @param first
+     *            the number of the first document
+     * @param last
+     *            the number of the last document
+     * @param lastId
+     *            the ID of the last document
+     */
+    public synchronized void acknowledge(long first, long last, String lastId) {
+        _doneRanges.put(first, new Object[] { last, lastId });
+        Map.Entry<Long, Object[]> next = _doneRanges.firstEntry();
+        while (next != null && next.getKey() == _documentCount + 1) {
+            _documentCount = (Long) next.getValue()[0];
+            _lastId = (String) next.getValue()[1];
+            _doneRanges.pollFirstEntry();
+            next = _doneRanges.firstEntry();
+        }
+
+        if (System.nanoTime() - _lastSaveTime >= _saveIntervalNanos) {
+            save();
+        }
+    }
+
+    /**
+     * Saves the checkpoint, unless it has not changed since last saved.
+     */
+    public synchronized void save() {
+        _lastSaveTime = System.nanoTime();
+        if (_documentCount == _savedDocumentCount) {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_DOCUMENT_COUNT, Long.toString(_documentCount));
+        if (_lastId != null) {
+            properties.setProperty(KEY_LAST_ID, _lastId);
+        }
+
+        final Path target = _file.toPath().toAbsolutePath();
+        try {
+            final Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "ElasticSearch indexer checkpoint");
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            _savedDocumentCount = _documentCount;
+            logger.debug("Saved checkpoint of {} documents, last ID '{}'", _documentCount, _lastId);
+        } catch (IOException e) {
+            // a missed checkpoint only means more work when resuming
+            logger.warn("Failed to save checkpoint to " + _file, e);
+        }
+    }
+
+    /**
+     * Deletes the checkpoint file, once the job has completed.
+     */
+    public synchronized void delete() {
+        try {
+            Files.deleteIfExists(_file.toPath());
+        } catch (IOException e) {
+            logger.warn("Failed to delete checkpoint file " + _file, e);
+        }
+    }
+
+    /**
+     * Wraps a flush action so that the documents of each bulk are acknowledged
+     * once the bulk has been written.
+     * 
+     * @param flushAction
+     * @return the wrapping flush action
+     */
+    public Action<Iterable<Object[]>> track(final Action<Iterable<Object[]>> flushAction) {
+        return new Action<Iterable<Object[]>>() {
+            @Override
+            public void run(Iterable<Object[]> rows) throws Exception {
+                flushAction.run(rows);
+
+                final TreeMap<Long, String> ids = new TreeMap<>();
+                for (Object[] row : rows) {
+                    ids.put(getNumber(row), (String) row[0]);
+                }
+                // acknowledge each run of consecutive numbers as a range
+                long first = -1;
+                long last = -1;
+                String lastId = null;
+                for (Map.Entry<Long, String> entry : ids.entrySet()) {
+                    if (first != -1 && entry.getKey() != last + 1) {
+                        acknowledge(first, last, lastId);
+                        first = -1;
+                    }
+                    if (first == -1) {
+                        first = entry.getKey();
+                    }
+                    last = entry.getKey();
+                    lastId = entry.getValue();
+                }
+                if (first != -1) {
+                    acknowledge(first, last, lastId);
+                }
+            }
+        };
+    }
+
+    private static long getNumber(Object[] row) {
+        return (Long) row[row.length - 1];
+    }
+}
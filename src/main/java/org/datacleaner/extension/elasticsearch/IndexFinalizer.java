@@ -0,0 +1,104 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.datacleaner.util.StringUtils;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes an index ready for searching once loading it has completed: refreshes
+ * it, restores the settings that were relaxed for the load and points an
+ * alias at it, atomically moving the alias away from the indices it pointed to
+ * before.
+ */
+public class IndexFinalizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexFinalizer.class);
+
+    private final String _refreshInterval;
+    private final Integer _numberOfReplicas;
+    private final String _aliasName;
+
+    public IndexFinalizer(String refreshInterval, Integer numberOfReplicas, String aliasName) {
+        _refreshInterval = refreshInterval;
+        _numberOfReplicas = numberOfReplicas;
+        _aliasName = aliasName;
+    }
+
+    /**
+     * Determines if there is anything to do when finalizing.
+     */
+    public boolean isEnabled() {
+        return !StringUtils.isNullOrEmpty(_refreshInterval) || _numberOfReplicas != null
+                || !StringUtils.isNullOrEmpty(_aliasName);
+    }
+
+    /**
+     * Finalizes one or more indices, e.g. all indices of a rollover, which
+     * share the alias.
+     * 
+     * @param client
+     * @param indexNames
+     *            the names of the indices, without wildcards
+     */
+    public void finalizeIndex(Client client, String... indexNames) {
+        if (indexNames.length == 0) {
+            return;
+        }
+        final String indexName = indexNames.length == 1 ? indexNames[0] : Arrays.toString(indexNames);
+        client.admin().indices().prepareRefresh(indexNames).execute().actionGet();
+
+        final ImmutableSettings.Builder builder = ImmutableSettings.settingsBuilder();
+        if (!StringUtils.isNullOrEmpty(_refreshInterval)) {
+            builder.put("index.refresh_interval", _refreshInterval);
+        }
+        if (_numberOfReplicas != null) {
+            builder.put("index.number_of_replicas", _numberOfReplicas);
+        }
+        final Settings settings = builder.build();
+        if (!settings.getAsMap().isEmpty()) {
+            logger.info("Updating settings of index '{}' to {}", indexName, settings.getAsMap());
+            client.admin().indices().prepareUpdateSettings(indexNames).setSettings(settings).execute().actionGet();
+        }
+
+        if (!StringUtils.isNullOrEmpty(_aliasName)) {
+            final IndicesAliasesRequestBuilder aliases = client.admin().indices().prepareAliases();
+            final Iterator<String> previousIndices = client.admin().indices().prepareGetAliases(_aliasName)
+                    .execute().actionGet().getAliases().keysIt();
+            while (previousIndices.hasNext()) {
+                final String previousIndex = previousIndices.next();
+                if (!Arrays.asList(indexNames).contains(previousIndex)) {
+                    aliases.removeAlias(previousIndex, _aliasName);
+                }
+            }
+            aliases.addAlias(indexNames, _aliasName);
+            logger.info("Pointing alias '{}' at index '{}'", _aliasName, indexName);
+            aliases.execute().actionGet();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.elasticsearch.action.admin.indices.stats.IndexStats;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.indices.IndexMissingException;
+
+/**
+ * Chooses the index that a document is written to when indices are rolled
+ * over, either by the date of the document (e.g. 'logs-2026.10.17') or by the
+ * number of documents written to the current index (e.g. 'logs-000002').
+ */
+public class IndexRollover {
+
+    private static final Pattern SEQUENCE_PATTERN = Pattern.compile("\\d{6,9}");
+
+    private final String _baseName;
+    private final DateTimeFormatter _dateFormatter;
+    private final long _maxDocuments;
+    private int _sequence;
+    private long _documentCount;
+
+    private IndexRollover(String baseName, DateTimeFormatter dateFormatter, long maxDocuments) {
+        _baseName = baseName;
+        _dateFormatter = dateFormatter;
+        _maxDocuments = maxDocuments;
+        _sequence = 1;
+        _documentCount = 0;
+    }
+
+    /**
+     * Creates a rollover to one index per period, named by the base name and
+     * the date (in UTC) of the documents formatted with the date pattern.
+     * 
+     * @param baseName
+     * @param datePattern
+     *            a {@link DateTimeFormatter} pattern, e.g. 'yyyy.MM.dd' for
+     *            daily indices
+     * @return the rollover
+     */
+    public static IndexRollover byDate(String baseName, String datePattern) {
+        return new IndexRollover(baseName, DateTimeFormatter.ofPattern(datePattern).withZone(ZoneOffset.UTC), 0);
+    }
+
+    /**
+     * Creates a rollover to a new index whenever the current one holds the
+     * maximum number of documents, named by the base name and a sequence
+     * number.
+     * 
+     * @param baseName
+     * @param maxDocuments
+     * @return the rollover
+     */
+    public static IndexRollover bySize(String baseName, long maxDocuments) {
+        if (maxDocuments <= 0) {
+            throw new IllegalArgumentException("Max documents must be positive");
+        }
+        return new IndexRollover(baseName, null, maxDocuments);
+    }
+
+    public boolean isByDate() {
+        return _dateFormatter != null;
+    }
+
+    /**
+     * Gets the wildcard pattern of the indices of this rollover. Since it
+     * also matches other indices starting with the base name (e.g.
+     * 'logs-archive'), the indices it resolves to must be filtered with
+     * {@link #isRolloverIndex(String)}.
+     */
+    public String getIndexPattern() {
+        return _baseName + "-*";
+    }
+
+    /**
+     * Determines if an index is one of this rollover, i.e. if its name is the
+     * base name followed by a date of the date pattern or a sequence number.
+     * 
+     * @param indexName
+     * @return true if the index belongs to this rollover
+     */
+    public boolean isRolloverIndex(String indexName) {
+        if (!indexName.startsWith(_baseName + "-")) {
+            return false;
+        }
+        final String suffix = indexName.substring(_baseName.length() + 1);
+        if (!isByDate()) {
+            return SEQUENCE_PATTERN.matcher(suffix).matches();
+        }
+        try {
+            _dateFormatter.parse(suffix);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the existing indices of this rollover.
+     * 
+     * @param client
+     * @return the index names, in no particular order
+     */
+    public String[] getIndexNames(Client client) {
+        final Set<String> indexNames = getIndexStats(client).keySet();
+        return indexNames.toArray(new String[indexNames.size()]);
+    }
+
+    private Map<String, IndexStats> getIndexStats(Client client) {
+        final Map<String, IndexStats> indices;
+        try {
+            indices = client.admin().indices().prepareStats(getIndexPattern()).setDocs(true).execute()
+                    .actionGet().getIndices();
+        } catch (IndexMissingException e) {
+            return Collections.emptyMap();
+        }
+        final Map<String, IndexStats> rolloverIndices = new HashMap<>();
+        for (Map.Entry<String, IndexStats> entry : indices.entrySet()) {
+            if (isRolloverIndex(entry.getKey())) {
+                rolloverIndices.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return rolloverIndices;
+    }
+
+    /**
+     * Continues writing to the last of the existing indices when rolling over
+     * by size, so that a new job fills it up rather than starting over.
+     * 
+     * @param client
+     */
+    public synchronized void resume(Client client) {
+        if (isByDate()) {
+            return;
+        }
+        for (Map.Entry<String, IndexStats> entry : getIndexStats(client).entrySet()) {
+            final int sequence = Integer.parseInt(entry.getKey().substring(_baseName.length() + 1));
+            if (sequence >= _sequence) {
+                _sequence = sequence;
+                _documentCount = entry.getValue().getPrimaries().getDocs().getCount();
+            }
+        }
+    }
+
+    /**
+     * Gets the index to write the next document to.
+     * 
+     * @param timestamp
+     *            the timestamp of the document, required when rolling over by
+     *            date
+     * @return the index name
+     */
+    public String getIndexName(Date timestamp) {
+        if (isByDate()) {
+            return _baseName + "-" + _dateFormatter.format(Instant.ofEpochMilli(timestamp.getTime()));
+        }
+        synchronized (this) {
+            if (_documentCount >= _maxDocuments) {
+                _sequence++;
+                _documentCount = 0;
+            }
+            _documentCount++;
+            return _baseName + "-" + String.format("%06d", _sequence);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of request latencies in microseconds. Values are stored
+ * in log-linear buckets (8 sub-buckets per power of two), so percentiles are
+ * accurate to within 12.5% of the recorded value.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray _counts;
+    private final LongAdder _count;
+    private final LongAdder _sum;
+    private final AtomicLong _max;
+
+    public LatencyHistogram() {
+        _counts = new AtomicLongArray(BUCKET_COUNT);
+        _count = new LongAdder();
+        _sum = new LongAdder();
+        _max = new AtomicLong();
+    }
+
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        _counts.incrementAndGet(bucketOf(micros));
+        _count.increment();
+        _sum.add(micros);
+
+        long max = _max.get();
+        while (micros > max && !_max.compareAndSet(max, micros)) {
+            max = _max.get();
+        }
+    }
+
+    public long getCount() {
+        return _count.sum();
+    }
+
+    public long getMaxMicros() {
+        return _max.get();
+    }
+
+    public double getMeanMicros() {
+        final long count = _count.sum();
+        if (count == 0) {
+            return 0;
+        }
+        return (double) _sum.sum() / count;
+    }
+
+    /**
+     * Gets the (upper bound of the) latency below which the given percentage of
+     * the recorded values fall.
+     * 
+     * @param percentile
+     *            a percentile between 0 and 100
+     * @return the latency in microseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        final long count = _count.sum();
+        if (count == 0) {
+            return 0;
+        }
+        final long threshold = Math.max(1, (long) Math.ceil(percentile / 100d * count));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += _counts.get(i);
+            if (cumulative >= threshold) {
+                return Math.min(upperBoundOf(i), _max.get());
+            }
+        }
+        return _max.get();
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram[count=" + getCount() + ",p50=" + getPercentileMicros(50) + "us,p95="
+                + getPercentileMicros(95) + "us,p99=" + getPercentileMicros(99) + "us,max=" + getMaxMicros() + "us]";
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final int subBucket = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
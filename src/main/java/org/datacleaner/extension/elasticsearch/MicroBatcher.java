@@ -0,0 +1,170 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Combines calls from concurrent threads into batches. A thread that finds
+ * fewer than the maximum number of batches in progress executes the calls
+ * pending at that moment (including its own) as one batch, while calls
+ * arriving in the meantime wait for the next batch. No time is spent waiting
+ * for a batch to fill up, so a single thread gets batches of one while many
+ * threads get larger batches.
+ * 
+ * @param <I>
+ *            the input type
+ * @param <O>
+ *            the output type
+ */
+public class MicroBatcher<I, O> {
+
+    /**
+     * A call executing a batch of inputs.
+     * 
+     * @param <I>
+     *            the input type
+     * @param <O>
+     *            the output type
+     */
+    public static interface BatchCall<I, O> {
+
+        /**
+         * Executes a batch.
+         * 
+         * @param inputs
+         *            the inputs of the batch
+         * @return the outputs, in the same order as the inputs
+         */
+        public List<O> call(List<I> inputs);
+    }
+
+    private static class Entry<I, O> {
+        private final I _input;
+        private boolean _taken;
+        private boolean _done;
+        private O _output;
+        private RuntimeException _failure;
+
+        public Entry(I input) {
+            _input = input;
+        }
+    }
+
+    private final int _maxBatchSize;
+    private final int _maxConcurrentBatches;
+    private final BatchCall<I, O> _batchCall;
+    private final List<Entry<I, O>> _pending;
+    private int _executingBatches;
+
+    public MicroBatcher(int maxBatchSize, BatchCall<I, O> batchCall) {
+        this(maxBatchSize, 1, batchCall);
+    }
+
+    public MicroBatcher(int maxBatchSize, int maxConcurrentBatches, BatchCall<I, O> batchCall) {
+        if (maxConcurrentBatches <= 0) {
+            throw new IllegalArgumentException("Max concurrent batches must be positive");
+        }
+        _maxBatchSize = maxBatchSize;
+        _maxConcurrentBatches = maxConcurrentBatches;
+        _batchCall = batchCall;
+        _pending = new ArrayList<>();
+    }
+
+    /**
+     * Executes a call as part of a batch and blocks until its output is
+     * available.
+     * 
+     * @param input
+     *            the input of the call
+     * @return the output of the call
+     */
+    public O execute(I input) {
+        final Entry<I, O> entry = new Entry<>(input);
+        synchronized (this) {
+            _pending.add(entry);
+        }
+
+        while (true) {
+            final List<Entry<I, O>> batch;
+            synchronized (this) {
+                // wait for the batch holding the entry, or for a batch to
+                // complete if too many are in progress
+                while (!entry._done && (entry._taken || _executingBatches >= _maxConcurrentBatches)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for batch", e);
+                    }
+                }
+                if (entry._done) {
+                    if (entry._failure != null) {
+                        throw entry._failure;
+                    }
+                    return entry._output;
+                }
+                _executingBatches++;
+                final int batchSize = Math.min(_maxBatchSize, _pending.size());
+                batch = new ArrayList<>(_pending.subList(0, batchSize));
+                _pending.subList(0, batchSize).clear();
+                for (Entry<I, O> taken : batch) {
+                    taken._taken = true;
+                }
+            }
+
+            executeBatch(batch);
+        }
+    }
+
+    private void executeBatch(List<Entry<I, O>> batch) {
+        final List<I> inputs = new ArrayList<>(batch.size());
+        for (Entry<I, O> entry : batch) {
+            inputs.add(entry._input);
+        }
+
+        List<O> outputs = null;
+        RuntimeException failure = null;
+        try {
+            outputs = _batchCall.call(inputs);
+            if (outputs.size() != inputs.size()) {
+                failure = new IllegalStateException("Expected " + inputs.size() + " outputs, got "
+                        + outputs.size());
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            synchronized (this) {
+                for (int i = 0; i < batch.size(); i++) {
+                    final Entry<I, O> entry = batch.get(i);
+                    if (failure == null && outputs != null) {
+                        entry._output = outputs.get(i);
+                    } else {
+                        entry._failure = failure == null ? new IllegalStateException("Batch failed") : failure;
+                    }
+                    entry._done = true;
+                }
+                _executingBatches--;
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coordinates the processes that each index one partition of the same load,
+ * through marker files in a directory that all of them can access. Each
+ * partition creates a marker file when it is done, and the partition that
+ * finds all markers in place takes a lock file and becomes the one to finalize
+ * the index. Once finalized, the markers and lock are removed.
+ * 
+ * Markers of partitions that completed survive a failed load, so only the
+ * failed partitions need to be run again. The lock records the partition,
+ * host and time it was taken by. A lock left behind by a finalizer that
+ * crashed is taken over by the next partition to complete once it is older
+ * than the lock timeout; deleting the lock file and running any partition
+ * again finalizes the index right away.
+ */
+public class PartitionCoordinator {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionCoordinator.class);
+
+    private static final String LOCK_FILE_NAME = "finalize.lock";
+
+    public static final long DEFAULT_LOCK_TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final File _directory;
+    private final int _partitionIndex;
+    private final int _partitionCount;
+    private final long _lockTimeoutMillis;
+
+    public PartitionCoordinator(File directory, int partitionIndex, int partitionCount) {
+        this(directory, partitionIndex, partitionCount, DEFAULT_LOCK_TIMEOUT_MILLIS);
+    }
+
+    public PartitionCoordinator(File directory, int partitionIndex, int partitionCount, long lockTimeoutMillis) {
+        if (partitionIndex < 0 || partitionIndex >= partitionCount) {
+            throw new IllegalArgumentException("Partition index must be between 0 and " + (partitionCount - 1));
+        }
+        _directory = directory;
+        _partitionIndex = partitionIndex;
+        _partitionCount = partitionCount;
+        _lockTimeoutMillis = lockTimeoutMillis;
+    }
+
+    /**
+     * Determines if a document ID belongs to a partition.
+     * 
+     * @param id
+     * @param partitionIndex
+     * @param partitionCount
+     * @return true if the ID belongs to the partition
+     */
+    public static boolean isInPartition(String id, int partitionIndex, int partitionCount) {
+        return Math.floorMod(id.hashCode(), partitionCount) == partitionIndex;
+    }
+
+    /**
+     * Marks this partition as done.
+     * 
+     * @return true if all partitions are done and this partition should
+     *         finalize the index, in which case {@link #finalized()} must be
+     *         called afterwards
+     * @throws IOException
+     */
+    public boolean markDone() throws IOException {
+        Files.createDirectories(_directory.toPath());
+        final File marker = getMarkerFile(_partitionIndex);
+        if (!marker.exists()) {
+            Files.createFile(marker.toPath());
+        }
+        logger.info("Partition {} of {} is done", _partitionIndex + 1, _partitionCount);
+
+        for (int i = 0; i < _partitionCount; i++) {
+            if (!getMarkerFile(i).exists()) {
+                return false;
+            }
+        }
+
+        if (!tryLock() && !(takeOverStaleLock() && tryLock())) {
+            // another partition finished at the same time and finalizes
+            return false;
+        }
+        logger.info("All {} partitions are done, finalizing", _partitionCount);
+        return true;
+    }
+
+    private boolean tryLock() throws IOException {
+        final File lockFile = getLockFile();
+        try {
+            Files.createFile(lockFile.toPath());
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+        final String owner = System.currentTimeMillis() + " partition " + (_partitionIndex + 1) + " of "
+                + _partitionCount + " on " + getHostName();
+        Files.write(lockFile.toPath(), owner.getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    /**
+     * Removes the lock if it is older than the lock timeout. The lock is
+     * moved aside rather than deleted, so that of several partitions finding
+     * the same stale lock only one takes it over.
+     * 
+     * @return true if a stale lock was removed
+     * @throws IOException
+     */
+    private boolean takeOverStaleLock() throws IOException {
+        final File lockFile = getLockFile();
+        final long lockedMillis = getLockTime(lockFile);
+        if (lockedMillis < 0 || System.currentTimeMillis() - lockedMillis < _lockTimeoutMillis) {
+            return false;
+        }
+        final File staleLockFile = new File(_directory, LOCK_FILE_NAME + ".stale-" + _partitionIndex);
+        try {
+            Files.move(lockFile.toPath(), staleLockFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            // another partition took it over first
+            return false;
+        }
+        logger.warn("Taking over stale lock taken at {}: {}", new Date(lockedMillis), readLock(staleLockFile));
+        Files.deleteIfExists(staleLockFile.toPath());
+        return true;
+    }
+
+    /**
+     * Gets the time the lock was taken at, or -1 if there is no lock. Falls
+     * back to the modification time of the file while the owner has not been
+     * written yet.
+     */
+    private long getLockTime(File lockFile) throws IOException {
+        final String owner = readLock(lockFile);
+        if (owner == null) {
+            return -1;
+        }
+        final int end = owner.indexOf(' ');
+        try {
+            return Long.parseLong(end == -1 ? owner : owner.substring(0, end));
+        } catch (NumberFormatException e) {
+            final long lastModified = lockFile.lastModified();
+            return lastModified == 0 ? -1 : lastModified;
+        }
+    }
+
+    private static String readLock(File lockFile) throws IOException {
+        try {
+            return new String(Files.readAllBytes(lockFile.toPath()), StandardCharsets.UTF_8).trim();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static String getHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "unknown host";
+        }
+    }
+
+    /**
+     * Releases the lock without removing the markers, e.g. when finalizing
+     * failed, so that running any partition again retries finalizing.
+     * 
+     * @throws IOException
+     */
+    public void releaseLock() throws IOException {
+        Files.deleteIfExists(getLockFile().toPath());
+    }
+
+    /**
+     * Removes the markers and the lock once the index has been finalized, so
+     * the directory can be used for the next load.
+     * 
+     * @throws IOException
+     */
+    public void finalized() throws IOException {
+        for (int i = 0; i < _partitionCount; i++) {
+            Files.deleteIfExists(getMarkerFile(i).toPath());
+        }
+        releaseLock();
+    }
+
+    private File getLockFile() {
+        return new File(_directory, LOCK_FILE_NAME);
+    }
+
+    private File getMarkerFile(int partitionIndex) {
+        return new File(_directory, "partition-" + partitionIndex + "-of-" + _partitionCount + ".done");
+    }
+}
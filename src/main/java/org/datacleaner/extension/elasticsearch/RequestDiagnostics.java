@@ -0,0 +1,128 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+
+/**
+ * Sampled diagnostics of requests. Instead of logging every request, only
+ * every Nth request and requests slower than a threshold are logged, and a
+ * summary is logged when the component closes. Log arguments are only turned
+ * into strings for the requests that are actually logged.
+ */
+public class RequestDiagnostics {
+
+    private final Logger _logger;
+    private final int _sampleRate;
+    private final long _slowThresholdMicros;
+    private final LongAdder _requestCount;
+    private final LongAdder _slowCount;
+    private final LongAdder _notFoundCount;
+    private final LongAdder _missingFieldCount;
+    private final LatencyHistogram _latencies;
+
+    /**
+     * Creates request diagnostics.
+     * 
+     * @param logger
+     *            the logger to log to
+     * @param sampleRate
+     *            log every Nth request, or zero to not sample requests
+     * @param slowThresholdMillis
+     *            log requests taking longer than this, or zero to not log slow
+     *            requests
+     */
+    public RequestDiagnostics(Logger logger, int sampleRate, long slowThresholdMillis) {
+        _logger = logger;
+        _sampleRate = sampleRate;
+        _slowThresholdMicros = TimeUnit.MILLISECONDS.toMicros(slowThresholdMillis);
+        _requestCount = new LongAdder();
+        _slowCount = new LongAdder();
+        _notFoundCount = new LongAdder();
+        _missingFieldCount = new LongAdder();
+        _latencies = new LatencyHistogram();
+    }
+
+    /**
+     * Records a completed request.
+     * 
+     * @param request
+     *            a description of the request, e.g. the document ID
+     * @param response
+     *            the response
+     * @param latencyMicros
+     *            the time the request took
+     */
+    public void onRequest(Object request, Object response, long latencyMicros) {
+        _requestCount.increment();
+        _latencies.record(latencyMicros);
+
+        if (_slowThresholdMicros > 0 && latencyMicros > _slowThresholdMicros) {
+            _slowCount.increment();
+            _logger.warn("Slow request {} took {} ms: {}", request, latencyMicros / 1000, response);
+        } else if (_sampleRate > 0 && _requestCount.sum() % _sampleRate == 0) {
+            _logger.info("Sampled request {} took {} ms: {}", request, latencyMicros / 1000, response);
+        }
+    }
+
+    public void onNotFound() {
+        _notFoundCount.increment();
+    }
+
+    public void onMissingField() {
+        _missingFieldCount.increment();
+    }
+
+    public long getRequestCount() {
+        return _requestCount.sum();
+    }
+
+    public long getSlowCount() {
+        return _slowCount.sum();
+    }
+
+    public long getNotFoundCount() {
+        return _notFoundCount.sum();
+    }
+
+    public long getMissingFieldCount() {
+        return _missingFieldCount.sum();
+    }
+
+    /**
+     * Logs a summary of all recorded requests.
+     * 
+     * @param component
+     *            the name of the component to log the summary for
+     */
+    public void logSummary(String component) {
+        if (_requestCount.sum() == 0) {
+            return;
+        }
+        _logger.info("{}: {} requests, {} not found, {} missing field values, {} slow; latency p50={} ms, "
+                + "p95={} ms, p99={} ms, max={} ms", component, _requestCount.sum(), _notFoundCount.sum(),
+                _missingFieldCount.sum(), _slowCount.sum(), _latencies.getPercentileMicros(50) / 1000,
+                _latencies.getPercentileMicros(95) / 1000, _latencies.getPercentileMicros(99) / 1000,
+                _latencies.getMaxMicros() / 1000);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+/**
+ * Timing breakdown of a single request into the phases of building the
+ * request, waiting for the response (split into time spent on the wire and
+ * the time the server reports having spent, when available) and converting
+ * the response.
+ */
+public class RequestTrace {
+
+    private final String _description;
+    private long _buildMicros;
+    private long _waitMicros;
+    private long _serverMicros = -1;
+    private long _convertMicros;
+
+    public RequestTrace(String description) {
+        _description = description;
+    }
+
+    public String getDescription() {
+        return _description;
+    }
+
+    public long getBuildMicros() {
+        return _buildMicros;
+    }
+
+    public void setBuildMicros(long buildMicros) {
+        _buildMicros = buildMicros;
+    }
+
+    public long getWaitMicros() {
+        return _waitMicros;
+    }
+
+    public void setWaitMicros(long waitMicros) {
+        _waitMicros = waitMicros;
+    }
+
+    /**
+     * Gets the time the server reported having spent on the request ("took").
+     * 
+     * @return the server time, or -1 if the response does not report it
+     */
+    public long getServerMicros() {
+        return _serverMicros;
+    }
+
+    public void setServerMicros(long serverMicros) {
+        _serverMicros = serverMicros;
+    }
+
+    /**
+     * Gets the time spent waiting for the response that was not spent on the
+     * server, i.e. in transport, queueing and (de)serialization.
+     * 
+     * @return the wire time
+     */
+    public long getWireMicros() {
+        if (_serverMicros < 0) {
+            return _waitMicros;
+        }
+        return Math.max(0, _waitMicros - _serverMicros);
+    }
+
+    public long getConvertMicros() {
+        return _convertMicros;
+    }
+
+    public void setConvertMicros(long convertMicros) {
+        _convertMicros = convertMicros;
+    }
+
+    public long getTotalMicros() {
+        return _buildMicros + _waitMicros + _convertMicros;
+    }
+
+    @Override
+    public String toString() {
+        return _description + ": total=" + toMillis(getTotalMicros()) + " ms (build=" + toMillis(_buildMicros)
+                + ", wire=" + toMillis(getWireMicros()) + ", server="
+                + (_serverMicros < 0 ? "n/a" : toMillis(_serverMicros)) + ", convert=" + toMillis(_convertMicros)
+                + ")";
+    }
+
+    private static String toMillis(long micros) {
+        return Double.toString(Math.round(micros / 100d) / 10d);
+    }
+}
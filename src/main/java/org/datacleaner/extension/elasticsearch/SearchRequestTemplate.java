@@ -0,0 +1,133 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+/**
+ * Search request source that is rendered to JSON once, with placeholders for
+ * the values that change per request. Rendering a request is then only a
+ * matter of concatenating the fixed parts with the JSON-escaped values.
+ * 
+ * Placeholders are created with {@link #placeholder(int)} and used as string
+ * values when building the search source, e.g. as the text of a match query.
+ */
+public class SearchRequestTemplate {
+
+    private static final String PLACEHOLDER_PREFIX = "__datacleaner_value_";
+    private static final String PLACEHOLDER_SUFFIX = "__";
+
+    private final String[] _parts;
+    private final int[] _valueIndexes;
+
+    public SearchRequestTemplate(SearchSourceBuilder searchSource) {
+        this(searchSource.buildAsBytes(XContentType.JSON).toUtf8());
+    }
+
+    public SearchRequestTemplate(String source) {
+        final List<String> parts = new ArrayList<>();
+        final List<Integer> valueIndexes = new ArrayList<>();
+        int offset = 0;
+        while (true) {
+            final int start = source.indexOf(PLACEHOLDER_PREFIX, offset);
+            if (start == -1) {
+                break;
+            }
+            final int end = source.indexOf(PLACEHOLDER_SUFFIX, start + PLACEHOLDER_PREFIX.length());
+            parts.add(source.substring(offset, start));
+            valueIndexes.add(Integer.parseInt(source.substring(start + PLACEHOLDER_PREFIX.length(), end)));
+            offset = end + PLACEHOLDER_SUFFIX.length();
+        }
+        parts.add(source.substring(offset));
+
+        _parts = parts.toArray(new String[parts.size()]);
+        _valueIndexes = new int[valueIndexes.size()];
+        for (int i = 0; i < _valueIndexes.length; i++) {
+            _valueIndexes[i] = valueIndexes.get(i);
+        }
+    }
+
+    /**
+     * Creates the placeholder of a value, to be used as a string value when
+     * building the search source of the template.
+     * 
+     * @param valueIndex
+     *            the index of the value in the values passed to
+     *            {@link #render(String...)}
+     * @return the placeholder
+     */
+    public static String placeholder(int valueIndex) {
+        return PLACEHOLDER_PREFIX + valueIndex + PLACEHOLDER_SUFFIX;
+    }
+
+    /**
+     * Renders the search source with the given values.
+     * 
+     * @param values
+     *            the values of the placeholders
+     * @return the search source as JSON
+     */
+    public String render(String... values) {
+        final StringBuilder sb = new StringBuilder(_parts[0].length() * 2);
+        sb.append(_parts[0]);
+        for (int i = 0; i < _valueIndexes.length; i++) {
+            appendEscaped(sb, values[_valueIndexes[i]]);
+            sb.append(_parts[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends a string to a JSON document, escaped as the contents of a JSON
+     * string literal.
+     */
+    static void appendEscaped(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent calls for the same key, so that only one of them is
+ * actually executed while the others wait for and share its result. Nothing is
+ * retained once the call has completed, so this is not a cache.
+ * 
+ * @param <K>
+ *            the key type
+ * @param <V>
+ *            the result type
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * A call to execute at most once per key at a time.
+     * 
+     * @param <V>
+     *            the result type
+     */
+    public static interface Call<V> {
+        public V call();
+    }
+
+    private final ConcurrentMap<K, CompletableFuture<V>> _inFlight;
+    private final LongAdder _coalescedCount;
+
+    public SingleFlight() {
+        _inFlight = new ConcurrentHashMap<>();
+        _coalescedCount = new LongAdder();
+    }
+
+    /**
+     * Executes the call, unless a call for the same key is already in flight,
+     * in which case the result of that call is awaited and returned.
+     * 
+     * @param key
+     *            the key identifying the call
+     * @param call
+     *            the call to execute
+     * @return the result of the call
+     */
+    public V execute(K key, Call<V> call) {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final CompletableFuture<V> existing = _inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            _coalescedCount.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            final V result = call.call();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            _inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Gets the number of calls that were served by another call in flight.
+     * 
+     * @return the number of coalesced calls
+     */
+    public long getCoalescedCount() {
+        return _coalescedCount.sum();
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Bounded log of the slowest requests seen. Requests faster than the fastest
+ * request in a full log are rejected without locking, so recording is cheap
+ * once the log has filled up.
+ */
+public class SlowRequestLog {
+
+    private static final Comparator<RequestTrace> BY_TOTAL_TIME = new Comparator<RequestTrace>() {
+        @Override
+        public int compare(RequestTrace o1, RequestTrace o2) {
+            return Long.compare(o1.getTotalMicros(), o2.getTotalMicros());
+        }
+    };
+
+    private final int _capacity;
+    private final PriorityQueue<RequestTrace> _traces;
+    private volatile long _thresholdMicros;
+
+    public SlowRequestLog(int capacity) {
+        _capacity = capacity;
+        _traces = new PriorityQueue<>(capacity, BY_TOTAL_TIME);
+        _thresholdMicros = -1;
+    }
+
+    /**
+     * Records a request, if it is among the slowest seen. The trace must not
+     * be modified afterwards.
+     * 
+     * @param trace
+     *            the trace of the request
+     */
+    public void record(RequestTrace trace) {
+        final long totalMicros = trace.getTotalMicros();
+        if (totalMicros <= _thresholdMicros) {
+            return;
+        }
+        synchronized (this) {
+            if (_traces.size() < _capacity) {
+                _traces.add(trace);
+            } else if (totalMicros > _traces.peek().getTotalMicros()) {
+                _traces.poll();
+                _traces.add(trace);
+            }
+            if (_traces.size() == _capacity) {
+                _thresholdMicros = _traces.peek().getTotalMicros();
+            }
+        }
+    }
+
+    /**
+     * Gets the slowest requests, slowest first.
+     * 
+     * @return the traces of the slowest requests
+     */
+    public synchronized List<RequestTrace> getSlowest() {
+        final List<RequestTrace> traces = new ArrayList<>(_traces);
+        Collections.sort(traces, Collections.reverseOrder(BY_TOTAL_TIME));
+        return traces;
+    }
+
+    /**
+     * Gets the slowest requests, slowest first, formatted as strings.
+     * 
+     * @return the formatted traces of the slowest requests
+     */
+    public String[] getSlowestAsStrings() {
+        final List<RequestTrace> traces = getSlowest();
+        final String[] result = new String[traces.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = traces.get(i).toString();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import org.apache.metamodel.util.Action;
+
+/**
+ * A set of {@link BulkWriteBuffer}s that threads are spread across by their
+ * thread ID. Each stripe builds and submits its own bulks, so threads rarely
+ * contend for the same buffer and flushing one stripe does not block the
+ * others. All stripes share the same {@link BulkSizeController}, so the
+ * number of bulks in flight is still bounded globally.
+ */
+public class StripedBulkWriteBuffer {
+
+    private final BulkWriteBuffer[] _stripes;
+
+    public StripedBulkWriteBuffer(int stripeCount, BulkSizeController controller,
+            Action<Iterable<Object[]>> flushAction) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive");
+        }
+        _stripes = new BulkWriteBuffer[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            _stripes[i] = new BulkWriteBuffer(controller, flushAction);
+        }
+    }
+
+    public void addToBuffer(Object[] record) {
+        final int stripe = (int) (Thread.currentThread().getId() % _stripes.length);
+        _stripes[stripe].addToBuffer(record);
+    }
+
+    /**
+     * Flushes all stripes.
+     */
+    public void flushBuffer() {
+        for (BulkWriteBuffer stripe : _stripes) {
+            stripe.flushBuffer();
+        }
+    }
+
+    public int getStripeCount() {
+        return _stripes.length;
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.datacleaner.api.InputColumn;
+
+/**
+ * Factory of {@link ValueConverter}s. Converters are resolved once per column
+ * based on the column's data type, so that the per-value work is a single
+ * virtual call instead of a type switch in the client's generic serializer.
+ * Columns of unspecific types (e.g. Object) get a converter that inspects each
+ * value.
+ * 
+ * Numbers are indexed as primitives, matching {@link ExplicitMappingBuilder}:
+ * BigInteger values and BigDecimal values without a fraction (scale 0) as
+ * longs, other BigDecimal values as doubles and values of integral number
+ * types such as AtomicLong as longs. Values of other number types become
+ * doubles, while values of general number columns (e.g. Number) keep the
+ * primitive type they have. Integral big numbers beyond the range of a long
+ * are passed on as strings, leaving their conversion to the mapping. Indexing
+ * BigDecimal and BigInteger values as strings, which keeps their full
+ * precision but rules out range queries, sorting and aggregations, is an
+ * explicit option.
+ */
+public final class ValueConverters {
+
+    private static final DateTimeFormatter ISO_8601_FORMATTER = DateTimeFormatter.ofPattern(
+            "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private static final ValueConverter IDENTITY = new ValueConverter() {
+        @Override
+        public Object convert(Object value) {
+            return value;
+        }
+    };
+
+    private static final ValueConverter TO_STRING = new ValueConverter() {
+        @Override
+        public Object convert(Object value) {
+            return value.toString();
+        }
+    };
+
+    private static final ValueConverter BIG_NUMBER = new ValueConverter() {
+        @Override
+        public Object convert(Object value) {
+            return convertBigNumber((Number) value);
+        }
+    };
+
+    private static final ValueConverter LONG = new ValueConverter() {
+        @Override
+        public Object convert(Object value) {
+            return ((Number) value).longValue();
+        }
+    };
+
+    private static final ValueConverter BINARY = new ValueConverter() {
+        @Override
+        public Object convert(Object value) {
+            return Base64.getEncoder().encodeToString((byte[]) value);
+        }
+    };
+
+    private static final ValueConverter DATE_ISO_8601 = new ValueConverter() {
+        @Override
+        public Object convert(Object value) {
+            return ISO_8601_FORMATTER.format(Instant.ofEpochMilli(((Date) value).getTime()));
+        }
+    };
+
+    private static final ValueConverter DATE_EPOCH_MILLIS = new ValueConverter() {
+        @Override
+        public Object convert(Object value) {
+            return ((Date) value).getTime();
+        }
+    };
+
+    private ValueConverters() {
+        // prevent instantiation
+    }
+
+    /**
+     * Resolves the converters of a set of columns.
+     * 
+     * @param columns
+     *            the columns to resolve converters for
+     * @param dateConversion
+     *            the representation of date values
+     * @return an array of converters, one for each column
+     */
+    public static ValueConverter[] forColumns(InputColumn<?>[] columns, DateConversion dateConversion) {
+        return forColumns(columns, dateConversion, false);
+    }
+
+    /**
+     * Resolves the converters of a set of columns.
+     * 
+     * @param columns
+     *            the columns to resolve converters for
+     * @param dateConversion
+     *            the representation of date values
+     * @param bigNumbersAsStrings
+     *            whether to convert BigDecimal and BigInteger values to
+     *            strings instead of longs and doubles
+     * @return an array of converters, one for each column
+     */
+    public static ValueConverter[] forColumns(InputColumn<?>[] columns, DateConversion dateConversion,
+            boolean bigNumbersAsStrings) {
+        final ValueConverter[] converters = new ValueConverter[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            converters[i] = forType(columns[i].getDataType(), dateConversion, bigNumbersAsStrings);
+        }
+        return converters;
+    }
+
+    /**
+     * Resolves the converter for values of a particular type.
+     * 
+     * @param type
+     *            the data type, or null if unknown
+     * @param dateConversion
+     *            the representation of date values
+     * @return a converter
+     */
+    public static ValueConverter forType(Class<?> type, DateConversion dateConversion) {
+        return forType(type, dateConversion, false);
+    }
+
+    /**
+     * Resolves the converter for values of a particular type.
+     * 
+     * @param type
+     *            the data type, or null if unknown
+     * @param dateConversion
+     *            the representation of date values
+     * @param bigNumbersAsStrings
+     *            whether to convert BigDecimal and BigInteger values to
+     *            strings instead of longs and doubles
+     * @return a converter
+     */
+    public static ValueConverter forType(Class<?> type, DateConversion dateConversion, boolean bigNumbersAsStrings) {
+        if (type == null || type == Object.class) {
+            return generic(dateConversion, bigNumbersAsStrings);
+        }
+        if (type == String.class || type == Boolean.class || type == Integer.class || type == Long.class
+                || type == Short.class || type == Byte.class || type == Double.class || type == Float.class) {
+            return IDENTITY;
+        }
+        if (type == BigDecimal.class || type == BigInteger.class) {
+            return bigNumbersAsStrings ? TO_STRING : BIG_NUMBER;
+        }
+        if (isIntegral(type)) {
+            return LONG;
+        }
+        if (Number.class.isAssignableFrom(type)) {
+            // e.g. Number columns, with values of any number type
+            return numbers(bigNumbersAsStrings);
+        }
+        if (Date.class.isAssignableFrom(type)) {
+            return dateConversion == DateConversion.EPOCH_MILLIS ? DATE_EPOCH_MILLIS : DATE_ISO_8601;
+        }
+        if (type == byte[].class) {
+            return BINARY;
+        }
+        if (type == Character.class) {
+            return TO_STRING;
+        }
+        return generic(dateConversion, bigNumbersAsStrings);
+    }
+
+    /**
+     * Determines if a number type other than the primitive wrappers and big
+     * numbers holds integral values only.
+     */
+    static boolean isIntegral(Class<?> type) {
+        return type == AtomicInteger.class || type == AtomicLong.class || type == LongAdder.class
+                || type == LongAccumulator.class;
+    }
+
+    private static ValueConverter numbers(final boolean bigNumbersAsStrings) {
+        return new ValueConverter() {
+            @Override
+            public Object convert(Object value) {
+                return convertNumber((Number) value, bigNumbersAsStrings);
+            }
+        };
+    }
+
+    private static ValueConverter generic(final DateConversion dateConversion, final boolean bigNumbersAsStrings) {
+        final ValueConverter dateConverter = forType(Date.class, dateConversion);
+        return new ValueConverter() {
+            @Override
+            public Object convert(Object value) {
+                if (value instanceof String) {
+                    return value;
+                }
+                if (value instanceof Number) {
+                    return convertNumber((Number) value, bigNumbersAsStrings);
+                }
+                if (value instanceof Date) {
+                    return dateConverter.convert(value);
+                }
+                if (value instanceof byte[]) {
+                    return BINARY.convert(value);
+                }
+                if (value instanceof Character) {
+                    return value.toString();
+                }
+                return value;
+            }
+        };
+    }
+
+    private static Object convertNumber(Number number, boolean bigNumbersAsStrings) {
+        if (number instanceof BigDecimal || number instanceof BigInteger) {
+            return bigNumbersAsStrings ? number.toString() : convertBigNumber(number);
+        }
+        if (number instanceof Integer || number instanceof Long || number instanceof Double
+                || number instanceof Float || number instanceof Short || number instanceof Byte) {
+            return number;
+        }
+        if (isIntegral(number.getClass())) {
+            return number.longValue();
+        }
+        return number.doubleValue();
+    }
+
+    private static Object convertBigNumber(Number number) {
+        if (number instanceof BigInteger) {
+            final BigInteger bigInteger = (BigInteger) number;
+            return bigInteger.bitLength() < Long.SIZE ? (Object) bigInteger.longValue() : bigInteger.toString();
+        }
+        final BigDecimal bigDecimal = (BigDecimal) number;
+        if (bigDecimal.scale() <= 0) {
+            try {
+                return bigDecimal.longValueExact();
+            } catch (ArithmeticException e) {
+                return bigDecimal.toPlainString();
+            }
+        }
+        return bigDecimal.doubleValue();
+    }
+}
@@ -20,17 +20,21 @@
 package org.datacleaner.extension.elasticsearch.ui;
 
 import org.apache.metamodel.schema.Schema;
+import org.datacleaner.api.InputColumn;
 import org.datacleaner.bootstrap.WindowContext;
 import org.datacleaner.configuration.DataCleanerConfiguration;
 import org.datacleaner.connection.Datastore;
 import org.datacleaner.connection.DatastoreConnection;
 import org.datacleaner.descriptors.ConfiguredPropertyDescriptor;
+import org.datacleaner.extension.elasticsearch.ElasticSearchFullSearchTransformer;
+import org.datacleaner.extension.elasticsearch.ElasticSearchPercolatorTransformer;
 import org.datacleaner.extension.elasticsearch.ElasticSearchTransformer;
 import org.datacleaner.guice.DCModule;
 import org.datacleaner.job.builder.ComponentBuilder;
 import org.datacleaner.job.builder.TransformerComponentBuilder;
 import org.datacleaner.panels.TransformerComponentBuilderPanel;
 import org.datacleaner.widgets.DCComboBox.Listener;
+import org.datacleaner.widgets.properties.MultipleMappedStringsPropertyWidget;
 import org.datacleaner.widgets.properties.PropertyWidget;
 import org.datacleaner.widgets.properties.PropertyWidgetFactory;
 import org.datacleaner.widgets.properties.SingleDatastorePropertyWidget;
@@ -46,6 +50,10 @@ public class ElasticSearchTransformerPanel extends TransformerComponentBuilderPa
     private final ConfiguredPropertyDescriptor _datastoreProperty;
     private final ConfiguredPropertyDescriptor _documentTypeProperty;
 
+    private final MultipleMappedStringsPropertyWidget _queryFieldsWidget;
+    private final MultipleMappedStringsPropertyWidget _filterFieldsWidget;
+    private final MultipleMappedStringsPropertyWidget _valueFieldsWidget;
+
     public ElasticSearchTransformerPanel(TransformerComponentBuilder<ElasticSearchTransformer> tcb,
             WindowContext windowContext, PropertyWidgetFactory propertyWidgetFactory,
             DataCleanerConfiguration configuration, DCModule dcModule) {
@@ -59,6 +67,13 @@ public class ElasticSearchTransformerPanel extends TransformerComponentBuilderPa
                 configuration.getDatastoreCatalog(), dcModule);
         _documentTypeWidget = new SingleTableNamePropertyWidget(tcb, _documentTypeProperty, windowContext);
 
+        _queryFieldsWidget = createMappedWidget(tcb, ElasticSearchFullSearchTransformer.PROPERTY_QUERY_INPUTS,
+                ElasticSearchFullSearchTransformer.PROPERTY_QUERY_FIELDS);
+        _filterFieldsWidget = createMappedWidget(tcb, ElasticSearchFullSearchTransformer.PROPERTY_FILTER_INPUTS,
+                ElasticSearchFullSearchTransformer.PROPERTY_FILTER_FIELDS);
+        _valueFieldsWidget = createMappedWidget(tcb, ElasticSearchPercolatorTransformer.PROPERTY_INPUT_COLUMNS,
+                ElasticSearchPercolatorTransformer.PROPERTY_FIELD_NAMES);
+
         _datastoreWidget.addComboListener(new Listener<Datastore>() {
 
             @Override
@@ -73,6 +88,28 @@ public class ElasticSearchTransformerPanel extends TransformerComponentBuilderPa
         });
     }
 
+    /**
+     * Creates a widget mapping input columns to field names, if the component
+     * has the given properties.
+     */
+    private static MultipleMappedStringsPropertyWidget createMappedWidget(ComponentBuilder componentBuilder,
+            String inputColumnsPropertyName, String mappedStringsPropertyName) {
+        final ConfiguredPropertyDescriptor inputColumnsProperty = componentBuilder.getDescriptor()
+                .getConfiguredProperty(inputColumnsPropertyName);
+        final ConfiguredPropertyDescriptor mappedStringsProperty = componentBuilder.getDescriptor()
+                .getConfiguredProperty(mappedStringsPropertyName);
+        if (inputColumnsProperty == null || mappedStringsProperty == null) {
+            return null;
+        }
+        return new MultipleMappedStringsPropertyWidget(componentBuilder, inputColumnsProperty,
+                mappedStringsProperty) {
+            @Override
+            protected String getDefaultMappedString(InputColumn<?> inputColumn) {
+                return inputColumn.getName();
+            }
+        };
+    }
+
     @Override
     protected PropertyWidget<?> createPropertyWidget(ComponentBuilder componentBuilder,
             ConfiguredPropertyDescriptor propertyDescriptor) {
@@ -82,6 +119,18 @@ public class ElasticSearchTransformerPanel extends TransformerComponentBuilderPa
         if (propertyDescriptor == _documentTypeProperty) {
             return _documentTypeWidget;
         }
+        for (MultipleMappedStringsPropertyWidget mappedWidget : new MultipleMappedStringsPropertyWidget[] {
+                _queryFieldsWidget, _filterFieldsWidget, _valueFieldsWidget }) {
+            if (mappedWidget == null) {
+                continue;
+            }
+            if (propertyDescriptor == mappedWidget.getPropertyDescriptor()) {
+                return mappedWidget;
+            }
+            if (propertyDescriptor == mappedWidget.getMappedStringsPropertyWidget().getPropertyDescriptor()) {
+                return mappedWidget.getMappedStringsPropertyWidget();
+            }
+        }
         return super.createPropertyWidget(componentBuilder, propertyDescriptor);
     }
 }
@@ -0,0 +1,62 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import junit.framework.TestCase;
+
+public class BulkSizeControllerTest extends TestCase {
+
+    public void testFixed() throws Exception {
+        final BulkSizeController controller = BulkSizeController.fixed(500, 1);
+        controller.onBulkCompleted(500, 500, 100000);
+        assertEquals(500, controller.getBatchSize());
+        assertEquals(1, controller.getConcurrency());
+    }
+
+    public void testAdditiveIncreaseMultiplicativeDecrease() throws Exception {
+        final BulkSizeController controller = new BulkSizeController(true, 1000, 100, 1200, 3, 500);
+        assertEquals(1000, controller.getBatchSize());
+        assertEquals(1, controller.getConcurrency());
+
+        controller.onBulkCompleted(1000, 0, 100);
+        assertEquals(1100, controller.getBatchSize());
+        controller.onBulkCompleted(1100, 0, 100);
+        assertEquals(1200, controller.getBatchSize());
+        assertEquals(2, controller.getConcurrency());
+
+        // a partial bulk does not grow the batch size
+        controller.onBulkCompleted(10, 0, 100);
+        assertEquals(1200, controller.getBatchSize());
+
+        // slow bulks only shrink the batch size
+        controller.onBulkCompleted(1200, 0, 501);
+        assertEquals(600, controller.getBatchSize());
+        assertEquals(2, controller.getConcurrency());
+
+        // rejections shrink both
+        controller.onBulkCompleted(600, 1, 100);
+        assertEquals(300, controller.getBatchSize());
+        assertEquals(1, controller.getConcurrency());
+
+        controller.onBulkCompleted(300, 300, 100);
+        controller.onBulkCompleted(150, 150, 100);
+        assertEquals(100, controller.getBatchSize());
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import junit.framework.TestCase;
+
+import org.datacleaner.extension.elasticsearch.CircuitBreaker.State;
+
+public class CircuitBreakerTest extends TestCase {
+
+    public void testOpensAtErrorRate() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(10, 50, 60000);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(circuitBreaker.allowRequest());
+            circuitBreaker.onSuccess();
+        }
+        for (int i = 0; i < 4; i++) {
+            assertTrue(circuitBreaker.allowRequest());
+            circuitBreaker.onFailure();
+        }
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+
+        circuitBreaker.onFailure();
+        assertEquals(State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    public void testHalfOpenTrial() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(2, 100, 0);
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        assertEquals(State.OPEN, circuitBreaker.getState());
+
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+
+        circuitBreaker.onSuccess();
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.util.Action;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.collect.MapBuilder;
+import org.elasticsearch.index.VersionType;
+
+public class DeadLetterFileTest extends TestCase {
+
+    private File _file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _file = new File("target/" + getName() + ".ndjson");
+        _file.getParentFile().mkdirs();
+        deleteFiles();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        deleteFiles();
+    }
+
+    private void deleteFiles() {
+        for (File file : DeadLetterFile.getFiles(_file)) {
+            file.delete();
+        }
+    }
+
+    public void testWriteRotateAndRead() throws Exception {
+        final DeadLetterFile deadLetterFile = new DeadLetterFile(_file, 200);
+        try {
+            for (int i = 0; i < 5; i++) {
+                final IndexRequest request = new IndexRequest("testindex", "testdoc", "id_" + i)
+                        .source(MapBuilder.newMapBuilder().put("amount", "not a number " + i).map());
+                deadLetterFile.write(request, 400, "MapperParsingException[failed to parse [amount]]");
+            }
+            deadLetterFile.write(new DeleteRequest("testindex", "testdoc", "id_5"), 500, "Some failure");
+        } finally {
+            deadLetterFile.close();
+        }
+        assertEquals(6, deadLetterFile.getCount());
+
+        final List<File> files = DeadLetterFile.getFiles(_file);
+        assertTrue("Expected rotated files: " + files, files.size() > 1);
+        assertEquals(_file, files.get(files.size() - 1));
+
+        final List<String> documents = new ArrayList<>();
+        final long count = DeadLetterFile.readDocuments(_file, new Action<Object[]>() {
+            @Override
+            public void run(Object[] document) {
+                documents.add(document[0] + "=" + document[1]);
+            }
+        });
+
+        // the delete has no document to replay
+        assertEquals(5, count);
+        assertEquals("id_0={amount=not a number 0}", documents.get(0));
+        assertEquals("id_4={amount=not a number 4}", documents.get(4));
+    }
+
+    public void testWriteAndReadVersions() throws Exception {
+        final DeadLetterFile deadLetterFile = new DeadLetterFile(_file, 1024 * 1024);
+        try {
+            deadLetterFile.write(new IndexRequest("testindex", "testdoc", "id_1").source(
+                    MapBuilder.newMapBuilder().put("amount", 1).map()).version(7).versionType(VersionType.EXTERNAL_GTE),
+                    400, "Some failure");
+            deadLetterFile.write(new IndexRequest("testindex", "testdoc", "id_2").source(
+                    MapBuilder.newMapBuilder().put("amount", 2).map()), 400, "Some failure");
+        } finally {
+            deadLetterFile.close();
+        }
+
+        final List<Object[]> documents = new ArrayList<>();
+        DeadLetterFile.readDocuments(_file, new Action<Object[]>() {
+            @Override
+            public void run(Object[] document) {
+                assertEquals("testindex", document[2]);
+                documents.add(document);
+            }
+        });
+
+        // documents indexed without an external version have none to replay
+        assertEquals(2, documents.size());
+        assertEquals(7l, documents.get(0)[3]);
+        assertEquals(ExternalVersionType.EXTERNAL_GTE, documents.get(0)[4]);
+        assertNull(documents.get(1)[3]);
+        assertNull(documents.get(1)[4]);
+    }
+}
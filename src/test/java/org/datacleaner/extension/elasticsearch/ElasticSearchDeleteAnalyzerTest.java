@@ -0,0 +1,138 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.datacleaner.api.InputColumn;
+import org.datacleaner.beans.writers.WriteDataResult;
+import org.datacleaner.connection.ElasticSearchDatastore;
+import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
+import org.datacleaner.data.MockInputColumn;
+import org.datacleaner.data.MockInputRow;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.collect.MapBuilder;
+
+public class ElasticSearchDeleteAnalyzerTest extends TestCase {
+
+    private ElasticSearchTestServer _server;
+    private ElasticSearchDatastore _elasticSearchDatastore;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _server = new ElasticSearchTestServer();
+        _server.startup();
+        _elasticSearchDatastore = new ElasticSearchDatastore(null, ClientType.TRANSPORT, "localhost",
+                Integer.parseInt(ElasticSearchTestServer.TRANSPORT_PORT), ElasticSearchTestServer.CLUSTER_NAME,
+                ElasticSearchTestServer.INDEX_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        _server.close();
+    }
+
+    public void testDelete() throws Exception {
+        _server.truncateIndex();
+        for (int i = 0; i < 10; i++) {
+            _server.addDocument("id_" + i, MapBuilder.newMapBuilder().put("col1", "foo" + i).map());
+        }
+        assertEquals(10, _server.getDocumentCount());
+
+        final InputColumn<String> idCol = new MockInputColumn<String>("id");
+
+        final ElasticSearchDeleteAnalyzer analyzer = new ElasticSearchDeleteAnalyzer();
+        analyzer.idColumn = idCol;
+        analyzer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer.elasticsearchDatastore = _elasticSearchDatastore;
+        analyzer.bulkDeleteSize = 3;
+
+        analyzer.init();
+        try {
+            for (int i = 0; i < 10; i += 2) {
+                analyzer.run(new MockInputRow().put(idCol, "id_" + i), 1);
+            }
+            // unknown and null IDs are not errors
+            analyzer.run(new MockInputRow().put(idCol, "unknown"), 1);
+            analyzer.run(new MockInputRow().put(idCol, null), 1);
+
+            final WriteDataResult result = analyzer.getResult();
+            assertEquals(0, result.getWrittenRowCount());
+            assertEquals(6, result.getUpdatesCount());
+            assertEquals(0, result.getErrorRowCount());
+        } finally {
+            analyzer.close();
+        }
+
+        assertEquals(5, _server.getDocumentCount());
+    }
+
+    public void testDeadLetters() throws Exception {
+        final String indexName = "deadletterdeletes";
+        final File deadLetterFile = new File("target/testDeleteDeadLetters.json");
+        deadLetterFile.getParentFile().mkdirs();
+        deadLetterFile.delete();
+
+        final Client client = _server.getClient();
+        if (!client.admin().indices().prepareExists(indexName).execute().actionGet().isExists()) {
+            client.admin().indices().prepareCreate(indexName).execute().actionGet();
+            client.admin().cluster().prepareHealth(indexName).setWaitForYellowStatus().execute().actionGet();
+        }
+
+        final InputColumn<String> idCol = new MockInputColumn<String>("id");
+
+        final ElasticSearchDeleteAnalyzer analyzer = new ElasticSearchDeleteAnalyzer();
+        analyzer.idColumn = idCol;
+        analyzer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer.elasticsearchDatastore = new ElasticSearchDatastore(null, ClientType.TRANSPORT, "localhost",
+                Integer.parseInt(ElasticSearchTestServer.TRANSPORT_PORT), ElasticSearchTestServer.CLUSTER_NAME,
+                indexName);
+        analyzer.deadLetterFile = deadLetterFile;
+
+        analyzer.init();
+        try {
+            // deletes in a closed index fail
+            client.admin().indices().prepareClose(indexName).execute().actionGet();
+            for (int i = 0; i < 3; i++) {
+                analyzer.run(new MockInputRow().put(idCol, "id_" + i), 1);
+            }
+
+            final WriteDataResult result = analyzer.getResult();
+            assertEquals(0, result.getUpdatesCount());
+            assertEquals(3, result.getErrorRowCount());
+        } finally {
+            analyzer.close();
+            client.admin().indices().prepareDelete(indexName).execute().actionGet();
+        }
+
+        final List<String> lines = Files.readAllLines(deadLetterFile.toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0), lines.get(0).startsWith("{\"index\":\"deadletterdeletes\",\"type\":\"testdoc\","
+                + "\"id\":\"id_0\""));
+        deadLetterFile.delete();
+    }
+}
@@ -29,6 +29,12 @@ import org.datacleaner.connection.ElasticSearchDatastore;
 import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
 import org.datacleaner.data.MockInputColumn;
 import org.datacleaner.data.MockInputRow;
+import org.datacleaner.extension.elasticsearch.ElasticSearchRequestExecutor.RequestSender;
+import org.datacleaner.extension.elasticsearch.ElasticSearchRequestExecutorTest.StubRequestSender;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.client.Client;
 import org.elasticsearch.common.collect.MapBuilder;
 
 public class ElasticSearchDocumentIdLookupTransformerTest extends TestCase {
@@ -88,4 +94,45 @@ public class ElasticSearchDocumentIdLookupTransformerTest extends TestCase {
         }
 
     }
+
+    public void testFailureBehavior() throws Exception {
+        final InputColumn<String> col1 = new MockInputColumn<String>("col1");
+        final ElasticSearchDocumentIdLookupTransformer transformer = new ElasticSearchDocumentIdLookupTransformer() {
+            @Override
+            RequestSender<GetResponse> createRequestSender(Client client, final String id) {
+                if ("slow".equals(id)) {
+                    return new StubRequestSender<GetResponse>((Object) null);
+                }
+                return new StubRequestSender<GetResponse>(new ElasticsearchException("boom"));
+            }
+        };
+        transformer.documentId = col1;
+        transformer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        transformer.fields = new String[] { "city", "country" };
+        transformer.elasticsearchDatastore = _elasticSearchDatastore;
+        transformer.requestTimeoutMillis = 50;
+
+        transformer.init();
+        try {
+            try {
+                transformer.transform(new MockInputRow().put(col1, "cph"));
+                fail("Exception expected");
+            } catch (ElasticsearchException e) {
+                assertEquals("boom", e.getMessage());
+            }
+            try {
+                transformer.transform(new MockInputRow().put(col1, "slow"));
+                fail("Exception expected");
+            } catch (ElasticsearchTimeoutException e) {
+                assertEquals("No response from ElasticSearch within 50 ms", e.getMessage());
+            }
+
+            transformer.failureBehavior = RequestFailureBehavior.EMIT_NULLS;
+            assertEquals("[null, null]", Arrays.toString(transformer.transform(new MockInputRow().put(col1, "cph"))));
+            assertEquals("[null, null]", Arrays.toString(transformer.transform(new MockInputRow().put(col1,
+                    "slow"))));
+        } finally {
+            transformer.close();
+        }
+    }
 }
@@ -19,6 +19,7 @@
  */
 package org.datacleaner.extension.elasticsearch;
 
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -31,7 +32,10 @@ import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
 import org.datacleaner.data.MockInputColumn;
 import org.datacleaner.data.MockInputRow;
 import org.datacleaner.extension.elasticsearch.ElasticSearchFullSearchTransformer;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.common.collect.MapBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
 
 public class ElasticSearchFullSearchTransformerTest extends TestCase {
 
@@ -94,4 +98,155 @@ public class ElasticSearchFullSearchTransformerTest extends TestCase {
             transformer.close();
         }
     }
+
+    public void testNormalize() throws Exception {
+        assertNull(ElasticSearchFullSearchTransformer.normalize(null));
+        assertEquals("", ElasticSearchFullSearchTransformer.normalize("  "));
+        assertEquals("foo bar", ElasticSearchFullSearchTransformer.normalize("foo bar"));
+        assertEquals("foo bar", ElasticSearchFullSearchTransformer.normalize(" foo  bar\t"));
+        assertEquals("foo bar baz", ElasticSearchFullSearchTransformer.normalize("foo\t\nbar \tbaz"));
+    }
+
+    public void testCachedResults() throws Exception {
+        final InputColumn<String> col1 = new MockInputColumn<String>("col1");
+
+        final ElasticSearchFullSearchTransformer transformer = new ElasticSearchFullSearchTransformer();
+        transformer.searchInput = col1;
+        transformer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        transformer.elasticsearchDatastore = _elasticSearchDatastore;
+
+        transformer.init();
+        try {
+            _server.truncateIndex();
+            _server.addDocument("cph", MapBuilder.newMapBuilder().put("city", "Copenhagen").put("country", "Denmark")
+                    .map());
+
+            final Object[] output1 = transformer.transform(new MockInputRow().put(col1, "Copenhagen  Denmark"));
+            final Object[] output2 = transformer.transform(new MockInputRow().put(col1, " Copenhagen Denmark"));
+            assertEquals("cph", output1[0]);
+            assertEquals("cph", output2[0]);
+            assertNotSame(output1, output2);
+        } finally {
+            transformer.close();
+        }
+    }
+
+    public void testMultiFieldQueryWithFilter() throws Exception {
+        final InputColumn<String> nameColumn = new MockInputColumn<String>("name");
+        final InputColumn<String> cityColumn = new MockInputColumn<String>("city");
+        final InputColumn<String> countryColumn = new MockInputColumn<String>("country");
+
+        final ElasticSearchFullSearchTransformer transformer = new ElasticSearchFullSearchTransformer();
+        transformer.queryInputs = new InputColumn[] { nameColumn, cityColumn };
+        transformer.queryFields = new String[] { "name^2", "city" };
+        transformer.filterInputs = new InputColumn[] { countryColumn };
+        transformer.filterFields = new String[] { "country" };
+        transformer.fuzziness = "AUTO";
+        transformer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        transformer.elasticsearchDatastore = _elasticSearchDatastore;
+        transformer.validate();
+
+        transformer.init();
+        try {
+            _server.truncateIndex();
+            _server.addDocument("1", MapBuilder.newMapBuilder().put("name", "john").put("city", "copenhagen")
+                    .put("country", "dk").map());
+            _server.addDocument("2", MapBuilder.newMapBuilder().put("name", "john").put("city", "amsterdam")
+                    .put("country", "nl").map());
+
+            Object[] output;
+
+            output = transformer.transform(new MockInputRow().put(nameColumn, "jon").put(cityColumn, "amsterdam")
+                    .put(countryColumn, "nl"));
+            assertEquals("2", output[0]);
+
+            output = transformer.transform(new MockInputRow().put(nameColumn, "john").put(cityColumn, "amsterdam")
+                    .put(countryColumn, "dk"));
+            assertEquals("1", output[0]);
+
+            output = transformer.transform(new MockInputRow().put(nameColumn, "john").put(cityColumn, "amsterdam"));
+            assertEquals("2", output[0]);
+
+            output = transformer.transform(new MockInputRow().put(countryColumn, "dk"));
+            assertNull(output[0]);
+        } finally {
+            transformer.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testSearchOptions() throws Exception {
+        final InputColumn<String> col1 = new MockInputColumn<String>("col1");
+
+        final ElasticSearchFullSearchTransformer transformer = new ElasticSearchFullSearchTransformer();
+        transformer.searchInput = col1;
+        transformer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        transformer.elasticsearchDatastore = _elasticSearchDatastore;
+        transformer.searchType = SearchType.DFS_QUERY_THEN_FETCH;
+        transformer.preference = "_local";
+        transformer.terminateAfter = 5;
+        transformer.searchTimeoutMillis = 250;
+
+        _server.truncateIndex();
+        _server.addDocument("cph", MapBuilder.newMapBuilder().put("city", "Copenhagen").put("country", "Denmark")
+                .map());
+
+        transformer.init();
+        try {
+            final SearchRequestTemplate template = transformer.getRequestTemplate(0);
+            SearchRequest request = transformer.createSearchRequest(_server.getClient(), template, null,
+                    new String[] { "Copenhagen" }).request();
+            assertEquals(SearchType.DFS_QUERY_THEN_FETCH, request.searchType());
+            assertEquals("_local", request.preference());
+
+            final Map<String, Object> source = XContentHelper.convertToMap(request.source(), false).v2();
+            assertEquals(5, source.get("terminate_after"));
+            assertTrue(String.valueOf(source.get("timeout")).startsWith("250"));
+            // the '_all' field is searched by default
+            final Map<String, Object> query = (Map<String, Object>) source.get("query");
+            assertTrue(((Map<String, Object>) query.get("match")).containsKey("_all"));
+
+            // hedged requests use their own preference
+            request = transformer.createSearchRequest(_server.getClient(), template, "_replica",
+                    new String[] { "Copenhagen" }).request();
+            assertEquals("_replica", request.preference());
+
+            // the server accepts the options
+            assertEquals("cph", transformer.transform(new MockInputRow().put(col1, "Copenhagen"))[0]);
+        } finally {
+            transformer.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testSearchMappedStringFields() throws Exception {
+        final InputColumn<String> col1 = new MockInputColumn<String>("col1");
+
+        final ElasticSearchFullSearchTransformer transformer = new ElasticSearchFullSearchTransformer();
+        transformer.searchInput = col1;
+        transformer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        transformer.elasticsearchDatastore = _elasticSearchDatastore;
+        transformer.searchMappedStringFields = true;
+
+        _server.truncateIndex();
+        _server.addDocument("cph", MapBuilder.newMapBuilder().put("city", "Copenhagen").put("country", "Denmark")
+                .map());
+
+        // the fields are read from the mapping on initialization
+        transformer.init();
+        try {
+            final SearchRequest request = transformer.createSearchRequest(_server.getClient(),
+                    transformer.getRequestTemplate(0), null, new String[] { "Denmark" }).request();
+            final Map<String, Object> source = XContentHelper.convertToMap(request.source(), false).v2();
+            final Map<String, Object> query = (Map<String, Object>) source.get("query");
+            final List<Object> fields = (List<Object>) ((Map<String, Object>) query.get("multi_match"))
+                    .get("fields");
+            assertTrue(fields.toString(), fields.contains("city"));
+            assertTrue(fields.toString(), fields.contains("country"));
+
+            assertEquals("cph", transformer.transform(new MockInputRow().put(col1, "Denmark"))[0]);
+        } finally {
+            transformer.close();
+        }
+    }
 }
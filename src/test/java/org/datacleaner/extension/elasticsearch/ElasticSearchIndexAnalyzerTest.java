@@ -19,14 +19,35 @@
  */
 package org.datacleaner.extension.elasticsearch;
 
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
 import junit.framework.TestCase;
 
 import org.datacleaner.api.InputColumn;
+import org.datacleaner.beans.writers.WriteDataResult;
 import org.datacleaner.connection.ElasticSearchDatastore;
 import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
 import org.datacleaner.data.MockInputColumn;
 import org.datacleaner.data.MockInputRow;
 import org.datacleaner.extension.elasticsearch.ElasticSearchIndexAnalyzer;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.query.QueryBuilders;
 
 public class ElasticSearchIndexAnalyzerTest extends TestCase {
 
@@ -82,4 +103,474 @@ public class ElasticSearchIndexAnalyzerTest extends TestCase {
         }
 
     }
+
+    @SuppressWarnings("unchecked")
+    public void testIndexBigDecimals() throws Exception {
+        final String indexName = "bigdecimals";
+        final InputColumn<BigDecimal> priceCol = new MockInputColumn<BigDecimal>("price", BigDecimal.class);
+        final InputColumn<String> idCol = new MockInputColumn<String>("id");
+
+        final Client client = _server.getClient();
+        deleteIndex(client, indexName);
+
+        final ElasticSearchIndexAnalyzer analyzer = new ElasticSearchIndexAnalyzer();
+        analyzer.idColumn = idCol;
+        analyzer.fields = new String[] { "price" };
+        analyzer.values = new InputColumn[] { priceCol };
+        analyzer.explicitMapping = true;
+        analyzer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer.elasticsearchDatastore = new ElasticSearchDatastore(null, ClientType.TRANSPORT, "localhost",
+                Integer.parseInt(ElasticSearchTestServer.TRANSPORT_PORT), ElasticSearchTestServer.CLUSTER_NAME,
+                indexName);
+        analyzer.init();
+        try {
+            analyzer.run(new MockInputRow().put(priceCol, new BigDecimal("9.95")).put(idCol, "id_1"), 1);
+            analyzer.run(new MockInputRow().put(priceCol, new BigDecimal("1250")).put(idCol, "id_2"), 1);
+            assertEquals(2, analyzer.getResult().getWrittenRowCount());
+        } finally {
+            analyzer.close();
+        }
+
+        try {
+            final Map<String, Object> mapping = client.admin().indices().prepareGetMappings(indexName).execute()
+                    .actionGet().getMappings().get(indexName).get(ElasticSearchTestServer.DOCUMENT_TYPE)
+                    .sourceAsMap();
+            final Map<String, Object> properties = (Map<String, Object>) mapping.get("properties");
+            assertEquals("double", ((Map<String, Object>) properties.get("price")).get("type"));
+
+            // numeric, so range queries work
+            client.admin().indices().prepareRefresh(indexName).execute().actionGet();
+            assertEquals(1, client.prepareCount(indexName).setQuery(QueryBuilders.rangeQuery("price").gte(100))
+                    .execute().actionGet().getCount());
+
+            final GetResponse response = client.prepareGet(indexName, ElasticSearchTestServer.DOCUMENT_TYPE, "id_2")
+                    .execute().actionGet();
+            assertEquals(1250, ((Number) response.getSource().get("price")).intValue());
+        } finally {
+            deleteIndex(client, indexName);
+        }
+    }
+
+    public void testExternalVersioning() throws Exception {
+        final InputColumn<String> col1 = new MockInputColumn<String>("col1");
+        final InputColumn<String> idCol = new MockInputColumn<String>("id");
+        final InputColumn<Integer> versionCol = new MockInputColumn<Integer>("version", Integer.class);
+
+        _server.truncateIndex();
+
+        final ElasticSearchIndexAnalyzer analyzer1 = createVersionedAnalyzer(col1, idCol, versionCol);
+        analyzer1.init();
+        try {
+            analyzer1.run(new MockInputRow().put(col1, "foo").put(idCol, "id_1").put(versionCol, 5), 1);
+            analyzer1.run(new MockInputRow().put(col1, "bar").put(idCol, "id_2").put(versionCol, 5), 1);
+            analyzer1.run(new MockInputRow().put(col1, "baz").put(idCol, "id_3").put(versionCol, null), 1);
+            assertEquals(2, analyzer1.getResult().getWrittenRowCount());
+        } finally {
+            analyzer1.close();
+        }
+
+        final ElasticSearchIndexAnalyzer analyzer2 = createVersionedAnalyzer(col1, idCol, versionCol);
+        analyzer2.init();
+        try {
+            analyzer2.run(new MockInputRow().put(col1, "older").put(idCol, "id_1").put(versionCol, 3), 1);
+            analyzer2.run(new MockInputRow().put(col1, "newer").put(idCol, "id_2").put(versionCol, 7), 1);
+            final ElasticSearchIndexResult result = (ElasticSearchIndexResult) analyzer2.getResult();
+            assertEquals(1, result.getWrittenRowCount());
+            assertEquals(1, result.getSkippedCount());
+            assertEquals(0, result.getErrorRowCount());
+        } finally {
+            analyzer2.close();
+        }
+
+        assertEquals(2, _server.getDocumentCount());
+    }
+
+    private ElasticSearchIndexAnalyzer createVersionedAnalyzer(InputColumn<?> col1, InputColumn<?> idCol,
+            InputColumn<?> versionCol) {
+        final ElasticSearchIndexAnalyzer analyzer = new ElasticSearchIndexAnalyzer();
+        analyzer.idColumn = idCol;
+        analyzer.fields = new String[] { "col1" };
+        analyzer.values = new InputColumn[] { col1 };
+        analyzer.versionColumn = versionCol;
+        analyzer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer.elasticsearchDatastore = _elasticSearchDatastore;
+        return analyzer;
+    }
+
+    public void testResumeFromCheckpoint() throws Exception {
+        final InputColumn<Object> amountCol = new MockInputColumn<Object>("amount", Object.class);
+        final InputColumn<String> idCol = new MockInputColumn<String>("id");
+        final File checkpointFile = new File("target/testResumeFromCheckpoint.checkpoint");
+        checkpointFile.getParentFile().mkdirs();
+        checkpointFile.delete();
+
+        _server.truncateIndex();
+
+        // the job fails when the bulk holding the record that does not fit the
+        // mapping is written
+        final ElasticSearchIndexAnalyzer analyzer1 = createCheckpointedAnalyzer(amountCol, idCol, checkpointFile);
+        analyzer1.init();
+        try {
+            for (int i = 0; i < 100; i++) {
+                final Object amount = i == 55 ? "not a number" : i;
+                analyzer1.run(new MockInputRow().put(amountCol, amount).put(idCol, String.format("id_%03d", i)), 1);
+            }
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            analyzer1.close();
+        }
+        assertTrue(checkpointFile.exists());
+
+        // the resumed job skips the records that were acknowledged
+        final ElasticSearchIndexAnalyzer analyzer2 = createCheckpointedAnalyzer(amountCol, idCol, checkpointFile);
+        analyzer2.resumeFromCheckpoint = true;
+        analyzer2.init();
+        try {
+            for (int i = 0; i < 100; i++) {
+                analyzer2.run(new MockInputRow().put(amountCol, i).put(idCol, String.format("id_%03d", i)), 1);
+            }
+            assertEquals(51, analyzer2.getResult().getWrittenRowCount());
+        } finally {
+            analyzer2.close();
+        }
+        assertFalse(checkpointFile.exists());
+
+        assertEquals(100, _server.getDocumentCount());
+    }
+
+    public void testCheckpointRequiresSortedInput() throws Exception {
+        final InputColumn<Object> amountCol = new MockInputColumn<Object>("amount", Object.class);
+        final InputColumn<Integer> idCol = new MockInputColumn<Integer>("id", Integer.class);
+        final File checkpointFile = new File("target/testCheckpointRequiresSortedInput.checkpoint");
+        checkpointFile.getParentFile().mkdirs();
+        checkpointFile.delete();
+
+        final ElasticSearchIndexAnalyzer analyzer = createCheckpointedAnalyzer(amountCol, idCol, checkpointFile);
+        analyzer.init();
+        try {
+            // number IDs are compared numerically
+            analyzer.run(new MockInputRow().put(amountCol, 1).put(idCol, 9), 1);
+            analyzer.run(new MockInputRow().put(amountCol, 1).put(idCol, 10), 1);
+            analyzer.run(new MockInputRow().put(amountCol, 1).put(idCol, 10), 1);
+            try {
+                analyzer.run(new MockInputRow().put(amountCol, 1).put(idCol, 2), 1);
+                fail("Exception expected");
+            } catch (IllegalStateException e) {
+                assertEquals("Record with ID '2' arrived after ID '10', but checkpoints require the records to be "
+                        + "sorted by ID and processed in order", e.getMessage());
+            }
+        } finally {
+            analyzer.close();
+            checkpointFile.delete();
+        }
+    }
+
+    public void testGroupingRequiresSortedInput() throws Exception {
+        final InputColumn<Object> amountCol = new MockInputColumn<Object>("amount", Object.class);
+        final InputColumn<String> idCol = new MockInputColumn<String>("id");
+
+        final ElasticSearchIndexAnalyzer analyzer = new ElasticSearchIndexAnalyzer();
+        analyzer.idColumn = idCol;
+        analyzer.fields = new String[] { "orders[].amount" };
+        analyzer.values = new InputColumn[] { amountCol };
+        analyzer.groupRowsById = true;
+        analyzer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer.elasticsearchDatastore = _elasticSearchDatastore;
+        analyzer.init();
+        try {
+            analyzer.run(new MockInputRow().put(amountCol, 1).put(idCol, "id_1"), 1);
+            analyzer.run(new MockInputRow().put(amountCol, 2).put(idCol, "id_1"), 1);
+            analyzer.run(new MockInputRow().put(amountCol, 3).put(idCol, "id_2"), 1);
+            try {
+                // would replace the document of id_1
+                analyzer.run(new MockInputRow().put(amountCol, 4).put(idCol, "id_1"), 1);
+                fail("Exception expected");
+            } catch (IllegalStateException e) {
+                assertEquals("Record with ID 'id_1' arrived after ID 'id_2', but grouping rows by ID requires the "
+                        + "records to be sorted by ID and processed in order", e.getMessage());
+            }
+        } finally {
+            analyzer.close();
+        }
+    }
+
+    private ElasticSearchIndexAnalyzer createCheckpointedAnalyzer(InputColumn<?> amountCol, InputColumn<?> idCol,
+            File checkpointFile) {
+        final ElasticSearchIndexAnalyzer analyzer = new ElasticSearchIndexAnalyzer();
+        analyzer.idColumn = idCol;
+        analyzer.fields = new String[] { "checkpointedAmount" };
+        analyzer.values = new InputColumn[] { amountCol };
+        analyzer.checkpointFile = checkpointFile;
+        analyzer.bulkIndexSize = 10;
+        analyzer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer.elasticsearchDatastore = _elasticSearchDatastore;
+        return analyzer;
+    }
+
+    public void testDeadLettersAndReplay() throws Exception {
+        final String indexName = "deadletterreplay";
+        final InputColumn<Object> amountCol = new MockInputColumn<Object>("amount", Object.class);
+        final InputColumn<String> idCol = new MockInputColumn<String>("id");
+        final File deadLetterFile = new File("target/testDeadLettersAndReplay.json");
+        deadLetterFile.getParentFile().mkdirs();
+        deadLetterFile.delete();
+
+        final Client client = _server.getClient();
+        deleteIndex(client, indexName);
+        final ElasticSearchDatastore datastore = new ElasticSearchDatastore(null, ClientType.TRANSPORT,
+                "localhost", Integer.parseInt(ElasticSearchTestServer.TRANSPORT_PORT),
+                ElasticSearchTestServer.CLUSTER_NAME, indexName);
+
+        // the document that does not fit the mapping is dead lettered
+        final ElasticSearchIndexAnalyzer analyzer1 = new ElasticSearchIndexAnalyzer();
+        analyzer1.idColumn = idCol;
+        analyzer1.fields = new String[] { "amount" };
+        analyzer1.values = new InputColumn[] { amountCol };
+        analyzer1.deadLetterFile = deadLetterFile;
+        analyzer1.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer1.elasticsearchDatastore = datastore;
+        analyzer1.init();
+        try {
+            analyzer1.run(new MockInputRow().put(amountCol, 1).put(idCol, "id_1"), 1);
+            analyzer1.run(new MockInputRow().put(amountCol, "not a number").put(idCol, "id_2"), 1);
+            analyzer1.run(new MockInputRow().put(amountCol, 3).put(idCol, "id_3"), 1);
+            final WriteDataResult result = analyzer1.getResult();
+            assertEquals(2, result.getWrittenRowCount());
+            assertEquals(1, result.getErrorRowCount());
+        } finally {
+            analyzer1.close();
+        }
+        assertEquals(1, Files.readAllLines(deadLetterFile.toPath(), StandardCharsets.UTF_8).size());
+
+        // fix the cause by starting over with a new mapping, and replay
+        deleteIndex(client, indexName);
+        final ElasticSearchIndexAnalyzer analyzer2 = new ElasticSearchIndexAnalyzer();
+        analyzer2.idColumn = idCol;
+        analyzer2.fields = new String[] { "amount" };
+        analyzer2.values = new InputColumn[] { amountCol };
+        analyzer2.replayDeadLetterFile = deadLetterFile;
+        analyzer2.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer2.elasticsearchDatastore = datastore;
+        analyzer2.init();
+        try {
+            final WriteDataResult result = analyzer2.getResult();
+            assertEquals(1, result.getWrittenRowCount());
+            assertEquals(0, result.getErrorRowCount());
+        } finally {
+            analyzer2.close();
+        }
+
+        try {
+            final GetResponse response = client.prepareGet(indexName, ElasticSearchTestServer.DOCUMENT_TYPE, "id_2")
+                    .execute().actionGet();
+            assertTrue(response.isExists());
+            assertEquals("not a number", response.getSource().get("amount"));
+        } finally {
+            deleteIndex(client, indexName);
+            deadLetterFile.delete();
+        }
+    }
+
+    public void testReplayDeadLettersWithVersions() throws Exception {
+        final String indexName = "deadletterversions";
+        final InputColumn<Object> amountCol = new MockInputColumn<Object>("amount", Object.class);
+        final InputColumn<String> idCol = new MockInputColumn<String>("id");
+        final File deadLetterFile = new File("target/testReplayDeadLettersWithVersions.json");
+        deadLetterFile.getParentFile().mkdirs();
+        deadLetterFile.delete();
+
+        final Client client = _server.getClient();
+        deleteIndex(client, indexName);
+        for (String id : new String[] { "id_1", "id_2", "id_3" }) {
+            client.prepareIndex(indexName, ElasticSearchTestServer.DOCUMENT_TYPE, id).setSource("amount", 0)
+                    .setVersion(5).setVersionType(VersionType.EXTERNAL).execute().actionGet();
+        }
+
+        // id_1 failed with a newer and id_2 with an older version than indexed,
+        // and id_3 with the same version, which external_gte accepts
+        final DeadLetterFile deadLetters = new DeadLetterFile(deadLetterFile, 1024 * 1024);
+        try {
+            deadLetters.write(new IndexRequest(indexName, ElasticSearchTestServer.DOCUMENT_TYPE, "id_1")
+                    .source("amount", 1).version(6).versionType(VersionType.EXTERNAL), 503, "Some failure");
+            deadLetters.write(new IndexRequest(indexName, ElasticSearchTestServer.DOCUMENT_TYPE, "id_2")
+                    .source("amount", 2).version(4).versionType(VersionType.EXTERNAL), 503, "Some failure");
+            deadLetters.write(new IndexRequest(indexName, ElasticSearchTestServer.DOCUMENT_TYPE, "id_3")
+                    .source("amount", 3).version(5).versionType(VersionType.EXTERNAL_GTE), 503, "Some failure");
+        } finally {
+            deadLetters.close();
+        }
+
+        final ElasticSearchIndexAnalyzer analyzer = new ElasticSearchIndexAnalyzer();
+        analyzer.idColumn = idCol;
+        analyzer.fields = new String[] { "amount" };
+        analyzer.values = new InputColumn[] { amountCol };
+        analyzer.replayDeadLetterFile = deadLetterFile;
+        // the dead letters keep the version type they were indexed with
+        analyzer.versionType = ExternalVersionType.EXTERNAL;
+        analyzer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer.elasticsearchDatastore = new ElasticSearchDatastore(null, ClientType.TRANSPORT, "localhost",
+                Integer.parseInt(ElasticSearchTestServer.TRANSPORT_PORT), ElasticSearchTestServer.CLUSTER_NAME,
+                indexName);
+        analyzer.init();
+        try {
+            final ElasticSearchIndexResult result = (ElasticSearchIndexResult) analyzer.getResult();
+            assertEquals(2, result.getWrittenRowCount());
+            assertEquals(1, result.getSkippedCount());
+            assertEquals(0, result.getErrorRowCount());
+        } finally {
+            analyzer.close();
+        }
+
+        try {
+            GetResponse response = client.prepareGet(indexName, ElasticSearchTestServer.DOCUMENT_TYPE, "id_1")
+                    .execute().actionGet();
+            assertEquals(6, response.getVersion());
+            assertEquals(1, response.getSource().get("amount"));
+
+            response = client.prepareGet(indexName, ElasticSearchTestServer.DOCUMENT_TYPE, "id_2").execute()
+                    .actionGet();
+            assertEquals(5, response.getVersion());
+            assertEquals(0, response.getSource().get("amount"));
+
+            response = client.prepareGet(indexName, ElasticSearchTestServer.DOCUMENT_TYPE, "id_3").execute()
+                    .actionGet();
+            assertEquals(5, response.getVersion());
+            assertEquals(3, response.getSource().get("amount"));
+        } finally {
+            deleteIndex(client, indexName);
+            deadLetterFile.delete();
+        }
+    }
+
+    public void testRolloverByDate() throws Exception {
+        final String indexName = "rolloverlogs";
+        final String[] dayIndices = { indexName + "-2026.10.15", indexName + "-2026.10.16",
+                indexName + "-2026.10.17" };
+        final InputColumn<Object> amountCol = new MockInputColumn<Object>("amount", Object.class);
+        final InputColumn<String> idCol = new MockInputColumn<String>("id");
+        final InputColumn<Date> timestampCol = new MockInputColumn<Date>("timestamp", Date.class);
+
+        final String archiveIndex = indexName + "-archive";
+        final String aliasName = indexName + "-all";
+
+        final Client client = _server.getClient();
+        for (String dayIndex : dayIndices) {
+            deleteIndex(client, dayIndex);
+        }
+        // an unrelated index with the same prefix
+        deleteIndex(client, archiveIndex);
+        client.admin().indices().prepareCreate(archiveIndex).execute().actionGet();
+
+        final ElasticSearchIndexAnalyzer analyzer = new ElasticSearchIndexAnalyzer();
+        analyzer.idColumn = idCol;
+        analyzer.fields = new String[] { "amount" };
+        analyzer.values = new InputColumn[] { amountCol };
+        analyzer.rolloverTimestampColumn = timestampCol;
+        analyzer.aliasName = aliasName;
+        analyzer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer.elasticsearchDatastore = new ElasticSearchDatastore(null, ClientType.TRANSPORT, "localhost",
+                Integer.parseInt(ElasticSearchTestServer.TRANSPORT_PORT), ElasticSearchTestServer.CLUSTER_NAME,
+                indexName);
+        analyzer.init();
+        try {
+            analyzer.run(createTimestampedRow(idCol, amountCol, timestampCol, "id_1", "2026-10-15T08:00:00Z"), 1);
+            analyzer.run(createTimestampedRow(idCol, amountCol, timestampCol, "id_2", "2026-10-15T20:00:00Z"), 1);
+            analyzer.run(createTimestampedRow(idCol, amountCol, timestampCol, "id_3", "2026-10-16T08:00:00Z"), 1);
+
+            // moving on to the next day flushed the buffer of the previous one
+            assertEquals(2, getDocumentCount(client, dayIndices[0]));
+
+            // a late record still goes to the index of its day
+            analyzer.run(createTimestampedRow(idCol, amountCol, timestampCol, "id_4", "2026-10-15T23:00:00Z"), 1);
+            analyzer.run(createTimestampedRow(idCol, amountCol, timestampCol, "id_5", "2026-10-17T08:00:00Z"), 1);
+
+            final WriteDataResult result = analyzer.getResult();
+            assertEquals(5, result.getWrittenRowCount());
+            assertEquals(3, getDocumentCount(client, dayIndices[0]));
+            assertEquals(1, getDocumentCount(client, dayIndices[1]));
+            assertEquals(1, getDocumentCount(client, dayIndices[2]));
+
+            // the daily indices were created with the mapping of the indexer,
+            // and only they were finalized
+            for (String dayIndex : dayIndices) {
+                final MappingMetaData mapping = client.admin().indices().prepareGetMappings(dayIndex).execute()
+                        .actionGet().getMappings().get(dayIndex).get(ElasticSearchTestServer.DOCUMENT_TYPE);
+                assertEquals(false, mapping.sourceAsMap().get("date_detection"));
+            }
+            final Set<String> aliasedIndices = new TreeSet<>();
+            final Iterator<String> it = client.admin().indices().prepareGetAliases(aliasName).execute().actionGet()
+                    .getAliases().keysIt();
+            while (it.hasNext()) {
+                aliasedIndices.add(it.next());
+            }
+            assertEquals(Arrays.asList(dayIndices).toString(), aliasedIndices.toString());
+            final ImmutableOpenMap<String, MappingMetaData> archiveMappings = client.admin().indices()
+                    .prepareGetMappings(archiveIndex).execute().actionGet().getMappings().get(archiveIndex);
+            assertTrue(archiveMappings == null || archiveMappings.isEmpty());
+        } finally {
+            analyzer.close();
+            for (String dayIndex : dayIndices) {
+                deleteIndex(client, dayIndex);
+            }
+            deleteIndex(client, archiveIndex);
+        }
+    }
+
+    private static MockInputRow createTimestampedRow(InputColumn<String> idCol, InputColumn<Object> amountCol,
+            InputColumn<Date> timestampCol, String id, String timestamp) {
+        return new MockInputRow().put(idCol, id).put(amountCol, 1).put(timestampCol,
+                Date.from(Instant.parse(timestamp)));
+    }
+
+    private static long getDocumentCount(Client client, String indexName) {
+        client.admin().indices().prepareRefresh(indexName).execute().actionGet();
+        return client.prepareCount(indexName).execute().actionGet().getCount();
+    }
+
+    private static void deleteIndex(Client client, String indexName) {
+        if (client.admin().indices().prepareExists(indexName).execute().actionGet().isExists()) {
+            client.admin().indices().prepareDelete(indexName).execute().actionGet();
+        }
+    }
+
+    public void testCreateIndexSettings() throws Exception {
+        final ElasticSearchIndexAnalyzer analyzer = new ElasticSearchIndexAnalyzer();
+        assertEquals(0, analyzer.createIndexSettings(3).getAsMap().size());
+
+        analyzer.expectedDocumentCount = 50000000l;
+        analyzer.numberOfReplicas = 2;
+        analyzer.refreshInterval = "-1";
+        analyzer.translogFlushThresholdSize = "1gb";
+        Settings settings = analyzer.createIndexSettings(1);
+        assertEquals("3", settings.get("index.number_of_shards"));
+        assertEquals("0", settings.get("index.number_of_replicas"));
+        assertEquals("-1", settings.get("index.refresh_interval"));
+        assertEquals("1gb", settings.get("index.translog.flush_threshold_size"));
+
+        // shards are rounded up to a multiple of the data nodes
+        settings = analyzer.createIndexSettings(2);
+        assertEquals("4", settings.get("index.number_of_shards"));
+        assertEquals("1", settings.get("index.number_of_replicas"));
+
+        settings = analyzer.createIndexSettings(3);
+        assertEquals("3", settings.get("index.number_of_shards"));
+        assertEquals("2", settings.get("index.number_of_replicas"));
+
+        analyzer.expectedDocumentCount = 1000l;
+        assertEquals("1", analyzer.createIndexSettings(3).get("index.number_of_shards"));
+
+        analyzer.numberOfShards = 7;
+        assertEquals("7", analyzer.createIndexSettings(3).get("index.number_of_shards"));
+    }
+
+    public void testToVersion() throws Exception {
+        assertEquals(Long.valueOf(42), ElasticSearchIndexAnalyzer.toVersion(42));
+        assertEquals(Long.valueOf(42), ElasticSearchIndexAnalyzer.toVersion(" 42 "));
+        assertEquals(Long.valueOf(1000), ElasticSearchIndexAnalyzer.toVersion(new Date(1000)));
+        assertNull(ElasticSearchIndexAnalyzer.toVersion(null));
+        assertNull(ElasticSearchIndexAnalyzer.toVersion("foo"));
+        assertNull(ElasticSearchIndexAnalyzer.toVersion(-1));
+    }
 }
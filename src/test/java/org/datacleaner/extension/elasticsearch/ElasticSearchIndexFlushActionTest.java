@@ -0,0 +1,155 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.elasticsearch.nativeclient.ElasticSearchDataContext;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.transport.NoNodeAvailableException;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+
+public class ElasticSearchIndexFlushActionTest extends TestCase {
+
+    private ElasticSearchTestServer _server;
+    private ElasticSearchDataContext _dataContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _server = new ElasticSearchTestServer();
+        _server.startup();
+        _dataContext = new ElasticSearchDataContext(_server.getClient(), ElasticSearchTestServer.INDEX_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        _server.close();
+    }
+
+    public void testRetryRejectedBulks() throws Exception {
+        final BulkSizeController controller = new BulkSizeController(true, 100, 10, 1000, 4, 10000);
+        final List<List<String>> bulks = new ArrayList<>();
+
+        // the whole first bulk is rejected, then every second item of the
+        // retry, and the last retry succeeds
+        final ElasticSearchIndexFlushAction flushAction = new ElasticSearchIndexFlushAction(_dataContext,
+                new String[] { "col1" }, ElasticSearchTestServer.DOCUMENT_TYPE, controller) {
+            @Override
+            BulkResponse executeBulk(BulkRequestBuilder bulkRequestBuilder) {
+                final List<String> ids = new ArrayList<>();
+                for (ActionRequest<?> request : bulkRequestBuilder.request().requests()) {
+                    ids.add(((IndexRequest) request).id());
+                }
+                bulks.add(ids);
+
+                if (bulks.size() == 1) {
+                    throw new EsRejectedExecutionException("rejected execution of bulk");
+                }
+                final BulkItemResponse[] items = new BulkItemResponse[ids.size()];
+                for (int i = 0; i < items.length; i++) {
+                    final String id = ids.get(i);
+                    if (bulks.size() == 2 && i % 2 == 0) {
+                        items[i] = new BulkItemResponse(i, "index", new BulkItemResponse.Failure(
+                                ElasticSearchTestServer.INDEX_NAME, ElasticSearchTestServer.DOCUMENT_TYPE, id,
+                                "EsRejectedExecutionException[rejected execution]", RestStatus.TOO_MANY_REQUESTS));
+                    } else {
+                        items[i] = new BulkItemResponse(i, "index", new IndexResponse(
+                                ElasticSearchTestServer.INDEX_NAME, ElasticSearchTestServer.DOCUMENT_TYPE, id, 1,
+                                true));
+                    }
+                }
+                return new BulkResponse(items, 5);
+            }
+        };
+
+        final List<Object[]> records = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            records.add(new Object[] { "id_" + i, "foo" + i });
+        }
+        flushAction.run(records);
+
+        assertEquals(3, bulks.size());
+        assertEquals("[id_0, id_1, id_2, id_3]", bulks.get(0).toString());
+        assertEquals("[id_0, id_1, id_2, id_3]", bulks.get(1).toString());
+        assertEquals("[id_0, id_2]", bulks.get(2).toString());
+
+        final ElasticSearchMetrics metrics = flushAction.getMetrics();
+        assertEquals(4 + 2, metrics.getRetryCount());
+        assertEquals(4 + 2, metrics.getRejectionCount());
+        assertEquals(4, metrics.getDocumentCount());
+        assertEquals(3, metrics.getBulkCount());
+
+        // both rejections halved the bulk size
+        assertEquals(25, controller.getBatchSize());
+    }
+
+    public void testGiveUpAfterRepeatedRejections() throws Exception {
+        final BulkSizeController controller = new BulkSizeController(true, 100, 10, 1000, 4, 10000);
+        final ElasticSearchIndexFlushAction flushAction = new ElasticSearchIndexFlushAction(_dataContext,
+                new String[] { "col1" }, ElasticSearchTestServer.DOCUMENT_TYPE, controller) {
+            @Override
+            BulkResponse executeBulk(BulkRequestBuilder bulkRequestBuilder) {
+                throw new EsRejectedExecutionException("rejected execution of bulk");
+            }
+        };
+
+        try {
+            flushAction.run(Arrays.<Object[]> asList(new Object[] { "id_0", "foo" }));
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Bulk of 1 documents was rejected by the cluster 6 times", e.getMessage());
+        }
+        assertEquals(10, controller.getBatchSize());
+    }
+
+    public void testInterruptedRetryCompletesBulk() throws Exception {
+        final BulkSizeController controller = BulkSizeController.fixed(100, 4);
+        final ElasticSearchIndexFlushAction flushAction = new ElasticSearchIndexFlushAction(_dataContext,
+                new String[] { "col1" }, ElasticSearchTestServer.DOCUMENT_TYPE, controller) {
+            @Override
+            BulkResponse executeBulk(BulkRequestBuilder bulkRequestBuilder) {
+                // interrupts the wait before retrying
+                Thread.currentThread().interrupt();
+                throw new NoNodeAvailableException("None of the configured nodes are available");
+            }
+        };
+
+        try {
+            flushAction.run(Arrays.<Object[]> asList(new Object[] { "id_0", "foo" }));
+            fail("Exception expected");
+        } catch (InterruptedException e) {
+            // the interrupt is kept for the caller
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(0, flushAction.getMetrics().getBulksInFlight());
+    }
+}
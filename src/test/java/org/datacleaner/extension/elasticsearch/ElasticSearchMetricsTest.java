@@ -0,0 +1,65 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+public class ElasticSearchMetricsTest extends TestCase {
+
+    public void testRegisterAndUnregister() throws Exception {
+        final ElasticSearchMetrics metrics = new ElasticSearchMetrics();
+        metrics.register("ElasticSearchIndexAnalyzer", "myindex");
+
+        final ObjectName objectName = metrics.getObjectName();
+        assertNotNull(objectName);
+        assertEquals(ElasticSearchMetrics.JMX_DOMAIN, objectName.getDomain());
+        assertEquals("myindex", ObjectName.unquote(objectName.getKeyProperty("index")));
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        metrics.onBulkStarted(1024);
+        metrics.onBulkCompleted(10, 2, 5000);
+        assertEquals(10l, server.getAttribute(objectName, "DocumentCount"));
+        assertEquals(1024l, server.getAttribute(objectName, "BulkBytes"));
+        assertEquals(2l, server.getAttribute(objectName, "RejectionCount"));
+        assertEquals(0, server.getAttribute(objectName, "BulksInFlight"));
+
+        metrics.unregister();
+        assertNull(metrics.getObjectName());
+        assertFalse(server.isRegistered(objectName));
+    }
+
+    public void testCacheHitRatio() throws Exception {
+        final ElasticSearchMetrics metrics = new ElasticSearchMetrics();
+        assertEquals(0d, metrics.getCacheHitRatio());
+
+        for (int i = 0; i < 4; i++) {
+            metrics.onCacheRequest();
+        }
+        metrics.onCacheMiss();
+
+        assertEquals(3, metrics.getCacheHitCount());
+        assertEquals(0.75d, metrics.getCacheHitRatio());
+    }
+}
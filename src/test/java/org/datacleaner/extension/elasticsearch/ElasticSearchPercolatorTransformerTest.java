@@ -0,0 +1,152 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.List;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.datacleaner.api.InputColumn;
+import org.datacleaner.api.OutputColumns;
+import org.datacleaner.connection.ElasticSearchDatastore;
+import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
+import org.datacleaner.data.MockInputColumn;
+import org.datacleaner.data.MockInputRow;
+import org.elasticsearch.common.collect.MapBuilder;
+
+public class ElasticSearchPercolatorTransformerTest extends TestCase {
+
+    private ElasticSearchTestServer _server;
+    private ElasticSearchDatastore _elasticSearchDatastore;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _server = new ElasticSearchTestServer();
+        _server.startup();
+        _elasticSearchDatastore = new ElasticSearchDatastore(ElasticSearchTestServer.DATASTORE_NAME,
+                ClientType.TRANSPORT, "localhost", Integer.parseInt(ElasticSearchTestServer.TRANSPORT_PORT),
+                ElasticSearchTestServer.CLUSTER_NAME, ElasticSearchTestServer.INDEX_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        _server.close();
+    }
+
+    public void testTransform() throws Exception {
+        final InputColumn<String> col1 = new MockInputColumn<String>("col1");
+        final InputColumn<String> col2 = new MockInputColumn<String>("col2");
+
+        // make sure the fields are mapped before percolating
+        _server.addDocument("cph", MapBuilder.newMapBuilder().put("city", "Copenhagen").put("country", "Denmark")
+                .map());
+
+        final ElasticSearchPercolatorTransformer transformer = new ElasticSearchPercolatorTransformer();
+        transformer.values = new InputColumn[] { col1, col2 };
+        transformer.fields = new String[] { "city", "country" };
+        transformer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        transformer.elasticsearchDatastore = _elasticSearchDatastore;
+        transformer.ruleIds = new String[] { "danish", "capital", "amsterdam" };
+        transformer.ruleQueries = new String[] { "country:denmark",
+                "city:copenhagen OR city:amsterdam OR city:delhi", "city:amsterdam" };
+        transformer.validate();
+
+        final OutputColumns out = transformer.getOutputColumns();
+        assertEquals("OutputColumns[Matching rules, Match count]", out.toString());
+
+        transformer.init();
+        try {
+            Object[] output;
+
+            output = transformer.transform(new MockInputRow().put(col1, "Copenhagen").put(col2, "Denmark"));
+            assertEquals("[capital, danish]", new TreeSet<>((List<?>) output[0]).toString());
+            assertEquals(2, output[1]);
+
+            output = transformer.transform(new MockInputRow().put(col1, "Aarhus").put(col2, "Denmark"));
+            assertEquals("[danish]", output[0].toString());
+
+            output = transformer.transform(new MockInputRow().put(col1, "Berlin").put(col2, "Germany"));
+            assertEquals("[]", output[0].toString());
+            assertEquals(0, output[1]);
+        } finally {
+            transformer.close();
+        }
+    }
+
+    public void testFailingRecordsDoNotFailOthers() throws Exception {
+        final InputColumn<String> col1 = new MockInputColumn<String>("col1");
+        final InputColumn<String> col2 = new MockInputColumn<String>("col2");
+
+        // a number field that the failing records have text in
+        _server.addDocument("cph", MapBuilder.newMapBuilder().put("city", "Copenhagen").put("inhabitants", 600000l)
+                .map());
+
+        final ElasticSearchPercolatorTransformer transformer = new ElasticSearchPercolatorTransformer();
+        transformer.values = new InputColumn[] { col1, col2 };
+        transformer.fields = new String[] { "city", "inhabitants" };
+        transformer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        transformer.elasticsearchDatastore = _elasticSearchDatastore;
+        transformer.ruleIds = new String[] { "capital" };
+        transformer.ruleQueries = new String[] { "city:copenhagen" };
+        transformer.maxConcurrentBatches = 2;
+        transformer.validate();
+
+        transformer.init();
+        try {
+            final Object[][] outputs = new Object[8][];
+            final Throwable[] failures = new Throwable[outputs.length];
+            final Thread[] threads = new Thread[outputs.length];
+            for (int i = 0; i < threads.length; i++) {
+                final int index = i;
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        final String inhabitants = index % 2 == 0 ? "600000" : "many";
+                        try {
+                            outputs[index] = transformer.transform(new MockInputRow().put(col1, "Copenhagen").put(
+                                    col2, inhabitants));
+                        } catch (Throwable e) {
+                            failures[index] = e;
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            for (int i = 0; i < outputs.length; i++) {
+                if (i % 2 == 0) {
+                    assertNull(failures[i]);
+                    assertEquals("[capital]", outputs[i][0].toString());
+                } else {
+                    assertNotNull(failures[i]);
+                    assertTrue(failures[i].getMessage(), failures[i].getMessage().startsWith("Percolation failed"));
+                }
+            }
+        } finally {
+            transformer.close();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.datacleaner.api.InputColumn;
+import org.datacleaner.connection.ElasticSearchDatastore;
+import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
+import org.datacleaner.data.MockInputColumn;
+import org.datacleaner.data.MockInputRow;
+import org.datacleaner.result.CrosstabNavigator;
+import org.elasticsearch.common.collect.MapBuilder;
+
+public class ElasticSearchProfilingAnalyzerTest extends TestCase {
+
+    private ElasticSearchTestServer _server;
+    private ElasticSearchDatastore _elasticSearchDatastore;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _server = new ElasticSearchTestServer();
+        _server.startup();
+        _elasticSearchDatastore = new ElasticSearchDatastore(ElasticSearchTestServer.DATASTORE_NAME,
+                ClientType.TRANSPORT, "localhost", Integer.parseInt(ElasticSearchTestServer.TRANSPORT_PORT),
+                ElasticSearchTestServer.CLUSTER_NAME, ElasticSearchTestServer.INDEX_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        _server.close();
+    }
+
+    public void testProfile() throws Exception {
+        _server.truncateIndex();
+        _server.addDocument("cph", MapBuilder.newMapBuilder().put("city", "copenhagen").put("population", 600000)
+                .map());
+        _server.addDocument("ams", MapBuilder.newMapBuilder().put("city", "amsterdam").put("population", 800000)
+                .map());
+        _server.addDocument("aar", MapBuilder.newMapBuilder().put("city", "copenhagen").map());
+
+        final InputColumn<String> cityColumn = new MockInputColumn<String>("city", String.class);
+        final InputColumn<Integer> populationColumn = new MockInputColumn<Integer>("population", Integer.class);
+
+        final ElasticSearchProfilingAnalyzer analyzer = new ElasticSearchProfilingAnalyzer();
+        analyzer.columns = new InputColumn[] { cityColumn, populationColumn };
+        analyzer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer.elasticsearchDatastore = _elasticSearchDatastore;
+        analyzer.useRawStringFields = false;
+
+        analyzer.init();
+        try {
+            final ElasticSearchProfilingResult result = analyzer.getResult();
+
+            final CrosstabNavigator<?> city = result.getCrosstab().where(ElasticSearchProfilingResult.DIMENSION_FIELD,
+                    "city");
+            assertEquals(3l, city.where(ElasticSearchProfilingResult.DIMENSION_MEASURE,
+                    ElasticSearchProfilingResult.MEASURE_DOCUMENT_COUNT).get());
+            assertEquals(0l, city.where(ElasticSearchProfilingResult.DIMENSION_MEASURE,
+                    ElasticSearchProfilingResult.MEASURE_NULL_COUNT).get());
+            assertEquals(2l, city.where(ElasticSearchProfilingResult.DIMENSION_MEASURE,
+                    ElasticSearchProfilingResult.MEASURE_DISTINCT_COUNT).get());
+            assertEquals("{copenhagen=2, amsterdam=1}", result.getTopValues("city").toString());
+
+            final CrosstabNavigator<?> population = result.getCrosstab().where(
+                    ElasticSearchProfilingResult.DIMENSION_FIELD, "population");
+            assertEquals(1l, population.where(ElasticSearchProfilingResult.DIMENSION_MEASURE,
+                    ElasticSearchProfilingResult.MEASURE_NULL_COUNT).get());
+            assertEquals(600000d, population.where(ElasticSearchProfilingResult.DIMENSION_MEASURE,
+                    ElasticSearchProfilingResult.MEASURE_MIN).get());
+            assertEquals(800000d, population.where(ElasticSearchProfilingResult.DIMENSION_MEASURE,
+                    ElasticSearchProfilingResult.MEASURE_MAX).get());
+        } finally {
+            analyzer.close();
+        }
+    }
+
+    public void testRequiresLimitedInput() throws Exception {
+        final InputColumn<String> cityColumn = new MockInputColumn<String>("city", String.class);
+
+        final ElasticSearchProfilingAnalyzer analyzer = new ElasticSearchProfilingAnalyzer();
+        analyzer.columns = new InputColumn[] { cityColumn };
+        analyzer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer.elasticsearchDatastore = _elasticSearchDatastore;
+
+        analyzer.init();
+        try {
+            for (int i = 0; i < ElasticSearchProfilingAnalyzer.MAX_INPUT_ROWS; i++) {
+                analyzer.run(new MockInputRow().put(cityColumn, "copenhagen"), 1);
+            }
+            try {
+                analyzer.run(new MockInputRow().put(cityColumn, "copenhagen"), 1);
+                fail("Exception expected");
+            } catch (IllegalStateException e) {
+                assertEquals("The ElasticSearch index profiler does not use its input rows, but got more than 100; "
+                        + "limit them with a 'Max rows' filter to avoid reading the whole index", e.getMessage());
+            }
+        } finally {
+            analyzer.close();
+        }
+    }
+
+    public void testProfileByMappedTypes() throws Exception {
+        _server.truncateIndex();
+        _server.addDocument("cph", MapBuilder.newMapBuilder().put("city", "copenhagen").put("population", 600000)
+                .map());
+        _server.addDocument("ams", MapBuilder.newMapBuilder().put("city", "amsterdam").put("population", 800000)
+                .map());
+
+        // the column types do not tell what the fields are
+        final InputColumn<Object> cityColumn = new MockInputColumn<Object>("city", Object.class);
+        final InputColumn<Object> populationColumn = new MockInputColumn<Object>("population", Object.class);
+        final InputColumn<Object> unmappedColumn = new MockInputColumn<Object>("unmapped", Object.class);
+
+        final ElasticSearchProfilingAnalyzer analyzer = new ElasticSearchProfilingAnalyzer();
+        analyzer.columns = new InputColumn[] { cityColumn, populationColumn, unmappedColumn };
+        analyzer.documentType = ElasticSearchTestServer.DOCUMENT_TYPE;
+        analyzer.elasticsearchDatastore = _elasticSearchDatastore;
+
+        analyzer.init();
+        try {
+            final ElasticSearchProfilingResult result = analyzer.getResult();
+
+            // there is no raw field in the mapping, so the field itself is used
+            assertEquals("{amsterdam=1, copenhagen=1}", new TreeMap<>(result.getTopValues("city")).toString());
+
+            final CrosstabNavigator<?> population = result.getCrosstab().where(
+                    ElasticSearchProfilingResult.DIMENSION_FIELD, "population");
+            assertEquals(600000d, population.where(ElasticSearchProfilingResult.DIMENSION_MEASURE,
+                    ElasticSearchProfilingResult.MEASURE_MIN).get());
+
+            final CrosstabNavigator<?> unmapped = result.getCrosstab().where(
+                    ElasticSearchProfilingResult.DIMENSION_FIELD, "unmapped");
+            assertEquals(2l, unmapped.where(ElasticSearchProfilingResult.DIMENSION_MEASURE,
+                    ElasticSearchProfilingResult.MEASURE_NULL_COUNT).get());
+        } finally {
+            analyzer.close();
+        }
+    }
+
+    public void testGetFieldMapping() throws Exception {
+        final Map<String, Object> typeMapping = MapBuilder.<String, Object> newMapBuilder().put("properties",
+                MapBuilder.newMapBuilder().put("address", MapBuilder.newMapBuilder().put("properties",
+                        MapBuilder.newMapBuilder().put("city", MapBuilder.newMapBuilder().put("type", "string")
+                                .map()).map()).map()).map()).map();
+
+        assertEquals("{type=string}", ElasticSearchProfilingAnalyzer.getFieldMapping(typeMapping, "address.city")
+                .toString());
+        assertNull(ElasticSearchProfilingAnalyzer.getFieldMapping(typeMapping, "address.zip"));
+        assertNull(ElasticSearchProfilingAnalyzer.getFieldMapping(typeMapping, "city"));
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.datacleaner.extension.elasticsearch.ElasticSearchRequestExecutor.RequestSender;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.support.PlainListenableActionFuture;
+
+public class ElasticSearchRequestExecutorTest extends TestCase {
+
+    /**
+     * Sender that records the preferences it is called with and answers with
+     * the given responses in turn. A null response is never completed.
+     */
+    static class StubRequestSender<R> implements RequestSender<R> {
+
+        private final List<String> _preferences = new ArrayList<>();
+        private final Object[] _responses;
+
+        public StubRequestSender(Object... responses) {
+            _responses = responses;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public ListenableActionFuture<R> send(String preference) {
+            final Object response = _responses[Math.min(_preferences.size(), _responses.length - 1)];
+            _preferences.add(preference);
+            final PlainListenableActionFuture<R> future = new PlainListenableActionFuture<>(false, null);
+            if (response instanceof Throwable) {
+                future.onFailure((Throwable) response);
+            } else if (response != null) {
+                future.onResponse((R) response);
+            }
+            return future;
+        }
+
+        public List<String> getPreferences() {
+            return _preferences;
+        }
+    }
+
+    public void testExecute() throws Exception {
+        final ElasticSearchRequestExecutor executor = new ElasticSearchRequestExecutor(1000, false, 0);
+        final StubRequestSender<String> sender = new StubRequestSender<String>("foo");
+        assertEquals("foo", executor.execute(sender));
+        assertEquals("[null]", sender.getPreferences().toString());
+        assertEquals(1, executor.getMetrics().getRequestCount());
+    }
+
+    public void testTimeout() throws Exception {
+        final ElasticSearchRequestExecutor executor = new ElasticSearchRequestExecutor(50, false, 0);
+        try {
+            executor.execute(new StubRequestSender<String>((Object) null));
+            fail("Exception expected");
+        } catch (ElasticsearchTimeoutException e) {
+            assertEquals("No response from ElasticSearch within 50 ms", e.getMessage());
+        }
+        assertEquals(1, executor.getMetrics().getRequestFailureCount());
+    }
+
+    public void testFailure() throws Exception {
+        final ElasticSearchRequestExecutor executor = new ElasticSearchRequestExecutor(1000, false, 0);
+        try {
+            executor.execute(new StubRequestSender<String>(new ElasticsearchException("boom")));
+            fail("Exception expected");
+        } catch (ElasticsearchException e) {
+            assertEquals("boom", e.getMessage());
+        }
+    }
+
+    public void testHedging() throws Exception {
+        final ElasticSearchRequestExecutor executor = new ElasticSearchRequestExecutor(5000, true, 0);
+
+        // hedging starts once enough response times have been observed
+        final StubRequestSender<String> fastSender = new StubRequestSender<String>("fast");
+        for (int i = 0; i < 100; i++) {
+            assertEquals("fast", executor.execute(fastSender));
+        }
+        for (String preference : fastSender.getPreferences()) {
+            assertNull(preference);
+        }
+
+        // the first request never responds, so the hedge to replicas wins
+        final StubRequestSender<String> slowSender = new StubRequestSender<String>(null, "hedged");
+        assertEquals("hedged", executor.execute(slowSender));
+        assertEquals("[null, " + ElasticSearchRequestExecutor.PREFERENCE_REPLICA_FIRST + "]", slowSender
+                .getPreferences().toString());
+
+        // a first request that responds in time is never hedged
+        final StubRequestSender<String> sender = new StubRequestSender<String>("first", "hedged");
+        assertEquals("first", executor.execute(sender));
+        assertEquals("[null]", sender.getPreferences().toString());
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.client.Client;
+
+/**
+ * A local cluster of several {@link ElasticSearchTestServer} nodes running in
+ * the same JVM. The first node uses the default ports of the test server, so
+ * clients configured for the single test server can also connect to the
+ * cluster.
+ */
+public class ElasticSearchTestCluster {
+
+    private final List<ElasticSearchTestServer> _nodes;
+
+    public ElasticSearchTestCluster(int nodeCount) {
+        final int httpPort = Integer.parseInt(ElasticSearchTestServer.HTTP_PORT);
+        final int transportPort = Integer.parseInt(ElasticSearchTestServer.TRANSPORT_PORT);
+
+        final StringBuilder unicastHosts = new StringBuilder();
+        for (int i = 0; i < nodeCount; i++) {
+            if (i > 0) {
+                unicastHosts.append(',');
+            }
+            unicastHosts.append("localhost:").append(transportPort + i);
+        }
+
+        _nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            _nodes.add(new ElasticSearchTestServer("testnode" + i, Integer.toString(httpPort + i), Integer
+                    .toString(transportPort + i), unicastHosts.toString()));
+        }
+    }
+
+    public void startup() throws Exception {
+        for (ElasticSearchTestServer node : _nodes) {
+            node.startup();
+        }
+        try (Client client = getClient()) {
+            client.admin().cluster().prepareHealth().setWaitForNodes(Integer.toString(_nodes.size()))
+                    .setWaitForYellowStatus().execute().actionGet();
+        }
+    }
+
+    public Client getClient() {
+        return _nodes.get(0).getClient();
+    }
+
+    public ElasticSearchTestServer getNode(int index) {
+        return _nodes.get(index);
+    }
+
+    public int getNodeCount() {
+        return _nodes.size();
+    }
+
+    public void close() {
+        for (ElasticSearchTestServer node : _nodes) {
+            node.close();
+        }
+    }
+}
@@ -58,21 +58,47 @@ public class ElasticSearchTestServer {
         server.close();
     }
 
+    private final String _nodeName;
+    private final String _httpPort;
+    private final String _transportPort;
+    private final String _unicastHosts;
     private Node _node;
 
     public ElasticSearchTestServer() {
+        this("testnode", HTTP_PORT, TRANSPORT_PORT, null);
+    }
+
+    /**
+     * Creates a test server that is one of several nodes in a local cluster.
+     * 
+     * @param nodeName
+     * @param httpPort
+     * @param transportPort
+     * @param unicastHosts
+     *            comma separated host:port list of the transport addresses of
+     *            the other nodes, or null to use multicast discovery
+     */
+    public ElasticSearchTestServer(String nodeName, String httpPort, String transportPort, String unicastHosts) {
+        _nodeName = nodeName;
+        _httpPort = httpPort;
+        _transportPort = transportPort;
+        _unicastHosts = unicastHosts;
     }
 
     public void startup() throws Exception {
         ImmutableSettings.Builder settings = ImmutableSettings.settingsBuilder();
-        settings.put("node.name", "testnode");
+        settings.put("node.name", _nodeName);
         settings.put("gateway.type", "none");
         settings.put("path.data", "target/search-data");
         settings.put("http.enabled", true);
 
-        settings.put("http.port", HTTP_PORT);
+        settings.put("http.port", _httpPort);
         // settings.put("index.compound_format", false);
-        settings.put("transport.tcp.port", TRANSPORT_PORT);
+        settings.put("transport.tcp.port", _transportPort);
+        if (_unicastHosts != null) {
+            settings.put("discovery.zen.ping.multicast.enabled", false);
+            settings.put("discovery.zen.ping.unicast.hosts", _unicastHosts);
+        }
         _node = NodeBuilder.nodeBuilder().settings(settings).clusterName(CLUSTER_NAME).data(true).local(false).node();
 
         try (Client client = _node.client()) {
@@ -0,0 +1,92 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.datacleaner.api.InputColumn;
+import org.datacleaner.data.MockInputColumn;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+public class ExplicitMappingBuilderTest extends TestCase {
+
+    public void testBuild() throws Exception {
+        final InputColumn<?>[] values = new InputColumn[] { new MockInputColumn<>("name", String.class),
+                new MockInputColumn<>("code", String.class), new MockInputColumn<>("amount", Double.class),
+                new MockInputColumn<>("created", Date.class), new MockInputColumn<>("misc", Object.class),
+                new MockInputColumn<>("notes", String.class) };
+        final String[] fields = new String[] { "name", "code", "amount", "created", "misc", "notes" };
+
+        final ExplicitMappingBuilder mappingBuilder = new ExplicitMappingBuilder(fields, values, false, false, true,
+                new String[] { "code" }, null, new String[] { "notes" }, new String[] { "amount" });
+
+        final XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        mappingBuilder.build(builder);
+        builder.endObject();
+
+        assertEquals("{\"properties\":{"
+                + "\"name\":{\"type\":\"string\",\"fields\":{\"raw\":{\"type\":\"string\",\"index\":\"not_analyzed\",\"ignore_above\":256,\"doc_values\":true}}},"
+                + "\"code\":{\"type\":\"string\",\"index\":\"not_analyzed\",\"doc_values\":true},"
+                + "\"amount\":{\"type\":\"double\",\"doc_values\":false},"
+                + "\"created\":{\"type\":\"date\",\"doc_values\":true},"
+                + "\"notes\":{\"type\":\"string\",\"index\":\"no\"}}}", builder.string());
+    }
+
+    public void testObjectPaths() throws Exception {
+        final InputColumn<?>[] values = new InputColumn[] { new MockInputColumn<>("zip", Integer.class),
+                new MockInputColumn<>("amount", Long.class) };
+        final String[] fields = new String[] { "address.zip", "orders[].amount" };
+
+        // grouped documents hold objects
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        new ExplicitMappingBuilder(fields, values, true, false, true, null, null, null, null).build(builder);
+        builder.endObject();
+        assertEquals("{\"properties\":{"
+                + "\"address\":{\"type\":\"object\",\"properties\":{\"zip\":{\"type\":\"integer\",\"doc_values\":true}}},"
+                + "\"orders\":{\"type\":\"object\",\"properties\":{\"amount\":{\"type\":\"long\",\"doc_values\":true}}}}}",
+                builder.string());
+
+        // flat documents hold the field names as they are
+        builder = XContentFactory.jsonBuilder().startObject();
+        new ExplicitMappingBuilder(fields, values, false, false, true, null, null, null, null).build(builder);
+        builder.endObject();
+        assertEquals("{\"properties\":{"
+                + "\"address.zip\":{\"type\":\"integer\",\"doc_values\":true},"
+                + "\"orders[].amount\":{\"type\":\"long\",\"doc_values\":true}}}", builder.string());
+    }
+
+    public void testNumberTypes() throws Exception {
+        // the same types as the values are converted to by ValueConverters
+        assertEquals("integer", ExplicitMappingBuilder.getElasticSearchType(Integer.class, false));
+        assertEquals("long", ExplicitMappingBuilder.getElasticSearchType(Long.class, false));
+        assertEquals("long", ExplicitMappingBuilder.getElasticSearchType(AtomicLong.class, false));
+        assertEquals("double", ExplicitMappingBuilder.getElasticSearchType(Number.class, false));
+        assertEquals("double", ExplicitMappingBuilder.getElasticSearchType(BigDecimal.class, false));
+        assertEquals("long", ExplicitMappingBuilder.getElasticSearchType(BigInteger.class, false));
+        assertEquals("string", ExplicitMappingBuilder.getElasticSearchType(BigDecimal.class, true));
+        assertEquals("string", ExplicitMappingBuilder.getElasticSearchType(BigInteger.class, true));
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class FieldLayoutTest extends TestCase {
+
+    public void testSingleValuedFields() throws Exception {
+        final FieldLayout layout = new FieldLayout(new String[] { "a", "b" }, false);
+        final Map<String, Object> document = layout.createDocument(new Object[] { "id", "foo", null });
+        assertEquals("{a=foo}", document.toString());
+    }
+
+    public void testMultiValuedFields() throws Exception {
+        final FieldLayout layout = new FieldLayout(new String[] { "tag", "name", "tag", "tag" }, false);
+
+        Map<String, Object> document = layout.createDocument(new Object[] { "id", "x", "foo", "y", "x" });
+        assertEquals("{name=foo, tag=[x, y, x]}", new TreeMap<>(document).toString());
+
+        document = layout.createDocument(new Object[] { "id", null, "foo", "y", null });
+        assertEquals("{name=foo, tag=y}", new TreeMap<>(document).toString());
+    }
+
+    public void testDeduplicateValues() throws Exception {
+        final FieldLayout layout = new FieldLayout(new String[] { "tag", "tag", "tag" }, true);
+        final Map<String, Object> document = layout.createDocument(new Object[] { "id", "x", "y", "x" });
+        assertEquals("{tag=[x, y]}", document.toString());
+    }
+}
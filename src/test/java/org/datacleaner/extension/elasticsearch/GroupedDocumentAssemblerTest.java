@@ -0,0 +1,44 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import junit.framework.TestCase;
+
+public class GroupedDocumentAssemblerTest extends TestCase {
+
+    public void testAssemble() throws Exception {
+        final GroupedDocumentAssembler assembler = new GroupedDocumentAssembler(new String[] { "name",
+                "address.city", "orders[].amount", "orders[].date", "tags[]" });
+
+        assertNull(assembler.add(new Object[] { "c1", "Jane", "Copenhagen", 10, "2016-01-01", "a" }));
+        assertNull(assembler.add(new Object[] { "c1", "Jane", "Copenhagen", 20, null, null }));
+
+        final Object[] first = assembler.add(new Object[] { "c2", "John", null, null, null, "b" });
+        assertEquals("c1", first[0]);
+        assertEquals("{name=Jane, address={city=Copenhagen}, orders=[{amount=10, date=2016-01-01}, {amount=20}], "
+                + "tags=[a]}", first[1].toString());
+
+        final Object[] second = assembler.flush();
+        assertEquals("c2", second[0]);
+        assertEquals("{name=John, tags=[b]}", second[1].toString());
+
+        assertNull(assembler.flush());
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import junit.framework.TestCase;
+
+public class IdOrderTest extends TestCase {
+
+    public void testForType() throws Exception {
+        assertEquals(IdOrder.NUMERIC, IdOrder.forType(Integer.class));
+        assertEquals(IdOrder.NUMERIC, IdOrder.forType(Number.class));
+        assertEquals(IdOrder.LEXICOGRAPHIC, IdOrder.forType(String.class));
+        assertEquals(IdOrder.LEXICOGRAPHIC, IdOrder.forType(Object.class));
+        assertEquals(IdOrder.LEXICOGRAPHIC, IdOrder.forType(null));
+    }
+
+    public void testCompare() throws Exception {
+        assertTrue(IdOrder.NUMERIC.compare("9", "10") < 0);
+        assertEquals(0, IdOrder.NUMERIC.compare("10", "10.0"));
+        assertTrue(IdOrder.LEXICOGRAPHIC.compare("9", "10") > 0);
+        assertTrue(IdOrder.LEXICOGRAPHIC.compare("id_009", "id_010") < 0);
+
+        try {
+            IdOrder.NUMERIC.compare("9", "foo");
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("ID 'foo' is not a number", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.util.Action;
+
+public class IndexCheckpointTest extends TestCase {
+
+    private File _file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _file = new File("target/" + getName() + ".checkpoint");
+        _file.getParentFile().mkdirs();
+        _file.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        _file.delete();
+    }
+
+    public void testAcknowledgeOutOfOrder() throws Exception {
+        final IndexCheckpoint checkpoint = new IndexCheckpoint(_file, Long.MAX_VALUE);
+        checkpoint.acknowledge(11, 20, "id_20");
+        assertEquals(0, checkpoint.getDocumentCount());
+
+        checkpoint.acknowledge(21, 30, "id_30");
+        assertEquals(0, checkpoint.getDocumentCount());
+
+        checkpoint.acknowledge(1, 10, "id_10");
+        assertEquals(30, checkpoint.getDocumentCount());
+        assertEquals("id_30", checkpoint.getLastId());
+
+        // nothing saved before the interval has passed
+        assertFalse(_file.exists());
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        final IndexCheckpoint checkpoint = new IndexCheckpoint(_file, 0);
+        assertFalse(checkpoint.load());
+
+        checkpoint.acknowledge(1, 5, "id_5");
+        assertTrue(_file.exists());
+        checkpoint.acknowledge(6, 8, "id_8");
+
+        final IndexCheckpoint resumed = new IndexCheckpoint(_file, 0);
+        assertTrue(resumed.load());
+        assertEquals(8, resumed.getDocumentCount());
+        assertEquals("id_8", resumed.getLastId());
+
+        resumed.delete();
+        assertFalse(_file.exists());
+    }
+
+    public void testTrackFlushAction() throws Exception {
+        final List<Integer> flushed = new ArrayList<>();
+        final IndexCheckpoint checkpoint = new IndexCheckpoint(_file, Long.MAX_VALUE);
+        final Action<Iterable<Object[]>> action = checkpoint.track(new Action<Iterable<Object[]>>() {
+            @Override
+            public void run(Iterable<Object[]> rows) throws Exception {
+                for (Object[] row : rows) {
+                    if ("bad".equals(row[1])) {
+                        throw new IllegalStateException("Bad record");
+                    }
+                    flushed.add(((Long) row[2]).intValue());
+                }
+            }
+        });
+
+        action.run(Arrays.asList(new Object[] { "a", "foo", 1l }, new Object[] { "b", "bar", 2l }));
+        try {
+            action.run(Arrays.<Object[]> asList(new Object[] { "c", "bad", 3l }));
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Bad record", e.getMessage());
+        }
+
+        assertEquals("[1, 2]", flushed.toString());
+        assertEquals(2, checkpoint.getDocumentCount());
+        assertEquals("b", checkpoint.getLastId());
+
+        checkpoint.save();
+        assertTrue(_file.exists());
+    }
+
+    public void testTrackBulksOfAnyNumbers() throws Exception {
+        final IndexCheckpoint checkpoint = new IndexCheckpoint(_file, Long.MAX_VALUE);
+        final Action<Iterable<Object[]>> action = checkpoint.track(new Action<Iterable<Object[]>>() {
+            @Override
+            public void run(Iterable<Object[]> rows) throws Exception {
+                // written
+            }
+        });
+
+        // bulks of interleaved write buffers
+        action.run(Arrays.asList(new Object[] { "c", 3l }, new Object[] { "a", 1l }, new Object[] { "e", 5l }));
+        assertEquals(1, checkpoint.getDocumentCount());
+        assertEquals("a", checkpoint.getLastId());
+
+        action.run(Arrays.asList(new Object[] { "b", 2l }, new Object[] { "f", 6l }));
+        assertEquals(3, checkpoint.getDocumentCount());
+        assertEquals("c", checkpoint.getLastId());
+
+        action.run(Arrays.<Object[]> asList(new Object[] { "d", 4l }));
+        assertEquals(6, checkpoint.getDocumentCount());
+        assertEquals("f", checkpoint.getLastId());
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+public class IndexRolloverTest extends TestCase {
+
+    public void testByDate() throws Exception {
+        final IndexRollover rollover = IndexRollover.byDate("logs", "yyyy.MM.dd");
+        assertTrue(rollover.isByDate());
+        assertEquals("logs-*", rollover.getIndexPattern());
+
+        // 2026-10-17T23:59:59Z and one second later
+        assertEquals("logs-2026.10.17", rollover.getIndexName(new Date(1792281599000l)));
+        assertEquals("logs-2026.10.18", rollover.getIndexName(new Date(1792281600000l)));
+        assertEquals("logs-2026.10.18", rollover.getIndexName(new java.sql.Date(1792281600000l)));
+    }
+
+    public void testBySize() throws Exception {
+        final IndexRollover rollover = IndexRollover.bySize("logs", 2);
+        assertFalse(rollover.isByDate());
+
+        assertEquals("logs-000001", rollover.getIndexName(null));
+        assertEquals("logs-000001", rollover.getIndexName(null));
+        assertEquals("logs-000002", rollover.getIndexName(null));
+        assertEquals("logs-000002", rollover.getIndexName(null));
+        assertEquals("logs-000003", rollover.getIndexName(null));
+    }
+
+    public void testIsRolloverIndex() throws Exception {
+        final IndexRollover byDate = IndexRollover.byDate("logs", "yyyy.MM.dd");
+        assertTrue(byDate.isRolloverIndex("logs-2026.10.17"));
+        assertFalse(byDate.isRolloverIndex("logs-archive"));
+        assertFalse(byDate.isRolloverIndex("logs-2026.10"));
+        assertFalse(byDate.isRolloverIndex("logs-000001"));
+        assertFalse(byDate.isRolloverIndex("otherlogs-2026.10.17"));
+
+        final IndexRollover bySize = IndexRollover.bySize("logs", 2);
+        assertTrue(bySize.isRolloverIndex("logs-000001"));
+        assertTrue(bySize.isRolloverIndex("logs-1000000"));
+        assertFalse(bySize.isRolloverIndex("logs-old"));
+        assertFalse(bySize.isRolloverIndex("logs-2026.10.17"));
+    }
+}
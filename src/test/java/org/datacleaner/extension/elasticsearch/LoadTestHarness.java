@@ -0,0 +1,205 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.FileResource;
+import org.datacleaner.api.InputColumn;
+import org.datacleaner.configuration.DataCleanerConfiguration;
+import org.datacleaner.configuration.DataCleanerConfigurationImpl;
+import org.datacleaner.configuration.DataCleanerEnvironment;
+import org.datacleaner.configuration.DataCleanerEnvironmentImpl;
+import org.datacleaner.connection.CsvDatastore;
+import org.datacleaner.connection.DatastoreConnection;
+import org.datacleaner.connection.ElasticSearchDatastore;
+import org.datacleaner.connection.ElasticSearchDatastore.ClientType;
+import org.datacleaner.data.MetaModelInputColumn;
+import org.datacleaner.descriptors.Descriptors;
+import org.datacleaner.descriptors.SimpleDescriptorProvider;
+import org.datacleaner.job.AnalysisJob;
+import org.datacleaner.job.builder.AnalysisJobBuilder;
+import org.datacleaner.job.builder.AnalyzerComponentBuilder;
+import org.datacleaner.job.concurrent.MultiThreadedTaskRunner;
+import org.datacleaner.job.runner.AnalysisResultFuture;
+import org.datacleaner.job.runner.AnalysisRunnerImpl;
+
+/**
+ * Runnable load test of the {@link ElasticSearchIndexAnalyzer}. Generates a
+ * synthetic dataset, runs a DataCleaner job indexing it into an embedded local
+ * cluster and reports throughput, heap usage, GC time and bulk latencies.
+ * 
+ * Options are given as key=value arguments, e.g.
+ * 
+ * <pre>
+ * rows=1000000 columns=40 textLength=20 textLengthStdDev=10 idSkew=0 threads=16 nodes=2 bulkSize=2000 adaptive=true maxConcurrentBulks=4
+ * </pre>
+ */
+public class LoadTestHarness {
+
+    public static void main(String[] args) throws Throwable {
+        final Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            final int index = arg.indexOf('=');
+            if (index == -1) {
+                throw new IllegalArgumentException("Expected key=value argument, got: " + arg);
+            }
+            options.put(arg.substring(0, index), arg.substring(index + 1));
+        }
+
+        final long rows = Long.parseLong(getOption(options, "rows", "100000"));
+        final int columns = Integer.parseInt(getOption(options, "columns", "20"));
+        final int textLength = Integer.parseInt(getOption(options, "textLength", "20"));
+        final int textLengthStdDev = Integer.parseInt(getOption(options, "textLengthStdDev", "10"));
+        final double idSkew = Double.parseDouble(getOption(options, "idSkew", "0"));
+        final int threads = Integer.parseInt(getOption(options, "threads", "8"));
+        final int nodes = Integer.parseInt(getOption(options, "nodes", "2"));
+        final int bulkSize = Integer.parseInt(getOption(options, "bulkSize", "2000"));
+        final boolean adaptive = Boolean.parseBoolean(getOption(options, "adaptive", "false"));
+        final int maxConcurrentBulks = Integer.parseInt(getOption(options, "maxConcurrentBulks", "4"));
+
+        final SyntheticDataGenerator generator = new SyntheticDataGenerator(rows, columns, textLength,
+                textLengthStdDev, idSkew, 42);
+        final File file = new File("target/loadtest/synthetic.csv");
+        System.out.println("Generating " + rows + " rows with " + columns + " columns to " + file);
+        generator.generate(file);
+
+        final ElasticSearchTestCluster cluster = new ElasticSearchTestCluster(nodes);
+        cluster.startup();
+        try {
+            cluster.getNode(0).truncateIndex();
+
+            final CsvDatastore csvDatastore = new CsvDatastore("synthetic", new FileResource(file), file.getPath(),
+                    '"', ';', '\\', "UTF8", true, 1);
+            final ElasticSearchDatastore elasticSearchDatastore = new ElasticSearchDatastore(
+                    ElasticSearchTestServer.DATASTORE_NAME, ClientType.TRANSPORT, "localhost",
+                    Integer.parseInt(ElasticSearchTestServer.TRANSPORT_PORT), ElasticSearchTestServer.CLUSTER_NAME,
+                    ElasticSearchTestServer.INDEX_NAME);
+
+            final SimpleDescriptorProvider descriptorProvider = new SimpleDescriptorProvider();
+            descriptorProvider.addAnalyzerBeanDescriptor(Descriptors.ofAnalyzer(ElasticSearchIndexAnalyzer.class));
+            final DataCleanerEnvironment environment = new DataCleanerEnvironmentImpl().withTaskRunner(
+                    new MultiThreadedTaskRunner(threads)).withDescriptorProvider(descriptorProvider);
+            final DataCleanerConfiguration configuration = new DataCleanerConfigurationImpl().withEnvironment(
+                    environment).withDatastores(csvDatastore, elasticSearchDatastore);
+
+            final AnalysisJob job = createJob(configuration, csvDatastore, elasticSearchDatastore, bulkSize, adaptive,
+                    maxConcurrentBulks);
+
+            final long gcTimeBefore = getGcTimeMillis();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            final long startTime = System.nanoTime();
+
+            final AnalysisResultFuture resultFuture = new AnalysisRunnerImpl(configuration).run(job);
+            resultFuture.await();
+
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            if (resultFuture.isErrornous()) {
+                throw resultFuture.getErrors().get(0);
+            }
+
+            final ElasticSearchIndexResult result = (ElasticSearchIndexResult) resultFuture.getResults().get(0);
+            final long documentCount = cluster.getNode(0).getDocumentCount();
+
+            System.out.println("--- Load test results ---");
+            System.out.println("Threads:            " + threads + ", nodes: " + nodes + ", bulk size: " + bulkSize
+                    + (adaptive ? " (adaptive)" : ""));
+            System.out.println("Rows written:       " + result.getWrittenRowCount());
+            System.out.println("Documents in index: " + documentCount);
+            System.out.println("Elapsed:            " + elapsedMillis + " ms");
+            System.out.println("Throughput:         " + (result.getWrittenRowCount() * 1000l / Math.max(1, elapsedMillis))
+                    + " docs/s");
+            System.out.println("Peak heap usage:    " + (getPeakHeapUsage() >> 20) + " MB");
+            System.out.println("GC time:            " + (getGcTimeMillis() - gcTimeBefore) + " ms");
+            System.out.println("Bulk requests:      " + result.getBulkCount());
+            System.out.println("Bulk latency (ms):  mean=" + result.getBulkLatencyMeanMillis() + " p50="
+                    + result.getBulkLatency50Millis() + " p95=" + result.getBulkLatency95Millis() + " p99="
+                    + result.getBulkLatency99Millis() + " max=" + result.getBulkLatencyMaxMillis());
+        } finally {
+            cluster.close();
+        }
+    }
+
+    private static AnalysisJob createJob(DataCleanerConfiguration configuration, CsvDatastore csvDatastore,
+            ElasticSearchDatastore elasticSearchDatastore, int bulkSize, boolean adaptive, int maxConcurrentBulks) {
+        try (AnalysisJobBuilder jobBuilder = new AnalysisJobBuilder(configuration)) {
+            jobBuilder.setDatastore(csvDatastore);
+            try (DatastoreConnection connection = csvDatastore.openConnection()) {
+                final Table table = connection.getDataContext().getDefaultSchema().getTable(0);
+                jobBuilder.addSourceColumns(table.getColumns());
+            }
+
+            final List<MetaModelInputColumn> sourceColumns = jobBuilder.getSourceColumns();
+            final InputColumn<?>[] values = new InputColumn[sourceColumns.size() - 1];
+            final String[] fields = new String[values.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = sourceColumns.get(i + 1);
+                fields[i] = values[i].getName();
+            }
+
+            final AnalyzerComponentBuilder<ElasticSearchIndexAnalyzer> indexer = jobBuilder
+                    .addAnalyzer(ElasticSearchIndexAnalyzer.class);
+            indexer.setConfiguredProperty("Id column", sourceColumns.get(0));
+            indexer.setConfiguredProperty(ElasticSearchIndexAnalyzer.PROPERTY_INPUT_COLUMNS, values);
+            indexer.setConfiguredProperty(ElasticSearchIndexAnalyzer.PROPERTY_FIELD_NAMES, fields);
+            indexer.setConfiguredProperty("ElasticSearch index", elasticSearchDatastore);
+            indexer.setConfiguredProperty("Document type", ElasticSearchTestServer.DOCUMENT_TYPE);
+            indexer.setConfiguredProperty("Bulk index size", bulkSize);
+            indexer.setConfiguredProperty("Adaptive bulk sizing", adaptive);
+            indexer.setConfiguredProperty("Max concurrent bulks", maxConcurrentBulks);
+
+            return jobBuilder.toAnalysisJob();
+        }
+    }
+
+    private static String getOption(Map<String, String> options, String key, String defaultValue) {
+        final String value = options.get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static long getGcTimeMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static long getPeakHeapUsage() {
+        long total = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                total += pool.getPeakUsage().getUsed();
+            }
+        }
+        return total;
+    }
+}
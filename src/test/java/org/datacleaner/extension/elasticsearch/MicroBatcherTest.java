@@ -0,0 +1,184 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class MicroBatcherTest extends TestCase {
+
+    public void testSingleThreadExecutesImmediately() throws Exception {
+        final AtomicInteger batches = new AtomicInteger();
+        final MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>(10,
+                new MicroBatcher.BatchCall<Integer, Integer>() {
+                    @Override
+                    public List<Integer> call(List<Integer> inputs) {
+                        batches.incrementAndGet();
+                        final List<Integer> outputs = new ArrayList<>();
+                        for (Integer input : inputs) {
+                            outputs.add(input * 2);
+                        }
+                        return outputs;
+                    }
+                });
+
+        assertEquals(2, batcher.execute(1).intValue());
+        assertEquals(4, batcher.execute(2).intValue());
+        assertEquals(2, batches.get());
+    }
+
+    public void testConcurrentCallsAreBatched() throws Exception {
+        final CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        final MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>(3,
+                new MicroBatcher.BatchCall<Integer, Integer>() {
+                    @Override
+                    public List<Integer> call(List<Integer> inputs) {
+                        batchSizes.add(inputs.size());
+                        if (batchSizes.size() == 1) {
+                            firstBatchStarted.countDown();
+                            try {
+                                releaseFirstBatch.await();
+                            } catch (InterruptedException e) {
+                                throw new IllegalStateException(e);
+                            }
+                        }
+                        final List<Integer> outputs = new ArrayList<>();
+                        for (Integer input : inputs) {
+                            outputs.add(input * 2);
+                        }
+                        return outputs;
+                    }
+                });
+
+        final int[] results = new int[6];
+        final Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    results[index] = batcher.execute(index);
+                }
+            };
+        }
+
+        threads[0].start();
+        firstBatchStarted.await();
+        for (int i = 1; i < threads.length; i++) {
+            threads[i].start();
+        }
+        // give the other threads time to queue up behind the first batch
+        Thread.sleep(200);
+        releaseFirstBatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            assertEquals(i * 2, results[i]);
+        }
+        assertEquals("[1, 3, 2]", batchSizes.toString());
+    }
+
+    public void testFailureIsPropagatedToAllCalls() throws Exception {
+        final MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>(10,
+                new MicroBatcher.BatchCall<Integer, Integer>() {
+                    @Override
+                    public List<Integer> call(List<Integer> inputs) {
+                        throw new IllegalArgumentException("foo");
+                    }
+                });
+
+        try {
+            batcher.execute(1);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("foo", e.getMessage());
+        }
+    }
+
+    public void testConcurrentBatchesAreBounded() throws Exception {
+        final CountDownLatch twoBatchesStarted = new CountDownLatch(2);
+        final CountDownLatch releaseBatches = new CountDownLatch(1);
+        final AtomicInteger startedBatches = new AtomicInteger();
+        final AtomicInteger executingBatches = new AtomicInteger();
+        final AtomicInteger maxExecutingBatches = new AtomicInteger();
+        final MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>(10, 2,
+                new MicroBatcher.BatchCall<Integer, Integer>() {
+                    @Override
+                    public List<Integer> call(List<Integer> inputs) {
+                        startedBatches.incrementAndGet();
+                        final int executing = executingBatches.incrementAndGet();
+                        synchronized (maxExecutingBatches) {
+                            maxExecutingBatches.set(Math.max(maxExecutingBatches.get(), executing));
+                        }
+                        twoBatchesStarted.countDown();
+                        try {
+                            releaseBatches.await();
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        executingBatches.decrementAndGet();
+                        final List<Integer> outputs = new ArrayList<>();
+                        for (Integer input : inputs) {
+                            outputs.add(input * 2);
+                        }
+                        return outputs;
+                    }
+                });
+
+        final int[] results = new int[3];
+        final Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    results[index] = batcher.execute(index + 1);
+                }
+            };
+        }
+
+        threads[0].start();
+        threads[1].start();
+        twoBatchesStarted.await();
+        threads[2].start();
+        // the third call must wait for one of the two batches in flight
+        Thread.sleep(200);
+        assertEquals(2, startedBatches.get());
+        releaseBatches.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(3, startedBatches.get());
+        assertEquals(2, maxExecutingBatches.get());
+        assertEquals(2, results[0]);
+        assertEquals(4, results[1]);
+        assertEquals(6, results[2]);
+    }
+}
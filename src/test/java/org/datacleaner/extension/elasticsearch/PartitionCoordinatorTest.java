@@ -0,0 +1,130 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+public class PartitionCoordinatorTest extends TestCase {
+
+    private File _directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _directory = new File("target/" + getName());
+        deleteDirectory();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        deleteDirectory();
+    }
+
+    private void deleteDirectory() {
+        final File[] files = _directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        _directory.delete();
+    }
+
+    public void testLastPartitionFinalizes() throws Exception {
+        final PartitionCoordinator partition0 = new PartitionCoordinator(_directory, 0, 3);
+        final PartitionCoordinator partition1 = new PartitionCoordinator(_directory, 1, 3);
+        final PartitionCoordinator partition2 = new PartitionCoordinator(_directory, 2, 3);
+
+        assertFalse(partition2.markDone());
+        assertFalse(partition0.markDone());
+        assertTrue(partition1.markDone());
+
+        // a partition run again while finalizing does not finalize too
+        assertFalse(partition0.markDone());
+
+        partition1.finalized();
+        assertEquals(0, _directory.listFiles().length);
+    }
+
+    public void testStaleLockIsTakenOver() throws Exception {
+        final PartitionCoordinator partition0 = new PartitionCoordinator(_directory, 0, 2, 60000);
+        final PartitionCoordinator partition1 = new PartitionCoordinator(_directory, 1, 2, 60000);
+
+        assertFalse(partition0.markDone());
+        assertTrue(partition1.markDone());
+        final File lockFile = new File(_directory, "finalize.lock");
+        final String owner = new String(Files.readAllBytes(lockFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(owner, owner.matches("\\d+ partition 2 of 2 on .+"));
+
+        // partition 1 crashed while finalizing, its lock is not stale yet
+        assertFalse(partition0.markDone());
+
+        final String staleOwner = (System.currentTimeMillis() - 120000) + " partition 2 of 2 on crashed-host";
+        Files.write(lockFile.toPath(), staleOwner.getBytes(StandardCharsets.UTF_8));
+        assertTrue(partition0.markDone());
+        assertFalse(partition1.markDone());
+
+        partition0.finalized();
+        assertEquals(0, _directory.listFiles().length);
+    }
+
+    public void testReleasedLockIsRetaken() throws Exception {
+        final PartitionCoordinator partition0 = new PartitionCoordinator(_directory, 0, 2);
+        final PartitionCoordinator partition1 = new PartitionCoordinator(_directory, 1, 2);
+
+        assertFalse(partition0.markDone());
+        assertTrue(partition1.markDone());
+
+        // finalizing failed, so running any partition again retries it
+        partition1.releaseLock();
+        assertTrue(partition0.markDone());
+    }
+
+    public void testPartitionsCoverAllIds() throws Exception {
+        final int[] counts = new int[4];
+        for (int i = 0; i < 1000; i++) {
+            int partitions = 0;
+            for (int partition = 0; partition < counts.length; partition++) {
+                if (PartitionCoordinator.isInPartition("id_" + i, partition, counts.length)) {
+                    partitions++;
+                    counts[partition]++;
+                }
+            }
+            assertEquals(1, partitions);
+        }
+        for (int count : counts) {
+            assertTrue(count > 150);
+        }
+    }
+
+    public void testInvalidPartitionIndex() throws Exception {
+        try {
+            new PartitionCoordinator(_directory, 3, 3);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Partition index must be between 0 and 2", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import org.slf4j.LoggerFactory;
+
+import junit.framework.TestCase;
+
+public class RequestDiagnosticsTest extends TestCase {
+
+    public void testCountsRequests() throws Exception {
+        final RequestDiagnostics diagnostics = new RequestDiagnostics(LoggerFactory.getLogger(getClass()), 2, 10);
+
+        diagnostics.onRequest("id1", "response1", 1000);
+        diagnostics.onRequest("id2", "response2", 20000);
+        diagnostics.onRequest("id3", "response3", 500);
+        diagnostics.onNotFound();
+        diagnostics.onMissingField();
+        diagnostics.onMissingField();
+
+        assertEquals(3, diagnostics.getRequestCount());
+        assertEquals(1, diagnostics.getSlowCount());
+        assertEquals(1, diagnostics.getNotFoundCount());
+        assertEquals(2, diagnostics.getMissingFieldCount());
+
+        diagnostics.logSummary("test");
+    }
+
+    public void testDoesNotFormatUnloggedResponses() throws Exception {
+        final RequestDiagnostics diagnostics = new RequestDiagnostics(LoggerFactory.getLogger(getClass()), 0, 0);
+        final Object response = new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("Response should not be formatted");
+            }
+        };
+
+        diagnostics.onRequest("id", response, 1000000);
+        assertEquals(1, diagnostics.getRequestCount());
+        assertEquals(0, diagnostics.getSlowCount());
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import junit.framework.TestCase;
+
+public class SearchRequestTemplateTest extends TestCase {
+
+    public void testRender() throws Exception {
+        final SearchRequestTemplate template = new SearchRequestTemplate("{\"a\":\""
+                + SearchRequestTemplate.placeholder(1) + "\",\"b\":[\"" + SearchRequestTemplate.placeholder(0)
+                + "\"]}");
+
+        assertEquals("{\"a\":\"bar\",\"b\":[\"foo\"]}", template.render("foo", "bar"));
+        assertEquals("{\"a\":\"\",\"b\":[\"say \\\"hi\\\"\\n\\\\o/\"]}", template.render("say \"hi\"\n\\o/", ""));
+    }
+
+    public void testRenderSearchSource() throws Exception {
+        final SearchSourceBuilder searchSource = new SearchSourceBuilder().query(
+                QueryBuilders.matchQuery("city", SearchRequestTemplate.placeholder(0))).size(1);
+        final SearchRequestTemplate template = new SearchRequestTemplate(searchSource);
+
+        final String expected = new SearchSourceBuilder().query(QueryBuilders.matchQuery("city", "Copenhagen"))
+                .size(1).toString().replaceAll("\\s", "");
+        assertEquals(expected, template.render("Copenhagen").replaceAll("\\s", ""));
+    }
+
+    public void testEscapeControlCharacters() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        SearchRequestTemplate.appendEscaped(sb, "a\u0001b\tc");
+        assertEquals("a\\u0001b\\tc", sb.toString());
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class SingleFlightTest extends TestCase {
+
+    public void testConcurrentCallsAreCoalesced() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch leaderStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final SingleFlight.Call<String> call = new SingleFlight.Call<String>() {
+            @Override
+            public String call() {
+                executions.incrementAndGet();
+                leaderStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return "result";
+            }
+        };
+
+        final String[] results = new String[2];
+        final Thread leader = new Thread() {
+            @Override
+            public void run() {
+                results[0] = singleFlight.execute("foo", call);
+            }
+        };
+        leader.start();
+        leaderStarted.await();
+
+        final Thread follower = new Thread() {
+            @Override
+            public void run() {
+                results[1] = singleFlight.execute("foo", call);
+            }
+        };
+        follower.start();
+        while (singleFlight.getCoalescedCount() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        leader.join();
+        follower.join();
+
+        assertEquals(1, executions.get());
+        assertEquals("result", results[0]);
+        assertEquals("result", results[1]);
+
+        assertEquals("result", singleFlight.execute("foo", call));
+        assertEquals(2, executions.get());
+    }
+}
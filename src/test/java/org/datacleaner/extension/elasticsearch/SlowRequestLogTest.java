@@ -0,0 +1,58 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SlowRequestLogTest extends TestCase {
+
+    public void testKeepsSlowestRequests() throws Exception {
+        final SlowRequestLog log = new SlowRequestLog(3);
+        final long[] waitTimes = { 50, 10, 70, 20, 90, 30, 60 };
+        for (long waitTime : waitTimes) {
+            final RequestTrace trace = new RequestTrace("request " + waitTime);
+            trace.setWaitMicros(waitTime);
+            log.record(trace);
+        }
+
+        final List<RequestTrace> slowest = log.getSlowest();
+        assertEquals(3, slowest.size());
+        assertEquals("request 90", slowest.get(0).getDescription());
+        assertEquals("request 70", slowest.get(1).getDescription());
+        assertEquals("request 60", slowest.get(2).getDescription());
+    }
+
+    public void testTraceBreakdown() throws Exception {
+        final RequestTrace trace = new RequestTrace("foo");
+        trace.setBuildMicros(1000);
+        trace.setWaitMicros(5000);
+        trace.setServerMicros(3000);
+        trace.setConvertMicros(500);
+
+        assertEquals(6500, trace.getTotalMicros());
+        assertEquals(2000, trace.getWireMicros());
+        assertEquals("foo: total=6.5 ms (build=1.0, wire=2.0, server=3.0, convert=0.5)", trace.toString());
+
+        trace.setServerMicros(-1);
+        assertEquals(5000, trace.getWireMicros());
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.metamodel.util.Action;
+
+import junit.framework.TestCase;
+
+public class StripedBulkWriteBufferTest extends TestCase {
+
+    public void testFlushBatchesOfEachStripe() throws Exception {
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        final Set<Object> flushed = Collections.synchronizedSet(new HashSet<Object>());
+        final StripedBulkWriteBuffer buffer = new StripedBulkWriteBuffer(3, BulkSizeController.fixed(10, 3),
+                new Action<Iterable<Object[]>>() {
+                    @Override
+                    public void run(Iterable<Object[]> batch) throws Exception {
+                        int size = 0;
+                        for (Object[] record : batch) {
+                            assertTrue("Flushed twice: " + record[0], flushed.add(record[0]));
+                            size++;
+                        }
+                        batchSizes.add(size);
+                    }
+                });
+        assertEquals(3, buffer.getStripeCount());
+
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int thread = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        buffer.addToBuffer(new Object[] { thread + "-" + j });
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        buffer.flushBuffer();
+
+        assertEquals(4000, flushed.size());
+        for (Integer batchSize : batchSizes) {
+            assertTrue("Batch too large: " + batchSize, batchSize <= 10);
+        }
+    }
+
+    public void testStripesFlushConcurrently() throws Exception {
+        // both writers flush at the same time, which only works if they write
+        // to different stripes
+        final CountDownLatch flushing = new CountDownLatch(2);
+        final StripedBulkWriteBuffer buffer = new StripedBulkWriteBuffer(2, BulkSizeController.fixed(1, 2),
+                new Action<Iterable<Object[]>>() {
+                    @Override
+                    public void run(Iterable<Object[]> batch) throws Exception {
+                        flushing.countDown();
+                        assertTrue("Stripes did not flush concurrently", flushing.await(10, TimeUnit.SECONDS));
+                    }
+                });
+
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final Runnable writer = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    buffer.addToBuffer(new Object[] { Thread.currentThread().getName() });
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }
+        };
+        final Thread first = new Thread(writer, "first");
+        Thread second = new Thread(writer, "second");
+        while (first.getId() % 2 == second.getId() % 2) {
+            second = new Thread(writer, "second");
+        }
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(0, flushing.getCount());
+    }
+
+    public void testInvalidStripeCount() throws Exception {
+        try {
+            new StripedBulkWriteBuffer(0, BulkSizeController.fixed(10, 1), null);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Stripe count must be positive", e.getMessage());
+        }
+    }
+}
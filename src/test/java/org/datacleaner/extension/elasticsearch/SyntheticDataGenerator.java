@@ -0,0 +1,126 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates synthetic CSV datasets (separator ';', quote '"') for load
+ * testing. The first column is the ID, followed by text columns whose lengths
+ * follow a normal distribution. The same settings always yield the same file.
+ */
+public class SyntheticDataGenerator {
+
+    private final long _rowCount;
+    private final int _columnCount;
+    private final int _meanTextLength;
+    private final int _textLengthStdDev;
+    private final double _idSkew;
+    private final long _seed;
+
+    /**
+     * Creates a generator.
+     * 
+     * @param rowCount
+     *            the number of rows to generate
+     * @param columnCount
+     *            the number of text columns besides the ID
+     * @param meanTextLength
+     *            the mean length of text values
+     * @param textLengthStdDev
+     *            the standard deviation of the length of text values
+     * @param idSkew
+     *            zero for unique, sequential IDs; a positive value draws IDs
+     *            from a power law distribution favouring low IDs, so that the
+     *            same documents are written repeatedly (the higher the value,
+     *            the fewer distinct IDs)
+     * @param seed
+     *            the seed of the random generator
+     */
+    public SyntheticDataGenerator(long rowCount, int columnCount, int meanTextLength, int textLengthStdDev,
+            double idSkew, long seed) {
+        _rowCount = rowCount;
+        _columnCount = columnCount;
+        _meanTextLength = meanTextLength;
+        _textLengthStdDev = textLengthStdDev;
+        _idSkew = idSkew;
+        _seed = seed;
+    }
+
+    public String[] getColumnNames() {
+        final String[] columnNames = new String[_columnCount + 1];
+        columnNames[0] = "id";
+        for (int i = 1; i <= _columnCount; i++) {
+            columnNames[i] = "col" + i;
+        }
+        return columnNames;
+    }
+
+    public void generate(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        final Random random = new Random(_seed);
+        final char[] buffer = new char[Math.max(16, _meanTextLength + 6 * _textLengthStdDev)];
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            final String[] columnNames = getColumnNames();
+            for (int i = 0; i < columnNames.length; i++) {
+                if (i > 0) {
+                    writer.write(';');
+                }
+                writer.write(columnNames[i]);
+            }
+            writer.write('\n');
+
+            for (long row = 0; row < _rowCount; row++) {
+                writer.write(Long.toString(nextId(random, row)));
+                for (int column = 0; column < _columnCount; column++) {
+                    writer.write(";\"");
+                    final int length = nextTextLength(random, buffer.length);
+                    for (int i = 0; i < length; i++) {
+                        buffer[i] = i % 8 == 7 ? ' ' : (char) ('a' + random.nextInt(26));
+                    }
+                    writer.write(buffer, 0, length);
+                    writer.write('"');
+                }
+                writer.write('\n');
+            }
+        }
+    }
+
+    private long nextId(Random random, long row) {
+        if (_idSkew <= 0) {
+            return row;
+        }
+        return (long) (_rowCount * Math.pow(random.nextDouble(), 1 + _idSkew));
+    }
+
+    private int nextTextLength(Random random, int maxLength) {
+        final int length = (int) Math.round(_meanTextLength + random.nextGaussian() * _textLengthStdDev);
+        return Math.max(0, Math.min(maxLength, length));
+    }
+}
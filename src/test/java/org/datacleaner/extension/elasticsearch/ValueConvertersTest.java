@@ -0,0 +1,85 @@
+/**
+ * DataCleaner (community edition)
+ * Copyright (C) 2013 Human Inference
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.datacleaner.extension.elasticsearch;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+public class ValueConvertersTest extends TestCase {
+
+    public void testDates() throws Exception {
+        final Date date = new Date(1375956930000l);
+
+        assertEquals("2013-08-08T10:15:30.000Z",
+                ValueConverters.forType(Date.class, DateConversion.ISO_8601).convert(date));
+        assertEquals(1375956930000l,
+                ValueConverters.forType(java.sql.Timestamp.class, DateConversion.EPOCH_MILLIS).convert(
+                        new java.sql.Timestamp(date.getTime())));
+    }
+
+    public void testNumbers() throws Exception {
+        final ValueConverter converter = ValueConverters.forType(Number.class, DateConversion.ISO_8601);
+        assertEquals(1.5d, converter.convert(new BigDecimal("1.5")));
+        assertEquals(42l, converter.convert(BigInteger.valueOf(42)));
+        assertEquals(42, converter.convert(42));
+        assertEquals(9007199254740993l, converter.convert(new AtomicLong(9007199254740993l)));
+
+        assertEquals(42, ValueConverters.forType(Integer.class, DateConversion.ISO_8601).convert(42));
+        assertEquals(42l, ValueConverters.forType(AtomicInteger.class, DateConversion.ISO_8601).convert(
+                new AtomicInteger(42)));
+
+        final ValueConverter bigDecimalConverter = ValueConverters.forType(BigDecimal.class,
+                DateConversion.ISO_8601);
+        assertEquals(9007199254740993l, bigDecimalConverter.convert(new BigDecimal("9007199254740993")));
+        assertEquals(1000l, bigDecimalConverter.convert(new BigDecimal("1E+3")));
+        assertEquals(0.1d, bigDecimalConverter.convert(new BigDecimal("0.10")));
+
+        final ValueConverter bigIntegerConverter = ValueConverters.forType(BigInteger.class,
+                DateConversion.ISO_8601);
+        assertEquals(42l, bigIntegerConverter.convert(BigInteger.valueOf(42)));
+        assertEquals("18446744073709551616", bigIntegerConverter.convert(BigInteger.ONE.shiftLeft(64)));
+    }
+
+    public void testBigNumbersAsStrings() throws Exception {
+        assertEquals("0.10000000000000000001", ValueConverters.forType(BigDecimal.class,
+                DateConversion.ISO_8601, true).convert(new BigDecimal("0.10000000000000000001")));
+        assertEquals("42", ValueConverters.forType(BigInteger.class, DateConversion.ISO_8601, true).convert(
+                BigInteger.valueOf(42)));
+        assertEquals("1.5", ValueConverters.forType(Object.class, DateConversion.ISO_8601, true).convert(
+                new BigDecimal("1.5")));
+    }
+
+    public void testGeneric() throws Exception {
+        final ValueConverter converter = ValueConverters.forType(Object.class, DateConversion.EPOCH_MILLIS);
+        assertEquals("foo", converter.convert("foo"));
+        assertEquals(1000l, converter.convert(new Date(1000)));
+        assertEquals("AQI=", converter.convert(new byte[] { 1, 2 }));
+        assertEquals("x", converter.convert('x'));
+        assertEquals(42l, converter.convert(42l));
+        assertEquals(1.5d, converter.convert(new BigDecimal("1.5")));
+        assertEquals(42l, converter.convert(new BigDecimal("42")));
+        assertEquals("18446744073709551616", converter.convert(BigInteger.ONE.shiftLeft(64)));
+    }
+}